@@ -0,0 +1,196 @@
+package com.tensorlab.ml.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tensorlab.ml.PredictionContext;
+import com.tensorlab.ml.PredictionProfile;
+import com.tensorlab.ml.SeriesCsvReader;
+import com.tensorlab.ml.SeriesData;
+import com.tensorlab.ml.ValidationData;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.requeset.DeepArRequest;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.requeset.Instance;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponse;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.Prediction;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.Quantiles;
+
+/**
+ * Generates the data of the benchmarks: input and validation files, requests and
+ * responses shaped like the ones of a DeepAR endpoint. The values are random but
+ * seeded, so every run measures the same data
+ */
+public class BenchmarkData {
+	public static final String TARGET = "benchmark";
+	public static final LocalDate START_DATE = LocalDate.of(2013, 8, 1);
+	private static final long SEED = 42;
+
+	/**
+	 * Builds an input file of daily observations
+	 * @param seriesCount the number of series columns
+	 * @param length the number of observations of every series
+	 */
+	public static String inputCsv(int seriesCount, int length) {
+		return csv(seriesCount, START_DATE, length);
+	}
+
+	/**
+	 * Builds a validation file holding the actual values of the days following the input
+	 * file, see {@link #inputCsv(int, int)}
+	 */
+	public static String validationCsv(int seriesCount, int historyLength, int horizon) {
+		return csv(seriesCount, START_DATE.plusDays(historyLength), horizon);
+	}
+
+	/**
+	 * Writes an input file too large to be built in memory, see {@link #inputCsv(int, int)}
+	 */
+	public static void writeInputCsv(Path file, int seriesCount, int length) throws IOException {
+		try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			csv(out, seriesCount, START_DATE, length);
+		}
+	}
+
+	private static String csv(int seriesCount, LocalDate start, int length) {
+		StringBuilder csv = new StringBuilder();
+		try {
+			csv(csv, seriesCount, start, length);
+		} catch (IOException e) {
+			// not thrown by a StringBuilder
+			throw new UncheckedIOException(e);
+		}
+		return csv.toString();
+	}
+
+	private static void csv(Appendable csv, int seriesCount, LocalDate start, int length) throws IOException {
+		Random random = new Random(SEED);
+		csv.append("datetime");
+		for (int s = 0; s < seriesCount; s++) {
+			csv.append(",category").append(String.valueOf(s));
+		}
+		csv.append('\n');
+		for (int i = 0; i < length; i++) {
+			csv.append(start.plusDays(i).toString());
+			for (int s = 0; s < seriesCount; s++) {
+				csv.append(',').append(String.valueOf(random.nextInt(100)));
+			}
+			csv.append('\n');
+		}
+	}
+
+	public static SeriesData series(int seriesCount, int length) throws IOException {
+		return SeriesCsvReader.read(new StringReader(inputCsv(seriesCount, length)));
+	}
+
+	public static ValidationData validation(int seriesCount, int historyLength, int horizon) throws IOException {
+		return ValidationData.read(new StringReader(validationCsv(seriesCount, historyLength, horizon)));
+	}
+
+	/**
+	 * Builds one instance per series, like the SeriesRegistry does for an input file
+	 */
+	public static List<Instance> instances(SeriesData series) {
+		List<Instance> instances = new ArrayList<>();
+		for (int s = 0; s < series.getSeriesCount(); s++) {
+			Instance inst = new Instance();
+			inst.setStart(series.getStartDateTime());
+			inst.setCat(Collections.singletonList(s));
+			inst.setTarget(series.getValues(s));
+			instances.add(inst);
+		}
+		return Collections.unmodifiableList(instances);
+	}
+
+	/**
+	 * Builds the request of the default profile for the series
+	 */
+	public static DeepArRequest request(SeriesData series) {
+		DeepArRequest request = new DeepArRequest();
+		request.setInstances(instances(series));
+		request.setConfiguration(PredictionProfile.defaults().toConfiguration());
+		return request;
+	}
+
+	/**
+	 * Builds the context of a request for the series, like the LabManager does
+	 * @param instancesJson the serialized instances of the request, may be null
+	 * @param filePrefix the prefix of the exported files
+	 */
+	public static PredictionContext context(SeriesData series, byte[] instancesJson, String filePrefix) {
+		return PredictionContext.builder()
+				.target(TARGET)
+				.startDateTime(series.getDateTime(0))
+				.lastDateTime(series.getDateTime(series.getLength() - 1))
+				.frequency(series.getFrequency())
+				.dateTimeFormat(series.getDateTimeFormat())
+				.seriesNames(series.getNames())
+				.filePrefix(filePrefix)
+				.request(request(series))
+				.instancesJson(instancesJson)
+				.build();
+	}
+
+	/**
+	 * Builds a response holding the mean and the 0.1, 0.5 and 0.9 quantiles of each series
+	 * @param numSamples the number of sample paths of each prediction, none if 0
+	 */
+	public static DeepArResponse response(int seriesCount, int horizon, int numSamples) {
+		Random random = new Random(SEED);
+		List<Prediction> predictions = new ArrayList<>();
+		for (int s = 0; s < seriesCount; s++) {
+			Prediction prediction = new Prediction();
+			prediction.setMean(values(random, horizon));
+			Quantiles quantiles = new Quantiles();
+			quantiles.set01(values(random, horizon));
+			quantiles.set05(values(random, horizon));
+			quantiles.set09(values(random, horizon));
+			prediction.setQuantiles(quantiles);
+			if (numSamples > 0) {
+				double[][] samples = new double[numSamples][];
+				for (int i = 0; i < numSamples; i++) {
+					samples[i] = values(random, horizon);
+				}
+				prediction.setSamples(samples);
+			}
+			predictions.add(prediction);
+		}
+		DeepArResponse response = new DeepArResponse();
+		response.setPredictions(predictions);
+		return response;
+	}
+
+	/**
+	 * Serializes a response as the endpoint sends it, see {@link #response(int, int, int)}
+	 */
+	public static byte[] responseJson(int seriesCount, int horizon, int numSamples) throws IOException {
+		return new ObjectMapper().writeValueAsBytes(response(seriesCount, horizon, numSamples));
+	}
+
+	private static double[] values(Random random, int length) {
+		double[] values = new double[length];
+		for (int i = 0; i < length; i++) {
+			values[i] = random.nextDouble() * 100;
+		}
+		return values;
+	}
+
+	/**
+	 * Sets a field of a bean, in place of the injection of the Spring context
+	 */
+	public static void inject(Object bean, String field, Object value) throws ReflectiveOperationException {
+		Field target = bean.getClass().getDeclaredField(field);
+		target.setAccessible(true);
+		target.set(bean, value);
+	}
+}
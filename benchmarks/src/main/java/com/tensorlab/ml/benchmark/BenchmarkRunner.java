@@ -0,0 +1,22 @@
+package com.tensorlab.ml.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the JMH command line options, the allocation rate
+ * and the GC activity of each benchmark are always reported
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				// the application logs only the warnings while it's measured
+				.jvmArgsAppend("-Dlog4j.configurationFile=log4j2-benchmark.xml")
+				.build()).run();
+	}
+}
@@ -0,0 +1,67 @@
+package com.tensorlab.ml.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponse;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponseReader;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponseReader.SamplesMode;
+import com.tensorlab.ml.benchmark.legacy.LegacyDeepArResponse;
+
+/**
+ * The memory and GC cost of binding a whole response, samples included: to the
+ * boxed lists of the former response classes, to the primitive arrays of the
+ * current ones, and with the streaming reader. Compare the gc.alloc.rate.norm
+ * and gc.count of the three benchmarks
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BindingBenchmark {
+
+	@Param({ "1", "10" })
+	private int seriesCount;
+
+	@Param({ "30", "365" })
+	private int horizon;
+
+	@Param({ "0", "200" })
+	private int numSamples;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private byte[] json;
+	private DeepArResponseReader reader;
+
+	@Setup
+	public void setup() throws IOException {
+		json = BenchmarkData.responseJson(seriesCount, horizon, numSamples);
+		reader = new DeepArResponseReader(objectMapper, SamplesMode.KEEP, Collections.emptyList());
+	}
+
+	@Benchmark
+	public LegacyDeepArResponse legacyPojos() throws IOException {
+		return objectMapper.readValue(json, LegacyDeepArResponse.class);
+	}
+
+	@Benchmark
+	public DeepArResponse primitiveArrays() throws IOException {
+		return objectMapper.readValue(json, DeepArResponse.class);
+	}
+
+	@Benchmark
+	public DeepArResponse streamingReader() throws IOException {
+		return reader.read(new ByteArrayInputStream(json));
+	}
+}
@@ -0,0 +1,120 @@
+package com.tensorlab.ml.benchmark;
+
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tensorlab.ml.AppConfig;
+import com.tensorlab.ml.TensorlabApplication;
+import com.tensorlab.ml.aws.auth.Aws4Signer;
+import com.tensorlab.ml.aws.auth.Hmac;
+
+/**
+ * The invocation of the endpoint with the shared pooled client against a new
+ * RestTemplate per call, as it was created before the pool: the application is
+ * started with the stub profile of its test jar and 16 clients send it signed
+ * invocations of one series of a year. Both the throughput and the sampled
+ * latencies (p50, p99) are reported.
+ * The pool has a connection for each client, so only the reuse of the connections
+ * is compared. The per call client opens a new connection for every invocation, it's closed
+ * once the response is read so the benchmark does not run out of sockets
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(16)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ClientBenchmark {
+	/** the connect timeout of the per call client, as it was set */
+	private static final int CONNECT_TIMEOUT = 60 * 1000;
+
+	@Param({ "pooled", "perCall" })
+	private String client;
+
+	private ConfigurableApplicationContext application;
+	private RestTemplate pooledRestTemplate;
+	private Aws4Signer signer;
+	private AppConfig.EndpointConfig endpoint;
+	private String url;
+	private byte[] body;
+	private String payloadHash;
+
+	@Setup
+	public void setup() throws Exception {
+		int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		// as arguments, overriding the properties of the stub profile. The blocking client keeps half of the
+		// connection limits, 20 connections, so no client waits for a pooled connection
+		application = new SpringApplicationBuilder(TensorlabApplication.class)
+				.profiles("stub")
+				.run("--server.port=" + port,
+						"--app-config.store-config.enabled=false",
+						"--app-config.http-client-config.max-total=100",
+						"--app-config.http-client-config.max-per-route=40",
+						"--stub-config.latency-distribution=NONE");
+		pooledRestTemplate = application.getBean("sageMakerRestTemplate", RestTemplate.class);
+		signer = application.getBean(Aws4Signer.class);
+		endpoint = application.getBean(AppConfig.class).getAwsAuthConfig().toEndpointConfig();
+		url = endpoint.getScheme() + "://" + endpoint.getServiceHost()
+				+ Aws4Signer.buildEndpointUrl(endpoint.getServiceEndPoint());
+		body = new ObjectMapper().writeValueAsBytes(BenchmarkData.request(BenchmarkData.series(1, 365)));
+		payloadHash = Hmac.getSha256Hash(body);
+	}
+
+	@TearDown
+	public void tearDown() {
+		application.close();
+	}
+
+	@Benchmark
+	public int invoke() throws Exception {
+		HttpHeaders headers = signer.buildHeadersWithPayloadHash(payloadHash, endpoint);
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		HttpEntity<byte[]> request = new HttpEntity<>(body, headers);
+		if ("pooled".equals(client)) {
+			return check(pooledRestTemplate.exchange(url, HttpMethod.POST, request, byte[].class));
+		}
+		HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory();
+		requestFactory.setConnectTimeout(CONNECT_TIMEOUT);
+		try {
+			return check(new RestTemplate(requestFactory).exchange(url, HttpMethod.POST, request, byte[].class));
+		} finally {
+			requestFactory.destroy();
+		}
+	}
+
+	/**
+	 * The error statuses are thrown by the RestTemplate, an empty prediction is a failure too
+	 */
+	private static int check(ResponseEntity<byte[]> response) {
+		if (response.getBody() == null) {
+			throw new IllegalStateException("Invocation returned no prediction, status " + response.getStatusCode());
+		}
+		return response.getBody().length;
+	}
+}
@@ -0,0 +1,56 @@
+package com.tensorlab.ml.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.tensorlab.ml.aws.auth.Hmac;
+
+/**
+ * The hashing of request payloads from 1 KB to 10 MB: the SHA-256 of the
+ * serialized bytes, of the same payload held as a string, and its HMAC
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HmacBenchmark {
+
+	@Param({ "1024", "65536", "1048576", "10485760" })
+	private int size;
+
+	private byte[] payload;
+	private String payloadString;
+	private final byte[] key = "benchmark-signing-key".getBytes(StandardCharsets.UTF_8);
+
+	@Setup
+	public void setup() {
+		// an ASCII payload, like the JSON of a request
+		payload = new byte[size];
+		Arrays.fill(payload, (byte) '7');
+		payloadString = new String(payload, StandardCharsets.US_ASCII);
+	}
+
+	@Benchmark
+	public String sha256() {
+		return Hmac.getSha256Hash(payload);
+	}
+
+	@Benchmark
+	public String sha256OfString() throws Exception {
+		return Hmac.getSha256Hash(payloadString);
+	}
+
+	@Benchmark
+	public byte[] hmacSha256() throws Exception {
+		return Hmac.hmac(payloadString, key, Hmac.HMAC_SHA256);
+	}
+}
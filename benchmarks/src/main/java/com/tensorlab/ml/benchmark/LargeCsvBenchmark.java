@@ -0,0 +1,64 @@
+package com.tensorlab.ml.benchmark;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tensorlab.ml.SeriesCsvReader;
+import com.tensorlab.ml.SeriesData;
+
+/**
+ * The parsing of input files of up to a million rows of 200 series, read from a
+ * file as the SeriesRegistry does. Each parse takes seconds, so each one is
+ * measured alone, with a heap large enough to hold the series
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx6g")
+public class LargeCsvBenchmark {
+
+	@Param({ "200" })
+	private int seriesCount;
+
+	@Param({ "100000", "1000000" })
+	private int rows;
+
+	private Path file;
+
+	@Setup
+	public void setup() throws IOException {
+		file = Files.createTempFile("large-csv-benchmark", ".csv");
+		BenchmarkData.writeInputCsv(file, seriesCount, rows);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public SeriesData parseCsv() throws IOException {
+		try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			return SeriesCsvReader.read(in);
+		}
+	}
+}
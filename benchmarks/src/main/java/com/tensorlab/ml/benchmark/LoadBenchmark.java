@@ -0,0 +1,112 @@
+package com.tensorlab.ml.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+
+import com.tensorlab.ml.TensorlabApplication;
+
+/**
+ * The throughput of the whole service under load, the synchronous prediction
+ * against the async one: the application is started with the stub profile of its
+ * test jar, so it invokes its own stub endpoint, and 16 clients request the plot
+ * of the sample target, each one sending its next request once it got the
+ * previous response.
+ * With a stub latency, the async path is expected to serve more requests than
+ * the threads of the server
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(16)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class LoadBenchmark {
+	private static final String SYNC_PATH = "/predict/sagemaker/deepar";
+	private static final String ASYNC_PATH = "/predict/sagemaker/deepar/async";
+
+	@Param({ "sync", "async" })
+	private String path;
+
+	/** the latency of the stub endpoint, in milliseconds */
+	@Param({ "0", "50" })
+	private long latency;
+
+	private static final String[] DATA_FILES = { "prediction-input-sample.csv", "validation-sample.csv" };
+
+	private Path dataDirectory;
+	private ConfigurableApplicationContext application;
+	private CloseableHttpClient client;
+	private String url;
+
+	@Setup
+	public void setup() throws IOException {
+		int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		// the data files are read from the file system, not from the jar of the benchmarks
+		dataDirectory = Files.createTempDirectory("load-benchmark");
+		for (String file : DATA_FILES) {
+			try (InputStream in = new ClassPathResource(file).getInputStream()) {
+				Files.copy(in, dataDirectory.resolve(file));
+			}
+		}
+		// as arguments, overriding the properties of the stub profile
+		application = new SpringApplicationBuilder(TensorlabApplication.class)
+				.profiles("stub")
+				.run("--server.port=" + port,
+						"--app-config.data-config.directory=" + dataDirectory,
+						"--app-config.store-config.enabled=false",
+						"--stub-config.latency-distribution=FIXED",
+						"--stub-config.latency=" + latency);
+		client = HttpClients.custom().setMaxConnTotal(16).setMaxConnPerRoute(16).build();
+		url = "http://localhost:" + port + ("async".equals(path) ? ASYNC_PATH : SYNC_PATH) + "?target=sample";
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		client.close();
+		application.close();
+		for (String file : DATA_FILES) {
+			Files.deleteIfExists(dataDirectory.resolve(file));
+		}
+		Files.deleteIfExists(dataDirectory);
+	}
+
+	@Benchmark
+	public int predict() throws IOException {
+		try (CloseableHttpResponse response = client.execute(new HttpGet(url))) {
+			EntityUtils.consume(response.getEntity());
+			int status = response.getStatusLine().getStatusCode();
+			if (status != 200) {
+				throw new IllegalStateException("Prediction failed with status " + status);
+			}
+			return status;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package com.tensorlab.ml.benchmark;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.tensorlab.ml.LabManager;
+import com.tensorlab.ml.PlotUtil;
+import com.tensorlab.ml.PredictionChart;
+import com.tensorlab.ml.PredictionContext;
+import com.tensorlab.ml.PredictionMetrics;
+import com.tensorlab.ml.ValidationData;
+import com.tensorlab.ml.ValueCategory;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.Prediction;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The rendering of the predictions of a response: the plot of the predicted
+ * quantiles and the actual values of every series, and their export to csv files
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RenderBenchmark {
+	private static final int HISTORY_LENGTH = 365;
+
+	@Param({ "1", "10" })
+	private int seriesCount;
+
+	@Param({ "30", "365" })
+	private int horizon;
+
+	private List<Prediction> predictions;
+	private ValidationData validation;
+	private PredictionContext context;
+	private Path exportDirectory;
+	private LabManager labManager;
+	private Method export;
+
+	@Setup
+	public void setup() throws IOException, ReflectiveOperationException {
+		predictions = BenchmarkData.response(seriesCount, horizon, 0).getPredictions();
+		validation = BenchmarkData.validation(seriesCount, HISTORY_LENGTH, horizon);
+		exportDirectory = Files.createTempDirectory("deepar-benchmark");
+		context = BenchmarkData.context(BenchmarkData.series(seriesCount, HISTORY_LENGTH), null,
+				exportDirectory.resolve(BenchmarkData.TARGET).toString());
+
+		PredictionMetrics metrics = new PredictionMetrics();
+		BenchmarkData.inject(metrics, "registry", new SimpleMeterRegistry());
+		labManager = new LabManager();
+		BenchmarkData.inject(labManager, "metrics", metrics);
+		// the export of a prediction whose validation data is already loaded
+		export = LabManager.class.getDeclaredMethod("exportCategoryPredictionToCsv", Prediction.class, int.class,
+				PredictionContext.class, ValidationData.class);
+		export.setAccessible(true);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(exportDirectory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	/**
+	 * Collects the plotted values in the chart and renders it, like the LabManager does
+	 * while the response is read
+	 */
+	@Benchmark
+	public String plot() throws IOException {
+		PredictionChart chart = new PredictionChart();
+		for (int s = 0; s < predictions.size(); s++) {
+			String series = context.getSeriesNames().get(s);
+			String prefix = predictions.size() > 1 ? series + " " : "";
+			Map<String, double[]> quantiles = predictions.get(s).getQuantiles().getValues();
+			for (int i = 0; i < horizon; i++) {
+				LocalDateTime date = context.getPredictedDateTime(i);
+				for (Map.Entry<String, double[]> quantile : quantiles.entrySet()) {
+					chart.add(date, quantile.getValue()[i], prefix + ValueCategory.labelOfQuantile(quantile.getKey()));
+				}
+				double actual = validation.getActual(series, date);
+				if (!Double.isNaN(actual)) {
+					chart.add(date, actual, prefix + ValueCategory.ACTUAL.getValue());
+				}
+			}
+		}
+		return PlotUtil.plotTimeSeriesToHtml("DeepAR Prediction for target " + BenchmarkData.TARGET,
+				chart.toTable(BenchmarkData.TARGET));
+	}
+
+	@Benchmark
+	public void exportCsv(Blackhole blackhole) throws ReflectiveOperationException {
+		for (int s = 0; s < predictions.size(); s++) {
+			try {
+				blackhole.consume(export.invoke(labManager, predictions.get(s), s, context, validation));
+			} catch (InvocationTargetException e) {
+				throw new IllegalStateException("The export failed", e.getCause());
+			}
+		}
+	}
+}
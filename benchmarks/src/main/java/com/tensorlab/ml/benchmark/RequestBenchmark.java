@@ -0,0 +1,83 @@
+package com.tensorlab.ml.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.tensorlab.ml.DeepArInvoker;
+import com.tensorlab.ml.PredictionContext;
+import com.tensorlab.ml.RequestPayload;
+import com.tensorlab.ml.SeriesCsvReader;
+import com.tensorlab.ml.SeriesData;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.requeset.DeepArRequest;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.requeset.Instance;
+
+/**
+ * The building of a request: parsing of the input file, serialization of the
+ * instances, of the whole payload, and hashing of the payload with pre-serialized
+ * instances, which keys the prediction cache
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RequestBenchmark {
+
+	@Param({ "1", "10" })
+	private int seriesCount;
+
+	@Param({ "365", "3650" })
+	private int historyLength;
+
+	private final ObjectWriter instancesWriter = new ObjectMapper().writerFor(new TypeReference<List<Instance>>() {});
+	private final ObjectWriter requestWriter = new ObjectMapper().writerFor(DeepArRequest.class);
+	private final DeepArInvoker invoker = new DeepArInvoker();
+
+	private String csv;
+	private List<Instance> instances;
+	private DeepArRequest request;
+	private PredictionContext context;
+
+	@Setup
+	public void setup() throws IOException {
+		csv = BenchmarkData.inputCsv(seriesCount, historyLength);
+		SeriesData series = SeriesCsvReader.read(new StringReader(csv));
+		instances = BenchmarkData.instances(series);
+		request = BenchmarkData.request(series);
+		context = BenchmarkData.context(series, instancesWriter.writeValueAsBytes(instances), BenchmarkData.TARGET);
+	}
+
+	@Benchmark
+	public SeriesData parseCsv() throws IOException {
+		return SeriesCsvReader.read(new StringReader(csv));
+	}
+
+	@Benchmark
+	public byte[] serializeInstances() throws IOException {
+		return instancesWriter.writeValueAsBytes(instances);
+	}
+
+	@Benchmark
+	public String serializePayload() throws IOException {
+		try (RequestPayload payload = RequestPayload.serialize(requestWriter, request)) {
+			return payload.getSha256Hash();
+		}
+	}
+
+	@Benchmark
+	public String hashRequest() throws IOException {
+		return invoker.hashRequest(context);
+	}
+}
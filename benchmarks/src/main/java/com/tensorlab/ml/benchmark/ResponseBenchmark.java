@@ -0,0 +1,56 @@
+package com.tensorlab.ml.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponse;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponseReader;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponseReader.SamplesMode;
+
+/**
+ * The parsing of a response with the streaming reader. The samples, when the
+ * response has any, are skipped or reduced to the 0.05 and 0.95 quantiles
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResponseBenchmark {
+
+	@Param({ "1", "10" })
+	private int seriesCount;
+
+	@Param({ "30", "365" })
+	private int horizon;
+
+	@Param({ "0", "200" })
+	private int numSamples;
+
+	@Param({ "SKIP", "REDUCE" })
+	private SamplesMode samplesMode;
+
+	private byte[] json;
+	private DeepArResponseReader reader;
+
+	@Setup
+	public void setup() throws IOException {
+		json = BenchmarkData.responseJson(seriesCount, horizon, numSamples);
+		reader = new DeepArResponseReader(new ObjectMapper(), samplesMode, Arrays.asList(0.05, 0.95));
+	}
+
+	@Benchmark
+	public DeepArResponse read() throws IOException {
+		return reader.read(new ByteArrayInputStream(json));
+	}
+}
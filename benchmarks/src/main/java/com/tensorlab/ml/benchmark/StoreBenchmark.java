@@ -0,0 +1,82 @@
+package com.tensorlab.ml.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tensorlab.ml.AppConfig;
+import com.tensorlab.ml.PredictionContext;
+import com.tensorlab.ml.PredictionStore;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponse;
+
+/**
+ * The write throughput of the prediction store: {@link PredictionStore#append} of
+ * a forecast to a store in a temporary directory. Each iteration starts from an
+ * empty store, so the segments rolled over are part of the measure but the disk
+ * is not filled by a long run
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StoreBenchmark {
+
+	@Param({ "1", "10" })
+	private int seriesCount;
+
+	@Param({ "30", "365" })
+	private int horizon;
+
+	private PredictionContext context;
+	private DeepArResponse response;
+	private Path directory;
+	private PredictionStore store;
+
+	@Setup
+	public void setup() throws IOException {
+		context = BenchmarkData.context(BenchmarkData.series(seriesCount, 100), null, BenchmarkData.TARGET);
+		response = BenchmarkData.response(seriesCount, horizon, 0);
+	}
+
+	@Setup(Level.Iteration)
+	public void openStore() throws Exception {
+		directory = Files.createTempDirectory("store-benchmark");
+		AppConfig appConfig = new AppConfig();
+		appConfig.getStoreConfig().setDirectory(directory.toString());
+		// no compaction while measured
+		appConfig.getStoreConfig().setCompactionInterval(24 * 60 * 60 * 1000);
+		store = new PredictionStore();
+		BenchmarkData.inject(store, "appConfig", appConfig);
+		store.afterPropertiesSet();
+	}
+
+	@TearDown(Level.Iteration)
+	public void closeStore() throws Exception {
+		store.destroy();
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public void append() throws IOException {
+		store.append(context, response);
+	}
+}
@@ -0,0 +1,50 @@
+package com.tensorlab.ml.benchmark.legacy;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The response classes the application bound before the primitive arrays: every
+ * value boxed in a list, and a map of additional properties per object. Kept to
+ * compare the memory and GC cost of both bindings, see {@code BindingBenchmark}
+ */
+public class LegacyDeepArResponse {
+	public List<Prediction> predictions;
+	public Map<String, Object> additionalProperties = new HashMap<>();
+
+	@JsonAnySetter
+	public void setAdditionalProperty(String name, Object value) {
+		additionalProperties.put(name, value);
+	}
+
+	public static class Prediction {
+		public Quantiles quantiles;
+		public List<List<Double>> samples;
+		public List<Double> mean;
+		public Map<String, Object> additionalProperties = new HashMap<>();
+
+		@JsonAnySetter
+		public void setAdditionalProperty(String name, Object value) {
+			additionalProperties.put(name, value);
+		}
+	}
+
+	public static class Quantiles {
+		@JsonProperty("0.1")
+		public List<Double> _01;
+		@JsonProperty("0.9")
+		public List<Double> _09;
+		@JsonProperty("0.5")
+		public List<Double> _05;
+		public Map<String, Object> additionalProperties = new HashMap<>();
+
+		@JsonAnySetter
+		public void setAdditionalProperty(String name, Object value) {
+			additionalProperties.put(name, value);
+		}
+	}
+}
@@ -1,12 +1,20 @@
 package com.tensorlab.ml;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import javax.annotation.PostConstruct;
+import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 import org.springframework.validation.annotation.Validated;
 
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponseReader;
+
 import lombok.Data;
 import lombok.Getter;
 import lombok.ToString;
@@ -20,6 +28,28 @@ import lombok.extern.slf4j.Slf4j;
 public class AppConfig {
 	protected static final String CONFIG_PREFIX = "app-config";
 	private AwsAuthConfig AwsAuthConfig;
+	/** the endpoints the invocations are routed to, the endpoint of the AwsAuthConfig when empty */
+	@Valid
+	private List<EndpointConfig> endpoints = new ArrayList<>();
+	private RoutingConfig routingConfig = new RoutingConfig();
+	private HttpClientConfig httpClientConfig = new HttpClientConfig();
+	private AsyncConfig asyncConfig = new AsyncConfig();
+	private BatchConfig batchConfig = new BatchConfig();
+	private ResponseConfig responseConfig = new ResponseConfig();
+	private CacheConfig cacheConfig = new CacheConfig();
+	private StoreConfig storeConfig = new StoreConfig();
+	private ExportConfig exportConfig = new ExportConfig();
+	private DataConfig dataConfig = new DataConfig();
+	private ResilienceConfig resilienceConfig = new ResilienceConfig();
+	private LimitConfig limitConfig = new LimitConfig();
+	private PrecomputeConfig precomputeConfig = new PrecomputeConfig();
+	private HttpCacheConfig httpCacheConfig = new HttpCacheConfig();
+	/** the inference options used when neither the target nor the request selects a profile */
+	private PredictionProfile defaultProfile = PredictionProfile.defaults();
+	/** named inference profiles, only the values they set override the default profile */
+	private Map<String, PredictionProfile> profiles = new HashMap<>();
+	/** the name of the profile used by each target */
+	private Map<String, String> targetProfiles = new HashMap<>();
 
 	@Data
 	public static class AwsAuthConfig {
@@ -37,6 +67,242 @@ public class AppConfig {
 		private String serviceHost;
 		@NotNull
 		private String serviceEndPoint;
+		/** https, or http for a local stub endpoint */
+		private String scheme = "https";
+
+		/**
+		 * Gets the endpoint of this configuration, used when no endpoint is configured
+		 */
+		public EndpointConfig toEndpointConfig() {
+			EndpointConfig endpoint = new EndpointConfig();
+			endpoint.setServiceEndPoint(serviceEndPoint);
+			endpoint.setServiceRegion(serviceRegion);
+			endpoint.setServiceHost(serviceHost);
+			endpoint.setScheme(scheme);
+			return endpoint;
+		}
+	}
+
+	/**
+	 * A SageMaker endpoint, signed with the credentials of the AwsAuthConfig. The name
+	 * tells the endpoints apart in the logs and defaults to the endpoint name, and the
+	 * host defaults to the SageMaker runtime host of the region
+	 */
+	@Data
+	public static class EndpointConfig {
+		private String name;
+		@NotNull
+		private String serviceEndPoint;
+		@NotNull
+		private String serviceRegion;
+		private String serviceHost;
+		/** https, or http for a local stub endpoint */
+		private String scheme = "https";
+		/** the invocations per second sent to the endpoint, overriding the rateLimit of the LimitConfig */
+		private Double rateLimit;
+	}
+
+	/**
+	 * How the invocations are spread over the endpoints, see {@link EndpointRouter}.
+	 * With sharding, each target is sent to the endpoint owning it on a consistent
+	 * hash ring of virtualNodes nodes per endpoint, and to the next endpoints of the
+	 * ring when it's unavailable
+	 */
+	@Data
+	public static class RoutingConfig {
+		private EndpointRouter.Strategy strategy = EndpointRouter.Strategy.LEAST_OUTSTANDING;
+		private boolean sharding = false;
+		private int virtualNodes = 100;
+	}
+
+	/**
+	 * Settings of the pooled HTTP client shared by all SageMaker invocations,
+	 * all time values are in milliseconds. The connection limits are split with
+	 * the non-blocking client, see {@link AsyncConfig#getConnectionShare()}
+	 */
+	@Data
+	public static class HttpClientConfig {
+		private int maxTotal = 50;
+		private int maxPerRoute = 20;
+		private long keepAlive = 30 * 1000;
+		private long idleEviction = 60 * 1000;
+		private int validateAfterInactivity = 2 * 1000;
+		private int connectTimeout = 10 * 1000;
+		private int socketTimeout = 60 * 1000;
+		private int connectionRequestTimeout = 5 * 1000;
+	}
+
+	/**
+	 * Limits of the asynchronous prediction endpoint, requests beyond
+	 * maxConcurrentRequests or a full worker queue are rejected with 429.
+	 * The non-blocking client gets connectionShare of the connection limits of
+	 * {@link HttpClientConfig}, the blocking client keeps the rest
+	 */
+	@Data
+	public static class AsyncConfig {
+		private int maxConcurrentRequests = 64;
+		private double connectionShare = 0.5;
+		private int ioThreads = Runtime.getRuntime().availableProcessors();
+		private int workerThreads = Runtime.getRuntime().availableProcessors();
+		private int queueCapacity = 100;
+	}
+
+	/**
+	 * Limits used to pack the series of several targets into one endpoint request,
+	 * SageMaker rejects payloads larger than 6 MB
+	 */
+	@Data
+	public static class BatchConfig {
+		private int maxInstancesPerRequest = 100;
+		private long maxPayloadBytes = 5 * 1024 * 1024;
+		private int maxParallelInvocations = 4;
+	}
+
+	/**
+	 * How the samples of the responses are handled, see
+	 * {@link DeepArResponseReader.SamplesMode}. With REDUCE, the sampleQuantiles are
+	 * computed from the samples and added to the quantiles of each prediction
+	 */
+	@Data
+	public static class ResponseConfig {
+		private DeepArResponseReader.SamplesMode samplesMode = DeepArResponseReader.SamplesMode.SKIP;
+		private List<Double> sampleQuantiles = new ArrayList<>();
+	}
+
+	/**
+	 * The cache of the rendered predictions, entries expire ttl milliseconds after
+	 * they have been computed
+	 */
+	@Data
+	public static class CacheConfig {
+		private boolean enabled = true;
+		private long maxSize = 1000;
+		private long ttl = 5 * 60 * 1000;
+	}
+
+	/**
+	 * The append-only store of the forecasts, see {@link PredictionStore}. Forecasts
+	 * older than retention milliseconds, or beyond maxPerTarget per target, are
+	 * dropped by the compaction running every compactionInterval milliseconds
+	 */
+	@Data
+	public static class StoreConfig {
+		private boolean enabled = true;
+		private String directory = "prediction-store";
+		private long maxSegmentBytes = 64 * 1024 * 1024;
+		private long retention = 7 * 24 * 60 * 60 * 1000L;
+		private int maxPerTarget = 1000;
+		private long compactionInterval = 10 * 60 * 1000;
+	}
+
+	/**
+	 * The files exported for each prediction, the plots are rendered from memory
+	 * so the csv files are only useful to inspect the plotted data
+	 */
+	@Data
+	public static class ExportConfig {
+		private boolean csvEnabled = false;
+	}
+
+	/**
+	 * Where the input and validation files are looked up, a file found in the data
+	 * directory takes precedence over the one of the classpath, see {@link DataFiles}.
+	 * With a history window, only the last historyWindow observations of each series
+	 * are sent, the window must cover the context_length of the model plus its
+	 * largest lag. A window of 0 sends the whole series. The files are decoded with
+	 * charset, an ASCII compatible one, the malformed bytes are replaced
+	 */
+	@Data
+	public static class DataConfig {
+		private String directory;
+		private String charset = "UTF-8";
+		private int historyWindow = 0;
+		/** the history window of each target, overriding historyWindow */
+		private Map<String, Integer> targetHistoryWindows = new HashMap<>();
+	}
+
+	/**
+	 * Retries, hedging and circuit breaking of the endpoint invocations, see
+	 * {@link EndpointResilience}, all time values are in milliseconds. Each invocation
+	 * earns retryBudgetRatio retries, up to retryBudgetCapacity. Hedged requests are
+	 * only sent by the asynchronous invocations, after the hedgePercentile of the
+	 * recent latencies. The circuit of an endpoint opens for openDuration after
+	 * failureThreshold consecutive failures, the last stored forecast is served while
+	 * every circuit is open
+	 */
+	@Data
+	public static class ResilienceConfig {
+		private int maxAttempts = 3;
+		private long initialBackoff = 100;
+		private long maxBackoff = 2000;
+		private double retryBudgetRatio = 0.2;
+		private int retryBudgetCapacity = 10;
+		private boolean hedgingEnabled = false;
+		private double hedgePercentile = 0.95;
+		private long minHedgeDelay = 50;
+		private int failureThreshold = 5;
+		private long openDuration = 30 * 1000;
+	}
+
+	/**
+	 * Client-side limits of the invocations of each endpoint, see {@link RateLimiter}
+	 * and {@link ConcurrencyLimiter}. At most rateLimit invocations per second are sent,
+	 * in bursts of up to rateBurst, a rateLimit of 0 disables the rate limiting. The
+	 * invocations in flight are bounded by an adaptive limit starting at
+	 * initialConcurrency: it's multiplied by backoffRatio when the endpoint throttles,
+	 * times out or answers latencyTolerance times slower than its average latency. Up
+	 * to maxQueueSize invocations wait up to queueTimeout milliseconds to be admitted,
+	 * the last stored forecast is served to the others
+	 */
+	@Data
+	public static class LimitConfig {
+		private double rateLimit = 0;
+		private int rateBurst = 10;
+		private int initialConcurrency = 10;
+		private int minConcurrency = 1;
+		private int maxConcurrency = 64;
+		private double backoffRatio = 0.9;
+		private double latencyTolerance = 2;
+		private int maxQueueSize = 100;
+		private long queueTimeout = 5 * 1000;
+	}
+
+	/**
+	 * The forecasts of the hot targets, precomputed in the background, see
+	 * {@link ForecastPrecomputer}. Each target is predicted again every interval
+	 * milliseconds, or at the times of its cron expression, and changeDelay
+	 * milliseconds after its input or validation file changed when onChange is set,
+	 * the due targets are predicted together in batches. The precomputed forecast of a
+	 * target is served to the requests without inference options as long as its files
+	 * are unchanged and it's not older than maxAge milliseconds, 0 for no limit
+	 */
+	@Data
+	public static class PrecomputeConfig {
+		private boolean enabled = false;
+		private List<String> targets = new ArrayList<>();
+		private long interval = 15 * 60 * 1000;
+		/** the interval of each target, overriding interval */
+		private Map<String, Long> targetIntervals = new HashMap<>();
+		/** the cron expression of each target, e.g. "0 0 * * * *", overriding its interval */
+		private Map<String, String> targetCrons = new HashMap<>();
+		private boolean onChange = true;
+		private long changeDelay = 1000;
+		private long maxAge = 0;
+	}
+
+	/**
+	 * The HTTP caching of the plots served by /predict/sagemaker/deepar. With etagEnabled,
+	 * each plot gets a strong ETag computed from its content, and a request sending it
+	 * back in If-None-Match gets a 304 without the plot while the forecast is unchanged.
+	 * cacheControl is the Cache-Control header of the plots, e.g. "max-age=300" lets the
+	 * browsers reuse a plot for 5 minutes without asking for it
+	 */
+	@Data
+	public static class HttpCacheConfig {
+		private boolean etagEnabled = true;
+		private String cacheControl = "no-cache";
+		/** the Cache-Control header of the plots of each target, overriding cacheControl */
+		private Map<String, String> targetCacheControls = new HashMap<>();
 	}
 
 	@PostConstruct
@@ -0,0 +1,18 @@
+package com.tensorlab.ml;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponse;
+
+import lombok.Data;
+
+/**
+ * The result of a batch prediction, the predictions of each target are keyed by
+ * the target name, targets that could not be predicted are listed in errors
+ */
+@Data
+public class BatchPredictionResponse {
+	private Map<String, DeepArResponse> predictions = new LinkedHashMap<>();
+	private Map<String, String> errors = new LinkedHashMap<>();
+}
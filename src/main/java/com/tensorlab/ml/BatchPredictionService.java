@@ -0,0 +1,219 @@
+package com.tensorlab.ml;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.requeset.DeepArRequest;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.requeset.Instance;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponse;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.Prediction;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Predicts many targets with as few endpoint invocations as possible. The
+ * instances of the targets sharing the same request configuration are packed
+ * into requests bounded by {@link AppConfig.BatchConfig}, the requests are sent
+ * in parallel and the predictions of each response are split back per target
+ * in the order their instances were packed. When the targets are sharded over
+ * several endpoints, only the targets of the same endpoint share a request
+ */
+@Slf4j
+@Service
+public class BatchPredictionService {
+
+	@Autowired
+	private AppConfig appConfig;
+
+	@Autowired
+	private LabManager labManager;
+
+	@Autowired
+	private DeepArInvoker invoker;
+
+	@Autowired
+	private ThreadPoolTaskExecutor predictionExecutor;
+
+	@Autowired
+	private PredictionStore predictionStore;
+
+	@Autowired
+	private EndpointRouter router;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	/** the position of the instances of a target within a packed request */
+	@RequiredArgsConstructor
+	private static class Slot {
+		final PredictionContext context;
+		final int offset;
+		final int count;
+	}
+
+	private static class Chunk {
+		final DeepArRequest request = new DeepArRequest();
+		final List<Slot> slots = new ArrayList<>();
+		/** the target the request is routed for, the targets of a chunk share their endpoint */
+		final String routingKey;
+		long payloadBytes;
+
+		Chunk(PredictionContext first) {
+			routingKey = first.getTarget();
+			request.setInstances(new ArrayList<>());
+			request.setConfiguration(first.getRequest().getConfiguration());
+		}
+
+		int instanceCount() {
+			return request.getInstances().size();
+		}
+
+		void add(PredictionContext context, long instanceBytes) {
+			List<Instance> instances = context.getRequest().getInstances();
+			slots.add(new Slot(context, instanceCount(), instances.size()));
+			request.getInstances().addAll(instances);
+			payloadBytes += instanceBytes;
+		}
+	}
+
+	/**
+	 * Predicts all the given targets
+	 * @param targets the names of the targets, duplicates are ignored
+	 * @return the predictions per target, and the error of each target that failed
+	 */
+	public BatchPredictionResponse predict(List<String> targets) {
+		return predict(targets, null);
+	}
+
+	/**
+	 * Same as {@link #predict(List)}, each forecast is also handed to the listener
+	 * @param listener receives the context and the forecast of each predicted target once
+	 * it's stored, may be null
+	 */
+	public BatchPredictionResponse predict(List<String> targets,
+			BiConsumer<PredictionContext, DeepArResponse> listener) {
+		BatchPredictionResponse result = new BatchPredictionResponse();
+		log.info("batch predict - start, targets: {}", targets.size());
+
+		List<Chunk> chunks = new ArrayList<>();
+		for (List<PredictionContext> group : buildContextsByConfiguration(targets, result).values()) {
+			chunks.addAll(pack(group, result));
+		}
+
+		int parallelism = Math.max(1, appConfig.getBatchConfig().getMaxParallelInvocations());
+		for (int start = 0; start < chunks.size(); start += parallelism) {
+			List<Chunk> wave = chunks.subList(start, Math.min(start + parallelism, chunks.size()));
+			List<CompletableFuture<DeepArResponse>> futures = new ArrayList<>();
+			for (Chunk chunk : wave) {
+				log.info("batch predict - sending {} instances of {} targets, ~{} bytes", chunk.instanceCount(),
+						chunk.slots.size(), chunk.payloadBytes);
+				futures.add(invoker.invokeAsync(chunk.request,
+						appConfig.getRoutingConfig().isSharding() ? chunk.routingKey : null, predictionExecutor, null));
+			}
+			for (int i = 0; i < wave.size(); i++) {
+				try {
+					demultiplex(wave.get(i), futures.get(i).join(), result, listener);
+				} catch (CompletionException e) {
+					log.error("Error has occurred when invoking the batch request: " + e, e);
+					reportError(wave.get(i), String.valueOf(e.getCause()), result);
+				}
+			}
+		}
+
+		log.info("batch predict - done, predicted: {}, failed: {}", result.getPredictions().size(),
+				result.getErrors().size());
+		return result;
+	}
+
+	/**
+	 * Builds the context of every target and groups them by request configuration and
+	 * endpoint, only targets with the same configuration can share a request
+	 */
+	private Map<String, List<PredictionContext>> buildContextsByConfiguration(List<String> targets,
+			BatchPredictionResponse result) {
+		Map<String, List<PredictionContext>> groups = new LinkedHashMap<>();
+		for (String target : new LinkedHashSet<>(targets)) {
+			try {
+				PredictionContext context = labManager.buildPredictionContext(target);
+				String groupKey = objectMapper.writeValueAsString(context.getRequest().getConfiguration()) + '@'
+						+ router.getCacheScope(target);
+				groups.computeIfAbsent(groupKey, k -> new ArrayList<>()).add(context);
+			} catch (IOException | RuntimeException e) {
+				log.error("Error has occurred when loading target " + target + ": " + e, e);
+				result.getErrors().put(target, String.valueOf(e));
+			}
+		}
+		return groups;
+	}
+
+	private List<Chunk> pack(List<PredictionContext> contexts, BatchPredictionResponse result) {
+		AppConfig.BatchConfig batchConfig = appConfig.getBatchConfig();
+		List<Chunk> chunks = new ArrayList<>();
+		Chunk current = null;
+		for (PredictionContext context : contexts) {
+			long instanceBytes;
+			try {
+				instanceBytes = context.getInstancesJson() != null ? context.getInstancesJson().length
+						: invoker.measureSerializedSize(context.getRequest().getInstances());
+			} catch (IOException e) {
+				result.getErrors().put(context.getTarget(), String.valueOf(e));
+				continue;
+			}
+			int instanceCount = context.getRequest().getInstances().size();
+			if (current == null
+					|| current.instanceCount() + instanceCount > batchConfig.getMaxInstancesPerRequest()
+					|| current.payloadBytes + instanceBytes > batchConfig.getMaxPayloadBytes()) {
+				if (instanceCount > batchConfig.getMaxInstancesPerRequest()
+						|| instanceBytes > batchConfig.getMaxPayloadBytes()) {
+					log.warn("Target {} alone exceeds the batch limits, sending it in its own request",
+							context.getTarget());
+				}
+				current = new Chunk(context);
+				chunks.add(current);
+			}
+			current.add(context, instanceBytes);
+		}
+		return chunks;
+	}
+
+	private void demultiplex(Chunk chunk, DeepArResponse response, BatchPredictionResponse result,
+			BiConsumer<PredictionContext, DeepArResponse> listener) {
+		List<Prediction> predictions = response == null ? null : response.getPredictions();
+		if (predictions == null || predictions.size() != chunk.instanceCount()) {
+			reportError(chunk, String.format("Expected %d predictions but received %d", chunk.instanceCount(),
+					predictions == null ? 0 : predictions.size()), result);
+			return;
+		}
+		for (Slot slot : chunk.slots) {
+			DeepArResponse targetResponse = new DeepArResponse();
+			targetResponse.setPredictions(new ArrayList<>(predictions.subList(slot.offset, slot.offset + slot.count)));
+			result.getPredictions().put(slot.context.getTarget(), targetResponse);
+			try {
+				predictionStore.append(slot.context, targetResponse);
+			} catch (IOException e) {
+				log.error("Error has occurred when storing the forecast of target " + slot.context.getTarget() + ": " + e, e);
+			}
+			if (listener != null) {
+				listener.accept(slot.context, targetResponse);
+			}
+		}
+	}
+
+	private void reportError(Chunk chunk, String error, BatchPredictionResponse result) {
+		for (Slot slot : chunk.slots) {
+			result.getErrors().put(slot.context.getTarget(), error);
+		}
+	}
+}
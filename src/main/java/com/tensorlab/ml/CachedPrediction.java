@@ -0,0 +1,17 @@
+package com.tensorlab.ml;
+
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponse;
+
+import lombok.ToString;
+import lombok.Value;
+
+/**
+ * A prediction kept by the {@link PredictionCache}: the parsed response and the
+ * plot rendered from it
+ */
+@Value
+public class CachedPrediction {
+	private DeepArResponse response;
+	@ToString.Exclude
+	private String plot;
+}
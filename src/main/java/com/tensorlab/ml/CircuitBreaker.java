@@ -0,0 +1,109 @@
+package com.tensorlab.ml;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Stops invoking an endpoint that keeps failing. The circuit opens after
+ * failureThreshold consecutive failures and rejects the invocations for
+ * openDuration milliseconds, then lets a single trial invocation through: its
+ * success closes the circuit again, its failure opens it for another period. Each
+ * invocation let through holds a {@link Permit}, only the permit of the trial lets
+ * another trial through when it's released
+ */
+@Slf4j
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final String name;
+	private final int failureThreshold;
+	private final long openDuration;
+
+	private State state = State.CLOSED;
+	private int consecutiveFailures;
+	private long openedAt;
+	/** the permit of the trial invocation in flight, null if none */
+	private Permit trial;
+
+	/**
+	 * Identifies an invocation let through the circuit
+	 */
+	public static final class Permit {
+		private Permit() {
+		}
+	}
+
+	/** the permit of the invocations let through the closed circuit */
+	private static final Permit CLOSED_PERMIT = new Permit();
+
+	public CircuitBreaker(String name, int failureThreshold, long openDuration) {
+		this.name = name;
+		this.failureThreshold = failureThreshold;
+		this.openDuration = openDuration;
+	}
+
+	/**
+	 * Checks whether an invocation may be sent, the caller must then report its
+	 * outcome with {@link #onSuccess()}, {@link #onFailure()} or {@link #release(Permit)}
+	 * @return the permit of the invocation, or null if the circuit is open, or half
+	 * open with its trial in flight
+	 */
+	public synchronized Permit tryAcquire() {
+		if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDuration) {
+			state = State.HALF_OPEN;
+			trial = null;
+			log.info("Circuit {} half open, sending a trial invocation", name);
+		}
+		if (state == State.CLOSED) {
+			return CLOSED_PERMIT;
+		}
+		if (state == State.HALF_OPEN && trial == null) {
+			trial = new Permit();
+			return trial;
+		}
+		return null;
+	}
+
+	/**
+	 * Reports an invocation answered by the endpoint
+	 */
+	public synchronized void onSuccess() {
+		if (state != State.CLOSED) {
+			log.info("Circuit {} closed", name);
+		}
+		state = State.CLOSED;
+		consecutiveFailures = 0;
+		trial = null;
+	}
+
+	/**
+	 * Reports an invocation the endpoint failed to answer
+	 */
+	public synchronized void onFailure() {
+		consecutiveFailures++;
+		if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+			log.warn("Circuit {} open for {} ms after {} consecutive failures", name, openDuration, consecutiveFailures);
+			state = State.OPEN;
+			openedAt = System.currentTimeMillis();
+			trial = null;
+		}
+	}
+
+	/**
+	 * Reports an invocation whose outcome tells nothing about the endpoint, e.g. it
+	 * was cancelled or could not be sent. Another trial is let through only when the
+	 * released invocation was the trial
+	 * @param permit the permit of the invocation
+	 */
+	public synchronized void release(Permit permit) {
+		if (permit == trial) {
+			trial = null;
+		}
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+}
@@ -0,0 +1,127 @@
+package com.tensorlab.ml;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Limits the invocations in flight to an endpoint, the limit adapts to the endpoint
+ * by additive increase and multiplicative decrease (AIMD): each invocation answered
+ * in time while the limit is used raises it by 1/limit, about one per round trip,
+ * and each throttled or slow invocation multiplies it by backoffRatio. The
+ * invocations beyond the limit wait in a bounded queue, in arrival order
+ */
+@Slf4j
+public class ConcurrencyLimiter {
+	private final String name;
+	private final int minLimit;
+	private final int maxLimit;
+	private final double backoffRatio;
+	private final int maxQueueSize;
+
+	private double limit;
+	private int inFlight;
+	/** the waiting invocations, a waiter completed by its caller has given up */
+	private final Deque<CompletableFuture<Void>> queue = new ArrayDeque<>();
+
+	public ConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+			int maxQueueSize) {
+		this.name = name;
+		this.minLimit = Math.max(1, minLimit);
+		this.maxLimit = Math.max(this.minLimit, maxLimit);
+		this.backoffRatio = backoffRatio;
+		this.maxQueueSize = maxQueueSize;
+		this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+	}
+
+	/**
+	 * Acquires a slot, the caller must then report the outcome of its invocation with
+	 * {@link #onSuccess()}, {@link #onDropped()} or {@link #release()}
+	 * @return a future completed once the slot is acquired, already completed if the
+	 * limit is not reached. Cancelling it, or completing it exceptionally, gives up the
+	 * wait. null if the queue is full
+	 */
+	public synchronized CompletableFuture<Void> acquire() {
+		queue.removeIf(CompletableFuture::isDone);
+		if (inFlight < (int) limit && queue.isEmpty()) {
+			inFlight++;
+			return CompletableFuture.completedFuture(null);
+		}
+		if (queue.size() >= maxQueueSize) {
+			return null;
+		}
+		CompletableFuture<Void> waiter = new CompletableFuture<>();
+		queue.add(waiter);
+		return waiter;
+	}
+
+	/**
+	 * Reports an invocation answered in time, the limit grows when it's used
+	 */
+	public void onSuccess() {
+		synchronized (this) {
+			if (inFlight * 2 >= limit && limit < maxLimit) {
+				int previous = (int) limit;
+				limit = Math.min(maxLimit, limit + 1 / limit);
+				if ((int) limit != previous) {
+					log.debug("Concurrency limit of {} raised to {}, in flight: {}", name, (int) limit, inFlight);
+				}
+			}
+		}
+		release();
+	}
+
+	/**
+	 * Reports an invocation the endpoint throttled, or answered too slowly
+	 */
+	public void onDropped() {
+		synchronized (this) {
+			int previous = (int) limit;
+			limit = Math.max(minLimit, limit * backoffRatio);
+			if ((int) limit != previous) {
+				log.debug("Concurrency limit of {} lowered to {}, in flight: {}", name, (int) limit, inFlight);
+			}
+		}
+		release();
+	}
+
+	/**
+	 * Releases a slot without adapting the limit, e.g. the invocation was cancelled
+	 */
+	public void release() {
+		List<CompletableFuture<Void>> granted = new ArrayList<>();
+		synchronized (this) {
+			inFlight--;
+			while (inFlight < (int) limit && !queue.isEmpty()) {
+				CompletableFuture<Void> waiter = queue.poll();
+				if (!waiter.isDone()) {
+					inFlight++;
+					granted.add(waiter);
+				}
+			}
+		}
+		// the waiters are resumed out of the lock, their invocations are sent by this thread
+		for (CompletableFuture<Void> waiter : granted) {
+			if (!waiter.complete(null)) {
+				// given up meanwhile
+				release();
+			}
+		}
+	}
+
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	public synchronized int getQueued() {
+		return (int) queue.stream().filter(waiter -> !waiter.isDone()).count();
+	}
+}
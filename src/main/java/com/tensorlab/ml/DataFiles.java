@@ -0,0 +1,167 @@
+package com.tensorlab.ml;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ResourceUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Locates the input and validation files and notifies their changes. A file is
+ * looked up in the data directory first, when one is configured, then in the
+ * classpath. The directories of the located files, and the data directory, are
+ * watched so that the loaded data can be invalidated when a file is modified,
+ * deleted, or created in the data directory
+ */
+@Slf4j
+@Component
+public class DataFiles implements DisposableBean {
+
+	@Autowired
+	private AppConfig appConfig;
+
+	/** the listeners of each file name */
+	private final Map<String, CopyOnWriteArrayList<Consumer<String>>> listeners = new ConcurrentHashMap<>();
+	private final Set<Path> watchedDirectories = ConcurrentHashMap.newKeySet();
+	private WatchService watchService;
+
+	/**
+	 * Locates a data file
+	 * @param fileName the name of the file, e.g. prediction-input-sample.csv
+	 * @return the path of the file
+	 * @throws FileNotFoundException if the file is neither in the data directory nor in the classpath
+	 */
+	public Path resolve(String fileName) throws FileNotFoundException {
+		String directory = appConfig.getDataConfig().getDirectory();
+		if (directory != null && !directory.isEmpty()) {
+			Path path = Paths.get(directory, fileName);
+			if (Files.isRegularFile(path)) {
+				return path.toAbsolutePath();
+			}
+		}
+		return ResourceUtils.getFile(ResourceUtils.CLASSPATH_URL_PREFIX + fileName).toPath().toAbsolutePath();
+	}
+
+	/**
+	 * Creates a decoder of the configured charset, replacing the malformed and
+	 * unmappable bytes instead of failing on the files written with another charset
+	 */
+	public CharsetDecoder newDecoder() {
+		return Charset.forName(appConfig.getDataConfig().getCharset()).newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Opens a data file for reading, see {@link #newDecoder()}
+	 */
+	public Reader newReader(Path file) throws IOException {
+		return new BufferedReader(new InputStreamReader(Files.newInputStream(file), newDecoder()));
+	}
+
+	/**
+	 * Registers a listener called when the file, as located by {@link #resolve(String)},
+	 * changes. The listener must be cheap, it's called on the watcher thread
+	 * @param file the located file
+	 * @param listener receives the name of the file when it's modified or deleted, or when
+	 * a file of the same name is created in the data directory. A listener registered
+	 * several times for the same file is called once
+	 */
+	public void watch(Path file, Consumer<String> listener) throws IOException {
+		watch(file.getFileName().toString(), listener);
+		register(file.getParent());
+	}
+
+	/**
+	 * Registers a listener called when a file of this name is created, modified or
+	 * deleted in the data directory, e.g. to pick up a file that was not found
+	 * @see #watch(Path, Consumer)
+	 */
+	public void watch(String fileName, Consumer<String> listener) throws IOException {
+		listeners.computeIfAbsent(fileName, k -> new CopyOnWriteArrayList<>()).addIfAbsent(listener);
+		String directory = appConfig.getDataConfig().getDirectory();
+		if (directory != null && !directory.isEmpty() && Files.isDirectory(Paths.get(directory))) {
+			register(Paths.get(directory).toAbsolutePath());
+		}
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		if (watchService != null) {
+			watchService.close();
+		}
+	}
+
+	/**
+	 * Registers the directory to the watch service, the watch thread is started with
+	 * the first registration
+	 */
+	private synchronized void register(Path directory) throws IOException {
+		if (directory == null || watchedDirectories.contains(directory)) {
+			return;
+		}
+		if (watchService == null) {
+			watchService = FileSystems.getDefault().newWatchService();
+			Thread watcher = new Thread(this::processEvents, "data-files-watcher");
+			watcher.setDaemon(true);
+			watcher.start();
+		}
+		directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+				StandardWatchEventKinds.ENTRY_DELETE);
+		watchedDirectories.add(directory);
+		log.info("Watching data directory: {}", directory);
+	}
+
+	private void processEvents() {
+		try {
+			while (true) {
+				WatchKey key = watchService.take();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						// events were lost, notify every listener
+						listeners.forEach((fileName, fileListeners) -> fileListeners.forEach(l -> l.accept(fileName)));
+						continue;
+					}
+					String fileName = ((Path) event.context()).getFileName().toString();
+					List<Consumer<String>> fileListeners = listeners.get(fileName);
+					if (fileListeners != null) {
+						log.info("Data file {} changed: {}", fileName, event.kind());
+						fileListeners.forEach(l -> l.accept(fileName));
+					}
+				}
+				if (!key.reset()) {
+					watchedDirectories.remove(key.watchable());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException e) {
+			log.debug("Data files watcher stopped");
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.tensorlab.ml;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.Period;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAmount;
+
+/**
+ * The date times of the input and validation files: a date, or a date and a time
+ * of day separated by a space or a 'T', e.g. '2019-04-01', '2019-04-01 13:00:00'
+ * or '2019-04-01T13:00'. The interval between observations taken at the same time
+ * of day is a {@link Period}, so monthly series follow the calendar, the other
+ * intervals, e.g. hourly, are a {@link Duration}
+ */
+final class DateTimes {
+	/** the interval of a series whose interval cannot be inferred */
+	static final Period DEFAULT_FREQUENCY = Period.ofDays(1);
+
+	/** accepts both '2019-04-01' and '2019-4-1' */
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("uuuu-M-d");
+
+	private DateTimes() {
+	}
+
+	/**
+	 * Parses a date time, a date alone is at the start of the day
+	 * @throws java.time.format.DateTimeParseException if the text is not a date time
+	 */
+	static LocalDateTime parse(String text) {
+		String trimmed = text.trim();
+		int separator = timeSeparator(trimmed);
+		LocalDate date = LocalDate.parse(separator < 0 ? trimmed : trimmed.substring(0, separator), DATE_FORMAT);
+		return separator < 0 ? date.atStartOfDay() : date.atTime(LocalTime.parse(trimmed.substring(separator + 1)));
+	}
+
+	/**
+	 * Gets the format of a date time, to write other date times like it: a date
+	 * alone, or a date and a time of day with or without seconds
+	 */
+	static DateTimeFormatter formatOf(String text) {
+		String trimmed = text.trim();
+		int separator = timeSeparator(trimmed);
+		if (separator < 0) {
+			return DateTimeFormatter.ISO_LOCAL_DATE;
+		}
+		String time = trimmed.substring(separator + 1);
+		return DateTimeFormatter.ofPattern("uuuu-MM-dd" + (trimmed.charAt(separator) == 'T' ? "'T'" : " ")
+				+ (time.length() > "HH:mm".length() ? "HH:mm:ss" : "HH:mm"));
+	}
+
+	/**
+	 * Gets the format of the date times of a series with a frequency, when the format
+	 * of its file is not known
+	 */
+	static DateTimeFormatter formatOf(TemporalAmount frequency) {
+		return frequency instanceof Duration ? DateTimeFormatter.ofPattern("uuuu-MM-dd HH:mm:ss")
+				: DateTimeFormatter.ISO_LOCAL_DATE;
+	}
+
+	/**
+	 * Infers the interval of a series from two consecutive observations, see
+	 * {@link #DEFAULT_FREQUENCY} when they are not in order
+	 */
+	static TemporalAmount between(LocalDateTime previous, LocalDateTime last) {
+		if (previous.toLocalTime().equals(last.toLocalTime())) {
+			Period period = Period.between(previous.toLocalDate(), last.toLocalDate());
+			return period.isNegative() || period.isZero() ? DEFAULT_FREQUENCY : period;
+		}
+		Duration duration = Duration.between(previous, last);
+		return duration.isNegative() || duration.isZero() ? DEFAULT_FREQUENCY : duration;
+	}
+
+	/**
+	 * Multiplies an interval returned by {@link #between(LocalDateTime, LocalDateTime)}
+	 */
+	static TemporalAmount multiply(TemporalAmount frequency, int count) {
+		return frequency instanceof Duration ? ((Duration) frequency).multipliedBy(count)
+				: ((Period) frequency).multipliedBy(count);
+	}
+
+	/**
+	 * Parses an interval written with its toString, e.g. P1D or PT1H
+	 */
+	static TemporalAmount parseFrequency(String text) {
+		return text.startsWith("PT") ? Duration.parse(text) : Period.parse(text);
+	}
+
+	private static int timeSeparator(String text) {
+		int separator = text.indexOf(' ');
+		return separator >= 0 ? separator : text.indexOf('T');
+	}
+}
@@ -0,0 +1,484 @@
+package com.tensorlab.ml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.util.EntityUtils;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.tensorlab.ml.aws.auth.Aws4Signer;
+import com.tensorlab.ml.aws.auth.Hmac;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.requeset.Configuration;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.requeset.DeepArRequest;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponse;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponseReader;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponseReader.PredictionHandler;
+
+import io.micrometer.core.instrument.Timer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Serializes, signs and sends the DeepAR requests to the SageMaker endpoint,
+ * either blocking the calling thread or asynchronously. The failed requests are
+ * retried by the {@link EndpointResilience}
+ */
+@Slf4j
+@Service
+public class DeepArInvoker implements InitializingBean {
+
+	private static final byte[] INSTANCES_PREFIX = "{\"instances\":".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] CONFIGURATION_PREFIX = ",\"configuration\":".getBytes(StandardCharsets.UTF_8);
+
+	@Autowired
+	private AppConfig appConfig;
+
+	@Autowired
+	private Aws4Signer signer;
+
+	@Autowired
+	private RestTemplate sageMakerRestTemplate;
+
+	@Autowired
+	private CloseableHttpAsyncClient sageMakerAsyncHttpClient;
+
+	@Autowired
+	private EndpointResilience resilience;
+
+	@Autowired
+	private PredictionMetrics metrics;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final ObjectWriter requestWriter = objectMapper.writerFor(DeepArRequest.class);
+
+	private final ObjectWriter configurationWriter = objectMapper.writerFor(Configuration.class);
+
+	private DeepArResponseReader responseReader;
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		AppConfig.ResponseConfig responseConfig = appConfig.getResponseConfig();
+		responseReader = new DeepArResponseReader(objectMapper, responseConfig.getSamplesMode(),
+				responseConfig.getSampleQuantiles());
+	}
+
+	/**
+	 * Signs and sends the prediction request, blocking until the response is
+	 * received
+	 * @param context The {@link PredictionContext} holding the request built from the input file
+	 * @return the response, or null if the endpoint did not return 200
+	 * @throws IOException
+	 */
+	public DeepArResponse invoke(PredictionContext context) throws IOException {
+		return invoke(context, null);
+	}
+
+	/**
+	 * Same as {@link #invoke(DeepArRequest, PredictionHandler)}, the payload is assembled
+	 * from the serialized instances of the context when it has them
+	 * @param context The {@link PredictionContext} holding the request built from the input file
+	 * @param handler receives the predictions while the response is read, may be null
+	 * @return the response, or null if the endpoint did not return 200
+	 * @throws IOException
+	 */
+	public DeepArResponse invoke(PredictionContext context, PredictionHandler handler) throws IOException {
+		try (RequestPayload payload = serialize(context)) {
+			return sendWithRetries(context.getTarget(), context.getTarget(), payload, handler);
+		}
+	}
+
+	/**
+	 * Signs and sends a DeepAR request, blocking until the response is received.
+	 * The response is read with the streaming {@link DeepArResponseReader} and each
+	 * prediction is handed to the handler as soon as it is parsed
+	 * @param deepArRequest the request to send
+	 * @param handler receives the predictions while the response is read, may be null
+	 * @return the response, or null if the endpoint did not return 200
+	 * @throws IOException
+	 */
+	public DeepArResponse invoke(DeepArRequest deepArRequest, PredictionHandler handler) throws IOException {
+		// serialize the request once, the payload hash is computed while writing
+		try (RequestPayload payload = serialize(deepArRequest)) {
+			return sendWithRetries(PredictionMetrics.BATCH, null, payload, handler);
+		}
+	}
+
+	/**
+	 * Sends the payload through the {@link EndpointResilience}, a failed request is sent
+	 * again unless the handler has already received some of its predictions
+	 * @param target the target of the request in the metrics
+	 */
+	private DeepArResponse sendWithRetries(String target, String routingKey, RequestPayload payload,
+			PredictionHandler handler) throws IOException {
+		AtomicBoolean delivered = new AtomicBoolean();
+		PredictionHandler trackingHandler = handler == null ? null : (index, prediction) -> {
+			delivered.set(true);
+			handler.onPrediction(index, prediction);
+		};
+		return resilience.call(routingKey, endpoint -> send(endpoint, target, payload, trackingHandler),
+				() -> !delivered.get());
+	}
+
+	/**
+	 * Signs and sends the payload once to the endpoint, blocking until the response is received
+	 */
+	private DeepArResponse send(SageMakerEndpoint endpoint, String target, RequestPayload payload,
+			PredictionHandler handler) throws IOException {
+		log.debug("invoke - payload size: {}, hash: {}", payload.getLength(), payload.getSha256Hash());
+
+		// build the required headers, signed for the host and region of the endpoint
+		HttpHeaders headers = sign(endpoint, payload);
+
+		// Now we have the headers, send the payload bytes to the endpoint
+		DeepArResponse resp = null;
+		String awsEndpointFullUrl = endpoint.getUrl();
+
+		log.info("Sending request to AWS DeepAR, url: {}", awsEndpointFullUrl);
+
+		metrics.recordSize(PredictionMetrics.REQUEST_SIZE, payload.getLength(), PredictionMetrics.TARGET, target,
+				PredictionMetrics.ENDPOINT, endpoint.getName());
+		Timer.Sample invokeSample = metrics.start();
+		String outcome = "error";
+		ResponseEntity<DeepArResponse> response;
+		try {
+			response = sageMakerRestTemplate.execute(awsEndpointFullUrl, HttpMethod.POST,
+					request -> {
+						if (headers != null) {
+							request.getHeaders().putAll(headers);
+						}
+						request.getHeaders().setContentLength(payload.getLength());
+						if (request instanceof StreamingHttpOutputMessage) {
+							((StreamingHttpOutputMessage) request).setBody(payload::writeTo);
+						} else {
+							payload.writeTo(request.getBody());
+						}
+					}, clientResponse -> {
+						if (clientResponse.getStatusCode() != HttpStatus.OK) {
+							return new ResponseEntity<DeepArResponse>(clientResponse.getHeaders(), clientResponse.getStatusCode());
+						}
+						metrics.recordSize(PredictionMetrics.RESPONSE_SIZE, clientResponse.getHeaders().getContentLength(),
+								PredictionMetrics.TARGET, target, PredictionMetrics.ENDPOINT, endpoint.getName());
+						// the response is parsed while it's received
+						Timer.Sample parseSample = metrics.start();
+						DeepArResponse body = responseReader.read(clientResponse.getBody(), handler);
+						metrics.stop(parseSample, PredictionMetrics.RESPONSE_PARSE, PredictionMetrics.TARGET, target,
+								PredictionMetrics.CLIENT, "sync");
+						return new ResponseEntity<>(body, clientResponse.getHeaders(), clientResponse.getStatusCode());
+					});
+			outcome = "success";
+		} finally {
+			stopInvoke(invokeSample, endpoint, target, "sync", outcome);
+		}
+
+		log.debug("Result - status: " + response.getStatusCode());
+		if (response.getStatusCode() == HttpStatus.OK) {
+			resp = response.getBody();
+			log.info("DeepArResponse received: {}", resp);
+		}
+		return resp;
+	}
+
+	/**
+	 * Signs and sends the prediction request without blocking the calling thread.
+	 * The request is sent by the non-blocking client and the response is parsed on
+	 * the given executor
+	 * @param context The {@link PredictionContext} holding the request built from the input file
+	 * @param executor the executor used to parse the response
+	 * @return a future completed with the response, or completed exceptionally with
+	 * an {@link org.springframework.web.client.HttpStatusCodeException} if the
+	 * endpoint returned an error status
+	 */
+	public CompletableFuture<DeepArResponse> invokeAsync(PredictionContext context, Executor executor) {
+		return invokeAsync(context, executor, null);
+	}
+
+	/**
+	 * Same as {@link #invokeAsync(DeepArRequest, Executor, PredictionHandler)}, the payload
+	 * is assembled from the serialized instances of the context when it has them
+	 * @param context The {@link PredictionContext} holding the request built from the input file
+	 * @param executor the executor used to parse the response
+	 * @param handler receives the predictions on the executor while the response is read, may be null
+	 * @return a future completed with the response
+	 */
+	public CompletableFuture<DeepArResponse> invokeAsync(PredictionContext context, Executor executor,
+			PredictionHandler handler) {
+		try {
+			return sendAsync(context.getTarget(), context.getTarget(), serialize(context), executor, handler);
+		} catch (IOException e) {
+			CompletableFuture<DeepArResponse> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+	}
+
+	/**
+	 * Signs and sends a DeepAR request without blocking the calling thread, see
+	 * {@link #invokeAsync(PredictionContext, Executor)}
+	 * @param deepArRequest the request to send
+	 * @param executor the executor used to parse the response
+	 * @param handler receives the predictions on the executor while the response is read, may be null
+	 * @return a future completed with the response
+	 */
+	public CompletableFuture<DeepArResponse> invokeAsync(DeepArRequest deepArRequest, Executor executor,
+			PredictionHandler handler) {
+		return invokeAsync(deepArRequest, null, executor, handler);
+	}
+
+	/**
+	 * Same as {@link #invokeAsync(DeepArRequest, Executor, PredictionHandler)}, routed like
+	 * the requests of the given target, see {@link EndpointRouter}
+	 * @param routingKey the target the request is routed for, null to let any endpoint answer
+	 */
+	public CompletableFuture<DeepArResponse> invokeAsync(DeepArRequest deepArRequest, String routingKey,
+			Executor executor, PredictionHandler handler) {
+		try {
+			return sendAsync(PredictionMetrics.BATCH, routingKey, serialize(deepArRequest), executor, handler);
+		} catch (IOException e) {
+			CompletableFuture<DeepArResponse> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+	}
+
+	/**
+	 * Signs and sends the payload without blocking the calling thread, through the
+	 * {@link EndpointResilience}. Only the response of the successful request is parsed,
+	 * and the payload is closed once the requests complete
+	 * @param target the target of the request in the metrics
+	 */
+	private CompletableFuture<DeepArResponse> sendAsync(String target, String routingKey, RequestPayload payload,
+			Executor executor, PredictionHandler handler) {
+		log.debug("invokeAsync - payload size: {}, hash: {}", payload.getLength(), payload.getSha256Hash());
+		CompletableFuture<HttpResponse> responseFuture = resilience.callAsync(routingKey,
+				endpoint -> exchangeAsync(endpoint, target, payload));
+		responseFuture.whenComplete((response, e) -> payload.close());
+		return responseFuture.thenApplyAsync(response -> readResponse(response, target, handler), executor);
+	}
+
+	/**
+	 * Signs and sends the payload once to the endpoint with the non-blocking client,
+	 * which buffers the response body
+	 * @return a future completed with the response, or exceptionally with an
+	 * {@link org.springframework.web.client.HttpStatusCodeException} if the endpoint
+	 * returned an error status. Cancelling the future aborts the request
+	 */
+	private CompletableFuture<HttpResponse> exchangeAsync(SageMakerEndpoint endpoint, String target,
+			RequestPayload payload) {
+		CompletableFuture<HttpResponse> responseFuture = new CompletableFuture<>();
+		HttpPost post;
+		try {
+			HttpHeaders headers = sign(endpoint, payload);
+			String awsEndpointFullUrl = endpoint.getUrl();
+			post = new HttpPost(awsEndpointFullUrl);
+			if (headers != null) {
+				headers.forEach((name, values) -> values.forEach(value -> post.addHeader(name, value)));
+			}
+			post.setEntity(payload.asEntity());
+			log.info("Sending async request to AWS DeepAR, url: {}", awsEndpointFullUrl);
+		} catch (RuntimeException e) {
+			responseFuture.completeExceptionally(e);
+			return responseFuture;
+		}
+
+		metrics.recordSize(PredictionMetrics.REQUEST_SIZE, payload.getLength(), PredictionMetrics.TARGET, target,
+				PredictionMetrics.ENDPOINT, endpoint.getName());
+		Timer.Sample invokeSample = metrics.start();
+		// the payload stays open until this request completes, even if the call completes first
+		payload.retain();
+		Future<HttpResponse> exchange = sageMakerAsyncHttpClient.execute(post, new FutureCallback<HttpResponse>() {
+			@Override
+			public void completed(HttpResponse result) {
+				payload.close();
+				try {
+					checkStatus(result);
+					stopInvoke(invokeSample, endpoint, target, "async", "success");
+					metrics.recordSize(PredictionMetrics.RESPONSE_SIZE,
+							result.getEntity() == null ? -1 : result.getEntity().getContentLength(),
+							PredictionMetrics.TARGET, target, PredictionMetrics.ENDPOINT, endpoint.getName());
+					responseFuture.complete(result);
+				} catch (IOException | RuntimeException e) {
+					stopInvoke(invokeSample, endpoint, target, "async", "error");
+					responseFuture.completeExceptionally(e);
+				}
+			}
+
+			@Override
+			public void failed(Exception ex) {
+				payload.close();
+				stopInvoke(invokeSample, endpoint, target, "async", "error");
+				responseFuture.completeExceptionally(ex);
+			}
+
+			@Override
+			public void cancelled() {
+				payload.close();
+				stopInvoke(invokeSample, endpoint, target, "async", "cancelled");
+				responseFuture.cancel(false);
+			}
+		});
+		responseFuture.whenComplete((response, e) -> {
+			if (responseFuture.isCancelled()) {
+				exchange.cancel(true);
+			}
+		});
+		return responseFuture;
+	}
+
+	/**
+	 * Gets the hex encoded SHA-256 hash of the serialized request, i.e. the hash of the
+	 * payload that would be sent, without keeping the serialized bytes
+	 */
+	public String hashRequest(DeepArRequest deepArRequest) throws IOException {
+		DigestOutputStream out = new DigestOutputStream(new CountingOutputStream(), Hmac.sha256Digest());
+		requestWriter.writeValue(out, deepArRequest);
+		return Hmac.toHexString(out.getMessageDigest().digest());
+	}
+
+	/**
+	 * Gets the hash of the payload that would be sent for the context, see
+	 * {@link #hashRequest(DeepArRequest)}
+	 */
+	public String hashRequest(PredictionContext context) throws IOException {
+		if (context.getInstancesJson() == null) {
+			return hashRequest(context.getRequest());
+		}
+		DigestOutputStream out = new DigestOutputStream(new CountingOutputStream(), Hmac.sha256Digest());
+		writeRequest(context, out);
+		return Hmac.toHexString(out.getMessageDigest().digest());
+	}
+
+	/**
+	 * Serializes the request of the context. When the instances are already serialized,
+	 * their bytes are copied into the payload and only the configuration is serialized
+	 */
+	private RequestPayload serialize(PredictionContext context) throws IOException {
+		Timer.Sample sample = metrics.start();
+		RequestPayload payload = context.getInstancesJson() == null
+				? RequestPayload.serialize(requestWriter, context.getRequest())
+				: RequestPayload.write(out -> writeRequest(context, out));
+		metrics.stop(sample, PredictionMetrics.SERIALIZE, PredictionMetrics.TARGET, context.getTarget(),
+				PredictionMetrics.PART, "payload");
+		return payload;
+	}
+
+	private RequestPayload serialize(DeepArRequest deepArRequest) throws IOException {
+		Timer.Sample sample = metrics.start();
+		RequestPayload payload = RequestPayload.serialize(requestWriter, deepArRequest);
+		metrics.stop(sample, PredictionMetrics.SERIALIZE, PredictionMetrics.TARGET, PredictionMetrics.BATCH,
+				PredictionMetrics.PART, "payload");
+		return payload;
+	}
+
+	/**
+	 * Builds the headers of the payload, signed for the host and region of the endpoint
+	 */
+	private HttpHeaders sign(SageMakerEndpoint endpoint, RequestPayload payload) {
+		Timer.Sample sample = metrics.start();
+		HttpHeaders headers = signer.buildHeadersWithPayloadHash(payload.getSha256Hash(), endpoint.getConfig());
+		metrics.stop(sample, PredictionMetrics.SIGN, PredictionMetrics.ENDPOINT, endpoint.getName());
+		return headers;
+	}
+
+	private void stopInvoke(Timer.Sample sample, SageMakerEndpoint endpoint, String target, String client,
+			String outcome) {
+		metrics.stop(sample, PredictionMetrics.INVOKE, PredictionMetrics.TARGET, target, PredictionMetrics.ENDPOINT,
+				endpoint.getName(), PredictionMetrics.CLIENT, client, PredictionMetrics.OUTCOME, outcome);
+	}
+
+	/**
+	 * Writes the request of the context as its pre-serialized instances followed by its
+	 * configuration, in the order of the {@link DeepArRequest} properties
+	 */
+	private void writeRequest(PredictionContext context, OutputStream out) throws IOException {
+		out.write(INSTANCES_PREFIX);
+		out.write(context.getInstancesJson());
+		Configuration configuration = context.getRequest().getConfiguration();
+		if (configuration != null) {
+			out.write(CONFIGURATION_PREFIX);
+			out.write(configurationWriter.writeValueAsBytes(configuration));
+		}
+		out.write('}');
+	}
+
+	/**
+	 * Gets the number of bytes the request would take once serialized, without
+	 * keeping the serialized bytes
+	 */
+	public long measureSerializedSize(Object value) throws IOException {
+		CountingOutputStream out = new CountingOutputStream();
+		objectMapper.writeValue(out, value);
+		return out.count;
+	}
+
+	/**
+	 * Throws the error status of the response as an
+	 * {@link org.springframework.web.client.HttpStatusCodeException}
+	 */
+	private void checkStatus(HttpResponse response) throws IOException {
+		HttpStatus status = HttpStatus.valueOf(response.getStatusLine().getStatusCode());
+		log.debug("Result - status: " + status);
+		if (status.isError()) {
+			byte[] body = response.getEntity() == null ? new byte[0] : EntityUtils.toByteArray(response.getEntity());
+			String reason = response.getStatusLine().getReasonPhrase();
+			if (status.is4xxClientError()) {
+				throw new HttpClientErrorException(status, reason, body, StandardCharsets.UTF_8);
+			}
+			throw new HttpServerErrorException(status, reason, body, StandardCharsets.UTF_8);
+		}
+	}
+
+	private DeepArResponse readResponse(HttpResponse response, String target, PredictionHandler handler) {
+		if (response.getStatusLine().getStatusCode() != HttpStatus.OK.value() || response.getEntity() == null) {
+			return null;
+		}
+		try (InputStream in = response.getEntity().getContent()) {
+			Timer.Sample sample = metrics.start();
+			DeepArResponse resp = responseReader.read(in, handler);
+			metrics.stop(sample, PredictionMetrics.RESPONSE_PARSE, PredictionMetrics.TARGET, target,
+					PredictionMetrics.CLIENT, "async");
+			log.info("DeepArResponse received: {}", resp);
+			return resp;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static class CountingOutputStream extends OutputStream {
+		long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package com.tensorlab.ml;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when the endpoint is not invoked because its client-side limits are
+ * reached: its queue is full, or the invocation could not be admitted within the
+ * queue timeout, see {@link ConcurrencyLimiter} and {@link RateLimiter}
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class EndpointOverloadedException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public EndpointOverloadedException(String message) {
+		super(message);
+	}
+}
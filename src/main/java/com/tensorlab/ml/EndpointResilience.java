@@ -0,0 +1,448 @@
+package com.tensorlab.ml;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Retries, hedges, limits and circuit-breaks the invocations of the endpoints, see
+ * {@link AppConfig.ResilienceConfig} and {@link AppConfig.LimitConfig}. Each request
+ * is sent to the endpoint selected by the {@link EndpointRouter} once admitted by its
+ * limits, and the retries and hedged requests go to another endpoint when one is
+ * available. Throttling (429), server errors (5xx) and I/O
+ * errors are retried with an exponential backoff and full jitter, as long as the
+ * {@link RetryBudget} allows it. The asynchronous invocations can also be hedged:
+ * when an invocation is slower than a percentile of the recent latencies, a second
+ * one is sent and the first response wins
+ */
+@Slf4j
+@Component
+public class EndpointResilience implements InitializingBean, DisposableBean {
+	private static final int LATENCY_SAMPLES = 512;
+
+	@Autowired
+	private AppConfig appConfig;
+
+	@Autowired
+	private EndpointRouter router;
+
+	private RetryBudget retryBudget;
+	private final LatencyTracker latencyTracker = new LatencyTracker(LATENCY_SAMPLES);
+	/** schedules the retries, the hedged requests and the admissions of the invocations */
+	private ScheduledExecutorService scheduler;
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		AppConfig.ResilienceConfig config = appConfig.getResilienceConfig();
+		retryBudget = new RetryBudget(config.getRetryBudgetRatio(), config.getRetryBudgetCapacity());
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread thread = new Thread(r, "endpoint-scheduler");
+			thread.setDaemon(true);
+			return thread;
+		});
+		// the timeouts of the admitted invocations are cancelled, they must not stay queued
+		executor.setRemoveOnCancelPolicy(true);
+		scheduler = executor;
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		scheduler.shutdownNow();
+	}
+
+	/**
+	 * A request sent to an endpoint, blocking until its response is received
+	 */
+	@FunctionalInterface
+	public interface Invocation<T> {
+		T invoke(SageMakerEndpoint endpoint) throws IOException;
+	}
+
+	/**
+	 * Invokes an endpoint, retrying the failed invocations after a backoff
+	 * @param routingKey the target of the request, see {@link EndpointRouter#acquire(String, Collection)}
+	 * @param invocation sends one request to the given endpoint
+	 * @param retryable tells whether a failed invocation can be sent again, e.g. not once
+	 * part of its response has been consumed
+	 * @return the result of the first successful invocation
+	 * @throws CircuitOpenException if the circuits of all the endpoints are open
+	 * @throws EndpointOverloadedException if the invocation was not admitted by the limits of the endpoint
+	 * @throws IOException the error of the last invocation
+	 */
+	public <T> T call(String routingKey, Invocation<T> invocation, BooleanSupplier retryable) throws IOException {
+		int maxAttempts = appConfig.getResilienceConfig().getMaxAttempts();
+		retryBudget.onInvocation();
+		Set<SageMakerEndpoint> tried = new HashSet<>();
+		for (int attempt = 1;; attempt++) {
+			EndpointRouter.Selection selection = router.acquire(routingKey, tried);
+			if (selection == null) {
+				throw new CircuitOpenException("The circuits of all the endpoints are open");
+			}
+			SageMakerEndpoint endpoint = selection.getEndpoint();
+			tried.add(endpoint);
+			awaitAdmission(endpoint, selection.getPermit());
+			endpoint.onStart();
+			long start = System.nanoTime();
+			try {
+				T result = invocation.invoke(endpoint);
+				onSuccess(endpoint, start);
+				return result;
+			} catch (IOException | RuntimeException e) {
+				if (!onFailure(endpoint, selection.getPermit(), e) || attempt >= maxAttempts || !retryable.getAsBoolean() || !retryBudget.tryRetry()) {
+					throw e;
+				}
+				long backoff = backoff(attempt);
+				log.warn("Invocation of {} failed, attempt {} of {}, retrying in {} ms: {}", endpoint.getName(), attempt,
+						maxAttempts, backoff, e.toString());
+				try {
+					Thread.sleep(backoff);
+				} catch (InterruptedException interrupted) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Invokes an endpoint without blocking, the failed invocations are retried after
+	 * a backoff and, when hedging is enabled, a slow invocation is doubled by a hedged
+	 * one. The invocations still in flight are cancelled once one of them succeeds
+	 * @param routingKey the target of the request, see {@link EndpointRouter#acquire(String, Collection)}
+	 * @param invocation sends one request to the given endpoint, cancelling its future
+	 * must abort the request
+	 * @return a future completed with the result of the first successful invocation, or
+	 * exceptionally with the error of the last invocation, a {@link CircuitOpenException}
+	 * or an {@link EndpointOverloadedException}
+	 */
+	public <T> CompletableFuture<T> callAsync(String routingKey, Function<SageMakerEndpoint, CompletableFuture<T>> invocation) {
+		retryBudget.onInvocation();
+		AsyncCall<T> call = new AsyncCall<>(routingKey, invocation);
+		call.attempt();
+		return call.result;
+	}
+
+	/**
+	 * Waits until the invocation is admitted by the limits of the endpoint
+	 * @throws EndpointOverloadedException if the invocation is rejected
+	 */
+	private void awaitAdmission(SageMakerEndpoint endpoint, CircuitBreaker.Permit permit) throws IOException {
+		CompletableFuture<Void> admission = admit(endpoint);
+		try {
+			admission.get();
+		} catch (ExecutionException e) {
+			endpoint.onRejected(permit);
+			throw (EndpointOverloadedException) e.getCause();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			endpoint.onAbandoned(permit, !admission.cancel(false) && !admission.isCompletedExceptionally());
+			throw new InterruptedIOException("Interrupted while waiting for endpoint " + endpoint.getName());
+		}
+	}
+
+	/**
+	 * Admits an invocation to the endpoint: waits for a slot of its concurrency limit,
+	 * then for a token of its rate limit, at most for the queueTimeout
+	 * @return a future completed once the invocation can be sent, or exceptionally with an
+	 * {@link EndpointOverloadedException}. Cancelling it gives up the wait
+	 */
+	private CompletableFuture<Void> admit(SageMakerEndpoint endpoint) {
+		long queueTimeout = appConfig.getLimitConfig().getQueueTimeout();
+		long deadline = System.currentTimeMillis() + queueTimeout;
+		ConcurrencyLimiter concurrencyLimiter = endpoint.getConcurrencyLimiter();
+		CompletableFuture<Void> admitted = new CompletableFuture<>();
+		CompletableFuture<Void> slot = concurrencyLimiter.acquire();
+		if (slot == null) {
+			admitted.completeExceptionally(new EndpointOverloadedException(
+					"Too many invocations waiting for endpoint " + endpoint.getName()));
+			return admitted;
+		}
+		if (!slot.isDone()) {
+			ScheduledFuture<?> timeout = schedule(() -> slot.completeExceptionally(new EndpointOverloadedException(
+					"No invocation slot of endpoint " + endpoint.getName() + " within " + queueTimeout + " ms")),
+					queueTimeout);
+			// once granted, rejected or given up, the wait and its timeout are over
+			admitted.whenComplete((v, e) -> {
+				slot.cancel(false);
+				if (timeout != null) {
+					timeout.cancel(false);
+				}
+			});
+		}
+		slot.whenComplete((v, e) -> {
+			if (e != null) {
+				admitted.completeExceptionally(e);
+				return;
+			}
+			RateLimiter rateLimiter = endpoint.getRateLimiter();
+			long wait = rateLimiter == null ? 0 : rateLimiter.reserve(Math.max(0, deadline - System.currentTimeMillis()));
+			if (wait < 0) {
+				concurrencyLimiter.release();
+				admitted.completeExceptionally(new EndpointOverloadedException(
+						"Rate limit of endpoint " + endpoint.getName() + " exceeded for " + queueTimeout + " ms"));
+			} else if (wait == 0 || schedule(() -> grant(admitted, concurrencyLimiter), wait) == null) {
+				grant(admitted, concurrencyLimiter);
+			}
+		});
+		return admitted;
+	}
+
+	private static void grant(CompletableFuture<Void> admitted, ConcurrencyLimiter concurrencyLimiter) {
+		if (!admitted.complete(null)) {
+			// given up meanwhile
+			concurrencyLimiter.release();
+		}
+	}
+
+	/**
+	 * Schedules a task on the scheduler
+	 * @return the scheduled task, or null if the application is stopping
+	 */
+	private ScheduledFuture<?> schedule(Runnable task, long delay) {
+		try {
+			return scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			log.warn("Cannot schedule the invocation, the application is stopping");
+			return null;
+		}
+	}
+
+	private void onSuccess(SageMakerEndpoint endpoint, long start) {
+		long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		endpoint.onSuccess(latency);
+		latencyTracker.record(latency);
+	}
+
+	/**
+	 * Reports a failed invocation to the endpoint
+	 * @return true if the endpoint failed and the invocation may be retried
+	 */
+	private boolean onFailure(SageMakerEndpoint endpoint, CircuitBreaker.Permit permit, Throwable error) {
+		Throwable cause = unwrap(error);
+		if (isRetryable(cause)) {
+			endpoint.onFailure(isOverload(cause));
+			return true;
+		}
+		// a client error means the endpoint answered, the request itself is wrong
+		endpoint.onIgnored(permit, cause instanceof HttpClientErrorException);
+		return false;
+	}
+
+	private static boolean isRetryable(Throwable error) {
+		return error instanceof HttpServerErrorException || error instanceof ResourceAccessException
+				|| error instanceof IOException || isThrottling(error);
+	}
+
+	private static boolean isThrottling(Throwable error) {
+		return error instanceof HttpClientErrorException
+				&& ((HttpClientErrorException) error).getStatusCode() == HttpStatus.TOO_MANY_REQUESTS;
+	}
+
+	/**
+	 * Tells whether the error shows that the endpoint has more invocations than it
+	 * can handle: throttling, unavailability or a timeout
+	 */
+	private static boolean isOverload(Throwable error) {
+		if (error instanceof ResourceAccessException && error.getCause() != null) {
+			error = error.getCause();
+		}
+		return isThrottling(error) || error instanceof SocketTimeoutException
+				|| (error instanceof HttpServerErrorException
+						&& ((HttpServerErrorException) error).getStatusCode() == HttpStatus.SERVICE_UNAVAILABLE);
+	}
+
+	private static Throwable unwrap(Throwable error) {
+		while ((error instanceof CompletionException || error instanceof UncheckedIOException) && error.getCause() != null) {
+			error = error.getCause();
+		}
+		return error;
+	}
+
+	/**
+	 * Gets the delay before a retry: a random value up to the exponential backoff of
+	 * the attempt, i.e. full jitter, so that the clients failing together do not retry
+	 * together
+	 */
+	private long backoff(int attempt) {
+		AppConfig.ResilienceConfig config = appConfig.getResilienceConfig();
+		long ceiling = Math.min(config.getMaxBackoff(), config.getInitialBackoff() << Math.min(attempt - 1, 30));
+		return ThreadLocalRandom.current().nextLong(ceiling + 1);
+	}
+
+	/**
+	 * Gets the delay after which a hedged request is sent, or -1 if hedging is disabled
+	 * or too few latencies are known
+	 */
+	private long hedgeDelay() {
+		AppConfig.ResilienceConfig config = appConfig.getResilienceConfig();
+		if (!config.isHedgingEnabled()) {
+			return -1;
+		}
+		long delay = latencyTracker.percentile(config.getHedgePercentile());
+		return delay < 0 ? -1 : Math.max(delay, config.getMinHedgeDelay());
+	}
+
+	/**
+	 * The state of an asynchronous invocation and its attempts
+	 */
+	private class AsyncCall<T> {
+		final String routingKey;
+		final Function<SageMakerEndpoint, CompletableFuture<T>> invocation;
+		final CompletableFuture<T> result = new CompletableFuture<>();
+		/** the attempts in flight, the losers are cancelled once one succeeds */
+		final Set<CompletableFuture<T>> inFlight = ConcurrentHashMap.newKeySet();
+		final Set<SageMakerEndpoint> tried = ConcurrentHashMap.newKeySet();
+		final AtomicInteger attempts = new AtomicInteger();
+
+		AsyncCall(String routingKey, Function<SageMakerEndpoint, CompletableFuture<T>> invocation) {
+			this.routingKey = routingKey;
+			this.invocation = invocation;
+		}
+
+		void attempt() {
+			long hedgeDelay = hedgeDelay();
+			if (send() && hedgeDelay > 0) {
+				schedule(this::hedge, hedgeDelay);
+			}
+		}
+
+		void hedge() {
+			int maxAttempts = appConfig.getResilienceConfig().getMaxAttempts();
+			if (result.isDone() || inFlight.isEmpty() || attempts.get() >= maxAttempts || !retryBudget.tryRetry()) {
+				return;
+			}
+			log.info("Invocation still in flight after the hedge delay, sending a hedged request");
+			send();
+		}
+
+		/**
+		 * Sends an attempt to the next endpoint
+		 * @return false if the circuits of all the endpoints are open
+		 */
+		boolean send() {
+			EndpointRouter.Selection selection = router.acquire(routingKey, tried);
+			if (selection == null) {
+				if (inFlight.isEmpty()) {
+					result.completeExceptionally(new CircuitOpenException("The circuits of all the endpoints are open"));
+				}
+				return false;
+			}
+			SageMakerEndpoint endpoint = selection.getEndpoint();
+			CircuitBreaker.Permit permit = selection.getPermit();
+			tried.add(endpoint);
+			attempts.incrementAndGet();
+			CompletableFuture<T> attempt = new CompletableFuture<>();
+			inFlight.add(attempt);
+			CompletableFuture<Void> admission = admit(endpoint);
+			// cancelling an attempt still waiting to be admitted gives up the wait
+			attempt.whenComplete((value, error) -> admission.cancel(false));
+			admission.whenComplete((admitted, rejection) -> {
+				if (rejection != null) {
+					if (rejection instanceof CancellationException) {
+						endpoint.onAbandoned(permit, false);
+					} else {
+						endpoint.onRejected(permit);
+						attempt.completeExceptionally(rejection);
+					}
+				} else if (attempt.isDone()) {
+					endpoint.onAbandoned(permit, true);
+				} else {
+					exchange(endpoint, permit, attempt);
+				}
+			});
+			attempt.whenComplete((value, error) -> onComplete(endpoint, attempt, value, error));
+			return true;
+		}
+
+		/**
+		 * Sends an admitted attempt and reports its outcome to the endpoint
+		 */
+		void exchange(SageMakerEndpoint endpoint, CircuitBreaker.Permit permit, CompletableFuture<T> attempt) {
+			endpoint.onStart();
+			long start = System.nanoTime();
+			CompletableFuture<T> future;
+			try {
+				future = invocation.apply(endpoint);
+			} catch (RuntimeException e) {
+				future = new CompletableFuture<>();
+				future.completeExceptionally(e);
+			}
+			CompletableFuture<T> exchange = future;
+			attempt.whenComplete((value, error) -> {
+				if (attempt.isCancelled()) {
+					exchange.cancel(false);
+				}
+			});
+			exchange.whenComplete((value, error) -> {
+				if (error == null) {
+					onSuccess(endpoint, start);
+					attempt.complete(value);
+				} else if (unwrap(error) instanceof CancellationException) {
+					// a losing attempt
+					endpoint.onIgnored(permit, false);
+				} else {
+					onFailure(endpoint, permit, error);
+					attempt.completeExceptionally(unwrap(error));
+				}
+			});
+		}
+
+		void onComplete(SageMakerEndpoint endpoint, CompletableFuture<T> attempt, T value, Throwable error) {
+			inFlight.remove(attempt);
+			if (error == null) {
+				if (result.complete(value)) {
+					inFlight.forEach(loser -> loser.cancel(false));
+				}
+				return;
+			}
+			if (unwrap(error) instanceof CancellationException) {
+				// a losing attempt
+				return;
+			}
+			boolean retryable = isRetryable(unwrap(error));
+			if (result.isDone() || !inFlight.isEmpty()) {
+				// another attempt may still succeed
+				return;
+			}
+			int maxAttempts = appConfig.getResilienceConfig().getMaxAttempts();
+			if (retryable && attempts.get() < maxAttempts && retryBudget.tryRetry()) {
+				long backoff = backoff(attempts.get());
+				log.warn("Invocation of {} failed, attempt {} of {}, retrying in {} ms: {}", endpoint.getName(),
+						attempts.get(), maxAttempts, backoff, unwrap(error).toString());
+				if (schedule(this::attempt, backoff) != null) {
+					return;
+				}
+			}
+			result.completeExceptionally(unwrap(error));
+		}
+	}
+}
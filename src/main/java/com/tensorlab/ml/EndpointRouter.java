@@ -0,0 +1,173 @@
+package com.tensorlab.ml;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Routes the invocations over the configured endpoints, see
+ * {@link AppConfig.RoutingConfig}. The endpoints are ranked by the strategy, or
+ * by their position on the consistent hash ring when the targets are sharded,
+ * and the first one whose circuit lets the request through is selected
+ */
+@Slf4j
+@Component
+public class EndpointRouter implements InitializingBean {
+
+	public enum Strategy {
+		/** the endpoint with the fewest requests in flight */
+		LEAST_OUTSTANDING,
+		/** the endpoint with the lowest average latency, weighted by its requests in flight */
+		LATENCY_WEIGHTED
+	}
+
+	/**
+	 * An endpoint selected for an invocation, with the permit of its circuit
+	 */
+	@Value
+	public static class Selection {
+		SageMakerEndpoint endpoint;
+		CircuitBreaker.Permit permit;
+	}
+
+	private static final String DEFAULT_HOST = "runtime.sagemaker.%s.amazonaws.com";
+
+	@Autowired
+	private AppConfig appConfig;
+
+	private List<SageMakerEndpoint> endpoints;
+	/** the virtual nodes of the endpoints, by hash */
+	private final NavigableMap<Long, SageMakerEndpoint> ring = new TreeMap<>();
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		List<AppConfig.EndpointConfig> configs = appConfig.getEndpoints();
+		if (configs.isEmpty()) {
+			configs = Collections.singletonList(appConfig.getAwsAuthConfig().toEndpointConfig());
+		}
+		List<SageMakerEndpoint> created = new ArrayList<>();
+		for (AppConfig.EndpointConfig config : configs) {
+			if (config.getName() == null) {
+				config.setName(config.getServiceEndPoint());
+			}
+			if (config.getServiceHost() == null) {
+				config.setServiceHost(String.format(DEFAULT_HOST, config.getServiceRegion()));
+			}
+			SageMakerEndpoint endpoint = new SageMakerEndpoint(config, appConfig.getResilienceConfig(),
+					appConfig.getLimitConfig());
+			created.add(endpoint);
+			for (int i = 0; i < appConfig.getRoutingConfig().getVirtualNodes(); i++) {
+				ring.put(hash(config.getName() + '#' + i), endpoint);
+			}
+			log.info("Endpoint {} routed to {}", config.getName(), endpoint.getUrl());
+		}
+		endpoints = Collections.unmodifiableList(created);
+	}
+
+	public List<SageMakerEndpoint> getEndpoints() {
+		return endpoints;
+	}
+
+	/**
+	 * Selects the endpoint of a request and lets it through its circuit, see
+	 * {@link CircuitBreaker#tryAcquire()}
+	 * @param routingKey the target of the request, null if it holds several targets
+	 * @param tried the endpoints the invocation has already tried, only selected when no
+	 * other endpoint is available
+	 * @return the endpoint and its permit, or null if the circuits of all the endpoints are open
+	 */
+	public Selection acquire(String routingKey, Collection<SageMakerEndpoint> tried) {
+		List<SageMakerEndpoint> ranked = rank(routingKey);
+		for (SageMakerEndpoint endpoint : ranked) {
+			CircuitBreaker.Permit permit;
+			if (!tried.contains(endpoint) && (permit = endpoint.getCircuitBreaker().tryAcquire()) != null) {
+				return new Selection(endpoint, permit);
+			}
+		}
+		for (SageMakerEndpoint endpoint : ranked) {
+			CircuitBreaker.Permit permit;
+			if (tried.contains(endpoint) && (permit = endpoint.getCircuitBreaker().tryAcquire()) != null) {
+				return new Selection(endpoint, permit);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the scope of the cached predictions of a target: the endpoint owning it
+	 * when the targets are sharded, otherwise all the endpoints
+	 */
+	public String getCacheScope(String routingKey) {
+		if (endpoints.size() == 1 || !appConfig.getRoutingConfig().isSharding() || routingKey == null) {
+			return endpoints.stream().map(e -> e.getConfig().getServiceEndPoint()).collect(Collectors.joining(","));
+		}
+		return owner(routingKey).getConfig().getServiceEndPoint();
+	}
+
+	/**
+	 * Gets the endpoint owning a target on the hash ring
+	 */
+	public SageMakerEndpoint owner(String routingKey) {
+		Map.Entry<Long, SageMakerEndpoint> entry = ring.ceilingEntry(hash(routingKey));
+		return (entry != null ? entry : ring.firstEntry()).getValue();
+	}
+
+	/**
+	 * Ranks the endpoints, from the preferred one
+	 */
+	private List<SageMakerEndpoint> rank(String routingKey) {
+		if (endpoints.size() == 1) {
+			return endpoints;
+		}
+		if (appConfig.getRoutingConfig().isSharding() && routingKey != null) {
+			// the owner of the target, then the next endpoints of the ring
+			Set<SageMakerEndpoint> ranked = new LinkedHashSet<>();
+			for (SageMakerEndpoint endpoint : ring.tailMap(hash(routingKey)).values()) {
+				if (ranked.add(endpoint) && ranked.size() == endpoints.size()) {
+					return new ArrayList<>(ranked);
+				}
+			}
+			ranked.addAll(ring.values());
+			return new ArrayList<>(ranked);
+		}
+		List<SageMakerEndpoint> ranked = new ArrayList<>(endpoints);
+		// the ties are broken randomly
+		Collections.shuffle(ranked, ThreadLocalRandom.current());
+		ranked.sort(appConfig.getRoutingConfig().getStrategy() == Strategy.LATENCY_WEIGHTED
+				? Comparator.comparingDouble(SageMakerEndpoint::getExpectedLatency)
+				: Comparator.comparingInt(SageMakerEndpoint::getOutstanding));
+		return ranked;
+	}
+
+	private static long hash(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+			long hash = 0;
+			for (int i = 0; i < 8; i++) {
+				hash = (hash << 8) | (digest[i] & 0xff);
+			}
+			return hash;
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
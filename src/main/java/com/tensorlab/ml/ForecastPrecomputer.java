@@ -0,0 +1,297 @@
+package com.tensorlab.ml;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.scheduling.support.CronSequenceGenerator;
+import org.springframework.stereotype.Component;
+
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponse;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import lombok.ToString;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Precomputes the forecasts of the hot targets listed in {@link AppConfig.PrecomputeConfig},
+ * so their dashboards are served without invoking the endpoint. A target is due when
+ * its interval or cron expression elapses, and when its input or validation file
+ * changes. The due targets are predicted together by the {@link BatchPredictionService},
+ * which stores their forecasts, and the plot of each forecast is kept in memory. A
+ * plot is served until the files of its target change, the forecast is then stale
+ * and the requests are predicted again until it's recomputed
+ */
+@Slf4j
+@Component
+public class ForecastPrecomputer implements InitializingBean, DisposableBean, ApplicationListener<ApplicationReadyEvent> {
+
+	@Autowired
+	private AppConfig appConfig;
+
+	@Autowired
+	private BatchPredictionService batchPredictionService;
+
+	@Autowired
+	private LabManager labManager;
+
+	@Autowired
+	private DataFiles dataFiles;
+
+	@Autowired
+	private PredictionMetrics metrics;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	/**
+	 * A precomputed forecast
+	 */
+	@Value
+	public static class Forecast {
+		@ToString.Exclude
+		private String plot;
+		/** when the forecast was computed, in milliseconds since the epoch */
+		private long computedAt;
+		/** the number of changes of the files of the target before it was computed */
+		private long version;
+		/** the entity tag of the plot, see {@link PlotUtil#computeEtag(String)} */
+		private String etag;
+	}
+
+	private final Map<String, Forecast> forecasts = new ConcurrentHashMap<>();
+	/** incremented on every change of the input or validation file of a target */
+	private final Map<String, Long> versions = new ConcurrentHashMap<>();
+	/** the target of each watched file */
+	private final Map<String, String> targetsByFileName = new ConcurrentHashMap<>();
+	private final Map<String, CronSequenceGenerator> crons = new HashMap<>();
+	private final Map<String, ScheduledFuture<?>> nextRuns = new ConcurrentHashMap<>();
+	private final Map<String, String> errors = new ConcurrentHashMap<>();
+	private final Set<String> dueTargets = ConcurrentHashMap.newKeySet();
+	private final AtomicBoolean runScheduled = new AtomicBoolean();
+	private final Consumer<String> fileListener = this::onFileChanged;
+	private ScheduledExecutorService scheduler;
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		AppConfig.PrecomputeConfig config = appConfig.getPrecomputeConfig();
+		if (!config.isEnabled()) {
+			return;
+		}
+		// an invalid expression fails the startup
+		config.getTargetCrons().forEach((target, cron) -> crons.put(target, new CronSequenceGenerator(cron)));
+		for (String target : config.getTargets()) {
+			watch(target, labManager.buildPredictionInputFilePath(target));
+			watch(target, labManager.buildValidationInputFilePath(target));
+			Gauge.builder("deepar.precompute.age", this, p -> p.getAge(target) / 1000.0)
+					.baseUnit("seconds").tag(PredictionMetrics.TARGET, target).register(meterRegistry);
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "forecast-precomputer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Starts the schedules once the application is ready, the endpoint may be served by
+	 * the application itself
+	 */
+	@Override
+	public void onApplicationEvent(ApplicationReadyEvent event) {
+		if (scheduler == null) {
+			return;
+		}
+		log.info("Precomputing the forecasts of targets: {}", appConfig.getPrecomputeConfig().getTargets());
+		for (String target : appConfig.getPrecomputeConfig().getTargets()) {
+			markDue(target, 0);
+			scheduleNext(target);
+		}
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	/**
+	 * Gets the precomputed forecast of a request
+	 * @param target the target of the request
+	 * @param options the inference options of the request, only the requests without
+	 * options are served the precomputed forecast
+	 * @return the forecast, or null if the target has no forecast up to date with its files
+	 */
+	public Forecast find(String target, PredictionOptions options) {
+		if (scheduler == null || !isDefault(options)) {
+			return null;
+		}
+		Forecast forecast = forecasts.get(target);
+		return forecast == null || isStale(target, forecast) ? null : forecast;
+	}
+
+	/**
+	 * Gets the state of the forecast of each precomputed target
+	 */
+	public List<Map<String, Object>> getStatus() {
+		List<Map<String, Object>> statuses = new ArrayList<>();
+		for (String target : appConfig.getPrecomputeConfig().getTargets()) {
+			Forecast forecast = forecasts.get(target);
+			ScheduledFuture<?> nextRun = nextRuns.get(target);
+			Map<String, Object> status = new LinkedHashMap<>();
+			status.put("target", target);
+			status.put("computedAt", forecast != null ? Instant.ofEpochMilli(forecast.getComputedAt()).toString() : null);
+			status.put("age", forecast != null ? getAge(target) : null);
+			status.put("filesChanged", forecast != null && forecast.getVersion() != currentVersion(target));
+			status.put("stale", forecast == null || isStale(target, forecast));
+			status.put("due", dueTargets.contains(target));
+			status.put("nextRunIn", nextRun != null ? nextRun.getDelay(TimeUnit.MILLISECONDS) : null);
+			status.put("error", errors.get(target));
+			statuses.add(status);
+		}
+		return statuses;
+	}
+
+	/**
+	 * Gets the time elapsed since the forecast of a target was computed, in milliseconds,
+	 * NaN if it has no forecast
+	 */
+	private double getAge(String target) {
+		Forecast forecast = forecasts.get(target);
+		return forecast == null ? Double.NaN : System.currentTimeMillis() - forecast.getComputedAt();
+	}
+
+	private boolean isStale(String target, Forecast forecast) {
+		long maxAge = appConfig.getPrecomputeConfig().getMaxAge();
+		return forecast.getVersion() != currentVersion(target)
+				|| maxAge > 0 && System.currentTimeMillis() - forecast.getComputedAt() > maxAge;
+	}
+
+	private static boolean isDefault(PredictionOptions options) {
+		return options == null || options.getProfile() == null && options.getNumSamples() == null
+				&& (options.getOutputTypes() == null || options.getOutputTypes().isEmpty())
+				&& (options.getQuantiles() == null || options.getQuantiles().isEmpty());
+	}
+
+	private long currentVersion(String target) {
+		return versions.getOrDefault(target, 0L);
+	}
+
+	private void watch(String target, String fileName) throws IOException {
+		targetsByFileName.put(fileName, target);
+		try {
+			dataFiles.watch(dataFiles.resolve(fileName), fileListener);
+		} catch (FileNotFoundException e) {
+			// the file may be created in the data directory later
+			dataFiles.watch(fileName, fileListener);
+		}
+	}
+
+	private void onFileChanged(String fileName) {
+		String target = targetsByFileName.get(fileName);
+		if (target != null) {
+			versions.merge(target, 1L, Long::sum);
+			if (appConfig.getPrecomputeConfig().isOnChange()) {
+				log.info("File {} of target {} changed, its forecast will be precomputed again", fileName, target);
+				markDue(target, appConfig.getPrecomputeConfig().getChangeDelay());
+			}
+		}
+	}
+
+	/**
+	 * Schedules the next periodic computation of a target
+	 */
+	private void scheduleNext(String target) {
+		long delay;
+		CronSequenceGenerator cron = crons.get(target);
+		if (cron != null) {
+			Date now = new Date();
+			delay = cron.next(now).getTime() - now.getTime();
+		} else {
+			delay = appConfig.getPrecomputeConfig().getTargetIntervals().getOrDefault(target,
+					appConfig.getPrecomputeConfig().getInterval());
+		}
+		nextRuns.put(target, scheduler.schedule(() -> {
+			markDue(target, 0);
+			scheduleNext(target);
+		}, delay, TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * Adds a target to the next computation, scheduled after the delay unless one is
+	 * already scheduled
+	 */
+	private void markDue(String target, long delay) {
+		dueTargets.add(target);
+		if (runScheduled.compareAndSet(false, true)) {
+			scheduler.schedule(this::computeDueTargets, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Predicts the due targets in batches and plots their forecasts
+	 */
+	private void computeDueTargets() {
+		runScheduled.set(false);
+		List<String> targets = new ArrayList<>(dueTargets);
+		dueTargets.removeAll(targets);
+		if (targets.isEmpty()) {
+			return;
+		}
+		// a change made while the targets are predicted makes their forecasts stale
+		Map<String, Long> startVersions = new HashMap<>();
+		targets.forEach(target -> startVersions.put(target, currentVersion(target)));
+
+		log.info("Precomputing the forecasts of targets: {}", targets);
+		Timer.Sample sample = metrics.start();
+		try {
+			BatchPredictionResponse result = batchPredictionService.predict(targets, (context, response) -> {
+				String target = context.getTarget();
+				long computedAt = System.currentTimeMillis();
+				try {
+					String plotTitle = String.format("DeepAR Prediction for target %s (precomputed at %s)", target,
+							Instant.ofEpochMilli(computedAt));
+					String plot = labManager.plotForecast(context, response, plotTitle);
+					forecasts.put(target, new Forecast(plot, computedAt, startVersions.get(target),
+							PlotUtil.computeEtag(plot)));
+					errors.remove(target);
+				} catch (IOException | RuntimeException e) {
+					log.error("Error has occurred when plotting the forecast of target " + target + ": " + e, e);
+					errors.put(target, String.valueOf(e));
+				}
+			});
+			result.getErrors().forEach((target, error) -> {
+				log.warn("Forecast of target {} not precomputed: {}", target, error);
+				errors.put(target, error);
+			});
+		} catch (RuntimeException e) {
+			log.error("Error has occurred when precomputing the forecasts: " + e, e);
+			targets.forEach(target -> errors.put(target, String.valueOf(e)));
+		}
+		metrics.stop(sample, PredictionMetrics.PRECOMPUTE, PredictionMetrics.TARGET, PredictionMetrics.BATCH);
+	}
+}
@@ -0,0 +1,17 @@
+package com.tensorlab.ml;
+
+/**
+ * Thrown when the inference options of a request are not valid, the client
+ * receives a 400 status with the reason
+ */
+public class InvalidPredictionOptionsException extends IllegalArgumentException {
+	private static final long serialVersionUID = 1L;
+
+	public InvalidPredictionOptionsException(String message) {
+		super(message);
+	}
+
+	public InvalidPredictionOptionsException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
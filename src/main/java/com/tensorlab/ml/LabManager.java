@@ -2,36 +2,34 @@ package com.tensorlab.ml;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
-import java.time.LocalDate;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAmount;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
-import org.apache.commons.csv.CSVRecord;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.ClientHttpRequestFactory;
-import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
-import org.springframework.util.ResourceUtils;
-import org.springframework.web.client.RestTemplate;
 
 import com.fasterxml.jackson.core.JsonGenerationException;
 import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
@@ -42,10 +40,12 @@ import com.tensorlab.ml.aws.auth.Aws4SignatureKeyGenerator;
 import com.tensorlab.ml.aws.auth.Aws4Signer;
 import com.tensorlab.ml.aws.sagemaker.deepar.json.requeset.Configuration;
 import com.tensorlab.ml.aws.sagemaker.deepar.json.requeset.DeepArRequest;
-import com.tensorlab.ml.aws.sagemaker.deepar.json.requeset.Instance;
 import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponse;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponseReader.PredictionHandler;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponseReader.SamplesMode;
 import com.tensorlab.ml.aws.sagemaker.deepar.json.response.Prediction;
-import com.tensorlab.ml.aws.sagemaker.deepar.json.response.Quantiles;
+
+import io.micrometer.core.instrument.Timer;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -58,7 +58,10 @@ import lombok.extern.slf4j.Slf4j;
 @Service
 public class LabManager implements InitializingBean {
 	
-	private String lastExistingDate;
+	/** the response of a failed prediction */
+	static final String ERROR_RESPONSE = "Ooops, error occured :<";
+	
+	private final AtomicLong requestSequence = new AtomicLong();
 	
 	@Autowired
 	private AppConfig appConfig;
@@ -66,64 +69,69 @@ public class LabManager implements InitializingBean {
 	@Autowired
 	private Aws4Signer signer;
 	
+	@Autowired
+	private DeepArInvoker invoker;
+	
+	@Autowired
+	private ThreadPoolTaskExecutor predictionExecutor;
+	
+	@Autowired
+	private PredictionCache predictionCache;
+	
+	@Autowired
+	private PredictionStore predictionStore;
+	
+	@Autowired
+	private ValidationDataService validationDataService;
+	
+	@Autowired
+	private SeriesRegistry seriesRegistry;
+	
+	@Autowired
+	private EndpointRouter router;
+	
+	@Autowired
+	private PredictionMetrics metrics;
+	
+	private Semaphore asyncPermits;
+	
 
 	@Override
 	public void afterPropertiesSet() throws Exception {
-	    // do your initialization work here
+		asyncPermits = new Semaphore(appConfig.getAsyncConfig().getMaxConcurrentRequests());
 	}
 	
-    private ClientHttpRequestFactory getClientHttpRequestFactory() {
-        int timeout = 60 * 1000;
-        HttpComponentsClientHttpRequestFactory clientHttpRequestFactory =
-          new HttpComponentsClientHttpRequestFactory();
-        clientHttpRequestFactory.setConnectTimeout(timeout);
-        return clientHttpRequestFactory;
-    }
-    
 	/**
-	 * Builds and sends the prediction request to the remote endpoint
-	 * @param target The name used to locate the input file
+	 * Signs and sends the prediction request to the remote endpoint
+	 * @param context The {@link PredictionContext} holding the request built from the input file
 	 * @return a {@link DeepArResponse} json object representing the predciton response data
 	 * @throws IOException
-	 * @throws NoSuchAlgorithmException
-	 * @throws InvalidKeyException
-	 * @throws SignatureException
 	 */
-	public DeepArResponse processPredictionRequest(String target) throws IOException {
-		log.info("predict - start, target:{}", target);
-		
-		// Starting building the lengthy signing data
-		
-		// load the input file as a json string
-	    String requestBody = constructJsonRequestObject(target);
-
-	    // build the required headers
-	    HttpHeaders headers = signer.buildHeadersWithAuthentication(requestBody);
-	    
-	    // Now we have the headers, send the request to the endpoint 
-		DeepArResponse resp = null;
-		RestTemplate restTemplate = new RestTemplate(getClientHttpRequestFactory());
-		HttpEntity<String> entityPost = new HttpEntity<String>(requestBody, headers);
-		
-		String awsEndpointFullUrl = buildAwsEndpointFullUrl(target);
-		
-		log.info("Sending request to AWS DeepAR, url: {}", awsEndpointFullUrl);
-		
-		ResponseEntity<DeepArResponse> response = restTemplate.exchange(awsEndpointFullUrl, HttpMethod.POST, entityPost,
-				DeepArResponse.class);
-
-		log.debug("Result - status: " + response.getStatusCode());
-		if (response.getStatusCode() == HttpStatus.OK) {
-			resp = response.getBody();
-			log.info("DeepArResponse received: {}", resp);
-		}
-		
+	public DeepArResponse processPredictionRequest(PredictionContext context) throws IOException {
+		return processPredictionRequest(context, null);
+	}
+	
+	/**
+	 * Signs and sends the prediction request to the remote endpoint, each prediction is handed
+	 * to the handler as soon as it is parsed from the response
+	 * @param context The {@link PredictionContext} holding the request built from the input file
+	 * @param handler receives the predictions while the response is read, may be null
+	 * @return a {@link DeepArResponse} json object representing the predciton response data
+	 * @throws IOException
+	 */
+	public DeepArResponse processPredictionRequest(PredictionContext context, PredictionHandler handler) throws IOException {
+		log.info("predict - start, target:{}", context.getTarget());
+		DeepArResponse resp = invoker.invoke(context, handler);
 		log.info("predict - done");
 		return resp;
 	}
 	
+	/**
+	 * Gets the url of the endpoint owning the target, the endpoint the target is sent to
+	 * when the targets are sharded
+	 */
 	public String buildAwsEndpointFullUrl(String target) {
-	    return "https://" + appConfig.getAwsAuthConfig().getServiceHost() + signer.buildEndpointUrl();
+	    return router.owner(target).getUrl();
 	}
 	
 	/**
@@ -135,40 +143,261 @@ public class LabManager implements InitializingBean {
 	 * @return the plotted response data represented by javascript
 	 */
 	public String predict(String target) {
-		//default response
-		String response = "Ooops, error occured :<";
-		DeepArResponse deepArResponse = null;
-		
+		return predict(target, null);
+	}
+	
+	/**
+	 * Same as {@link #predict(String)}, with the inference options of the request
+	 * @param options the options overriding the profile of the target, may be null
+	 * @throws InvalidPredictionOptionsException if the options are not valid
+	 */
+	public String predict(String target, PredictionOptions options) {
+		CachedPrediction prediction;
 		try {
-			deepArResponse = processPredictionRequest(target);
+			PredictionContext context = buildPredictionContext(target, options);
+			// an unchanged request is answered from the cache instead of invoking the endpoint again
+			prediction = predictionCache.get(buildCacheKey(context), () -> {
+				PredictionChart chart = new PredictionChart();
+				// add each prediction to the chart as soon as it's parsed
+				DeepArResponse deepArResponse = processPredictionRequest(context,
+						chartHandler(context, validationDataService.get(context.getTarget()), chart));
+				return renderPrediction(context, deepArResponse, chart);
+			});
+		} catch (CircuitOpenException | EndpointOverloadedException e) {
+			return renderLastForecast(target, e);
 		} catch (IOException e) {
 			log.error("Error has occurred when processing the request: " + e, e);
-			return response;
+			return ERROR_RESPONSE;
 		}
 		
-		// parse and save the response data as json file, which will be loaded and rendered by Tablesaw
-		String resposeFilePrefix = buildFilePrefix(target);
+		return prediction == null ? ERROR_RESPONSE : prediction.getPlot();
+	}
+	
+	/**
+	 * The asynchronous variant of {@link #predict(String)}, the endpoint is invoked by the
+	 * non-blocking client and the other stages run on the bounded prediction executor, so no
+	 * servlet thread waits for the endpoint
+	 * 
+	 * @param target The value used to locate which input file to use to build the request data
+	 * @return a future completed with the plotted response data represented by javascript
+	 * @throws PredictionRejectedException if too many predictions are already in flight
+	 */
+	public CompletableFuture<String> predictAsync(String target) {
+		return predictAsync(target, null);
+	}
+	
+	/**
+	 * Same as {@link #predictAsync(String)}, with the inference options of the request
+	 * @param options the options overriding the profile of the target, may be null
+	 * @throws InvalidPredictionOptionsException if the options are not valid
+	 */
+	public CompletableFuture<String> predictAsync(String target, PredictionOptions options) {
+		// reject invalid options before queuing the request
+		resolveProfile(target, options).toConfiguration();
+		if (!asyncPermits.tryAcquire()) {
+			throw new PredictionRejectedException("Too many concurrent prediction requests");
+		}
+		CompletableFuture<CachedPrediction> result;
 		try {
-		    // save the response as a json file
-			saveResponseAsJsonFile(deepArResponse, resposeFilePrefix+"-prediction-response.json");
-			
-			// convert the json response to csv file for plotting
-			List<String> savedPredictionFiles = exportJsonResponseToCsv(deepArResponse, resposeFilePrefix, target);
-			
-			log.info("Generating response data for plotting, source file: {}", savedPredictionFiles.get(0));
-			String plotTitle = "DeepAR Prediction for target " + target;
+			result = CompletableFuture.supplyAsync(() -> buildPredictionContextUnchecked(target, options), predictionExecutor)
+					.thenCompose(context -> predictionCache.getAsync(buildCacheKeyUnchecked(context), () -> {
+						PredictionChart chart = new PredictionChart();
+						ValidationData validation;
+						try {
+							validation = validationDataService.get(context.getTarget());
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+						return invoker.invokeAsync(context, predictionExecutor,
+								chartHandler(context, validation, chart))
+								.thenApplyAsync(resp -> renderPredictionUnchecked(context, resp, chart),
+										predictionExecutor);
+					}));
+		} catch (RejectedExecutionException e) {
+			asyncPermits.release();
+			throw new PredictionRejectedException("Prediction queue is full", e);
+		}
+		return result.handle((prediction, e) -> {
+			asyncPermits.release();
+			Throwable cause = e;
+			while (cause instanceof CompletionException && cause.getCause() != null) {
+				cause = cause.getCause();
+			}
+			if (cause instanceof CircuitOpenException || cause instanceof EndpointOverloadedException) {
+				return renderLastForecast(target, cause);
+			}
+			if (cause instanceof RejectedExecutionException) {
+				// a later stage didn't fit in the worker queue either
+				throw new PredictionRejectedException("Prediction queue is full", cause);
+			}
+			if (e != null) {
+				log.error("Error has occurred when processing the request: " + e, e);
+				return ERROR_RESPONSE;
+			}
+			return prediction == null ? ERROR_RESPONSE : prediction.getPlot();
+		});
+	}
+	
+	/**
+	 * Creates the handler adding each prediction of the response to the chart, with the
+	 * actual values of its series. When enabled, the prediction is also exported to a csv
+	 * file on the prediction executor
+	 * @param validation the actual values of the target
+	 * @param chart the chart receiving the values
+	 */
+	private PredictionHandler chartHandler(PredictionContext context, ValidationData validation,
+			PredictionChart chart) {
+		return (categoryIdx, prediction) -> {
+			// the lines of the series are told apart by the series name when there are several
+			String prefix = context.getSeriesCount() > 1 ? context.getSeriesNames().get(categoryIdx) + " " : "";
+			forEachPlottedValue(prediction, categoryIdx, context, validation,
+					(date, value, category) -> chart.add(date, value, prefix + category));
+			if (appConfig.getExportConfig().isCsvEnabled()) {
+				exportCategoryPredictionToCsvAsync(prediction, categoryIdx, context, validation);
+			}
+		};
+	}
+	
+	private void exportCategoryPredictionToCsvAsync(Prediction prediction, int category, PredictionContext context,
+			ValidationData validation) {
+		try {
+			predictionExecutor.execute(() -> {
+				try {
+					exportCategoryPredictionToCsv(prediction, category, context, validation);
+				} catch (IOException e) {
+					log.error("Error has occurred when exporting the prediction to csv: " + e, e);
+				}
+			});
+		} catch (TaskRejectedException e) {
+			log.warn("Prediction executor is full, skipping the csv export of target {}", context.getTarget());
+		}
+	}
+	
+	/**
+	 * Stores the response and plots the chart of all its predictions
+	 * @return the response and its plot represented by javascript, or null if no prediction
+	 * was received
+	 */
+	private CachedPrediction renderPrediction(PredictionContext context, DeepArResponse deepArResponse,
+			PredictionChart chart) throws IOException {
+		if (deepArResponse == null || chart.isEmpty()) {
+			log.error("No prediction received for target: {}", context.getTarget());
+			return null;
+		}
+		
+		// keep the forecast in the prediction store
+		predictionStore.append(context, deepArResponse);
+		
+		log.info("Generating response data for plotting, target: {}", context.getTarget());
+		String plotTitle = "DeepAR Prediction for target " + context.getTarget();
+		
+		Timer.Sample sample = metrics.start();
+		String plot = PlotUtil.plotTimeSeriesToHtml(plotTitle, chart.toTable(context.getTarget()));
+		metrics.stop(sample, PredictionMetrics.RENDER, PredictionMetrics.TARGET, context.getTarget());
+		return new CachedPrediction(deepArResponse, plot);
+	}
+	
+	/**
+	 * Plots the last forecast stored for the target, served while the circuit of the
+	 * endpoint is open or its limits reject the invocation
+	 * @param reason why the endpoint was not invoked
+	 * @return the plotted forecast represented by javascript, or the error response if
+	 * the target has no stored forecast
+	 */
+	private String renderLastForecast(String target, Throwable reason) {
+		try {
+			StoredPrediction stored = predictionStore.findLatest(target);
+			if (stored == null || stored.getResponse() == null || stored.getResponse().getPredictions() == null) {
+				log.error("{} and no forecast is stored for target: {}", reason.getMessage(), target);
+				return ERROR_RESPONSE;
+			}
+			log.warn("{}, serving the forecast of target {} stored at {}", reason.getMessage(), target,
+					Instant.ofEpochMilli(stored.getTimestamp()));
 			
-			// plot the csv data, first category only for now
-			response = PlotUtil.plotTimeSeriesToHtml(plotTitle, savedPredictionFiles.get(0));
-		} catch (IOException e) {
-			log.error("Error has occurred when processing the response: " + e, e);
+			// the stored forecast has the dates and series names needed to plot it again
+			TemporalAmount frequency = DateTimes.parseFrequency(stored.getFrequency());
+			LocalDateTime lastDateTime = stored.getFirstPredictedDateTime().minus(frequency);
+			PredictionContext context = PredictionContext.builder()
+					.target(target)
+					.startDateTime(lastDateTime)
+					.lastDateTime(lastDateTime)
+					.frequency(frequency)
+					.dateTimeFormat(DateTimes.formatOf(frequency))
+					.seriesNames(stored.getSeriesNames())
+					.filePrefix(buildFilePrefix(target))
+					.request(new DeepArRequest())
+					.build();
+			String plotTitle = String.format("DeepAR Prediction for target %s (stored at %s, endpoint unavailable)",
+					target, Instant.ofEpochMilli(stored.getTimestamp()));
+			return plotForecast(context, stored.getResponse(), plotTitle);
+		} catch (IOException | RuntimeException e) {
+			log.error("Error has occurred when serving the stored forecast: " + e, e);
+			return ERROR_RESPONSE;
+		}
+	}
+	
+	/**
+	 * Plots the chart of a forecast that was not plotted while it was received, e.g. a
+	 * stored forecast or the forecast of a batch prediction
+	 * @param context the context of the request of the forecast
+	 * @param response the forecast
+	 * @param plotTitle the title of the plot
+	 * @return the plotted forecast represented by javascript
+	 */
+	public String plotForecast(PredictionContext context, DeepArResponse response, String plotTitle) throws IOException {
+		PredictionChart chart = new PredictionChart();
+		PredictionHandler handler = chartHandler(context, validationDataService.get(context.getTarget()), chart);
+		List<Prediction> predictions = response.getPredictions();
+		for (int i = 0; i < predictions.size(); i++) {
+			handler.onPrediction(i, predictions.get(i));
 		}
 		
-		return response;
+		Timer.Sample sample = metrics.start();
+		String plot = PlotUtil.plotTimeSeriesToHtml(plotTitle, chart.toTable(context.getTarget()));
+		metrics.stop(sample, PredictionMetrics.RENDER, PredictionMetrics.TARGET, context.getTarget());
+		return plot;
+	}
+	
+	private CachedPrediction renderPredictionUnchecked(PredictionContext context, DeepArResponse deepArResponse,
+			PredictionChart chart) {
+		try {
+			return renderPrediction(context, deepArResponse, chart);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * Builds the key of the prediction in the {@link PredictionCache}, the request is
+	 * identified by the endpoints it can be sent to and the hash of its serialized payload
+	 */
+	private String buildCacheKey(PredictionContext context) throws IOException {
+		return PredictionCache.buildKey(router.getCacheScope(context.getTarget()), context.getTarget(),
+				invoker.hashRequest(context));
+	}
+	
+	private String buildCacheKeyUnchecked(PredictionContext context) {
+		try {
+			return buildCacheKey(context);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	private PredictionContext buildPredictionContextUnchecked(String target, PredictionOptions options) {
+		try {
+			return buildPredictionContext(target, options);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
 	}
 	
+	/**
+	 * Builds the prefix of the files written for a request, the sequence number keeps
+	 * the names unique when the same target is requested concurrently
+	 */
 	public String buildFilePrefix(String target) {
-		return String.format("%s-%s", target, signer.getCurrentLocalTimestamp());
+		return String.format("%s-%s-%d", target, signer.getCurrentLocalTimestamp(), requestSequence.incrementAndGet());
 	}
 	
 	public void saveResponseAsJsonFile(DeepArResponse resp, String flieName) throws JsonGenerationException, JsonMappingException, IOException {
@@ -178,65 +407,30 @@ public class LabManager implements InitializingBean {
 		writer.writeValue(new File(flieName), resp);
 	}
 	
-	public List<String> exportJsonResponseToCsv(DeepArResponse resp, String filePrefix, String target) throws IOException {
+	public List<String> exportJsonResponseToCsv(DeepArResponse resp, PredictionContext context) throws IOException {
 		// we need to export each category to separate csv file for plotting
 		List<String> savedPredictionFile = new ArrayList<>();
 		int categoryIdx = 0;
 		List<Prediction> predictions= resp.getPredictions();
+		ValidationData validation = validationDataService.get(context.getTarget());
 		for(; categoryIdx < predictions.size(); categoryIdx++) {
 			Prediction pred = predictions.get(categoryIdx);
-			String absFilePath = exportCategoryPredictionToCsv(pred, categoryIdx, filePrefix, target);
+			String absFilePath = exportCategoryPredictionToCsv(pred, categoryIdx, context, validation);
 			savedPredictionFile.add(absFilePath);
 		}
 		
 		return savedPredictionFile;
 	}
 	
-	public void exportCategoryPredictionToCsv(Prediction p, int category) throws IOException {
-		List<Double> mean = p.getMean();
-		Quantiles quantiles = p.getQuantiles();
-		List<Double> quantile01 = quantiles.get01();
-		List<Double> quantile05 = quantiles.get05();
-		List<Double> quantile09 = quantiles.get09();
-		LocalDate lastDate = LocalDate.parse(lastExistingDate);
-		
-		log.debug("exportCategoryPredictionToCsv - lastDate: {}", lastDate);
-		
-		String fileName = String.format("prediction-category-%d.csv", category);
-		
-		log.debug("exportCategoryPredictionToCsv - fileName: {}", fileName);
-		
-		BufferedWriter writer = Files.newBufferedWriter(Paths.get(fileName));
-
-        CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader(
-        		"date", "mean", "quantile-01", "quantile-05", "quantile-09"));
-        
-        for(int i = 0; i < mean.size(); i++) {
-        	LocalDate currentPredictedDate = lastDate.plusDays(1+i);
-        	log.debug("exportCategoryPredictionToCsv - currentPredictedDate: {}", currentPredictedDate);
-        	csvPrinter.printRecord(
-        			currentPredictedDate.toString(), 
-        			mean.get(i), 
-        			quantile01.get(i), 
-        			quantile05.get(i),
-        			quantile09.get(i));
-        }
-        
-        csvPrinter.flush();
-	
+	public String exportCategoryPredictionToCsv(Prediction p, int category, PredictionContext context) throws IOException {
+		return exportCategoryPredictionToCsv(p, category, context, validationDataService.get(context.getTarget()));
 	}
 	
-	public String exportCategoryPredictionToCsv(Prediction p, int category, String filePrefix, String target) throws IOException {
-		List<Double> mean = p.getMean();
-		Quantiles quantiles = p.getQuantiles();
-		List<Double> quantile01 = quantiles.get01();
-		List<Double> quantile05 = quantiles.get05();
-		List<Double> quantile09 = quantiles.get09();
-		LocalDate lastDate = LocalDate.parse(lastExistingDate);
-		
-		log.debug("exportCategoryPredictionToCsv - lastDate: {}", lastDate);
+	private String exportCategoryPredictionToCsv(Prediction p, int category, PredictionContext context,
+			ValidationData validation) throws IOException {
+		log.debug("exportCategoryPredictionToCsv - lastDateTime: {}", context.getLastDateTime());
 		
-		String fileName = String.format("%s-prediction-category-%d.csv", filePrefix, category);
+		String fileName = String.format("%s-prediction-category-%d.csv", context.getFilePrefix(), category);
 		
 		log.debug("exportCategoryPredictionToCsv - fileName: {}", fileName);
 		
@@ -244,141 +438,145 @@ public class LabManager implements InitializingBean {
 		
 		log.info("exportCategoryPredictionToCsv - File to save: {}", filePath.toAbsolutePath());
 		
-		BufferedWriter writer = Files.newBufferedWriter( filePath );
-        CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader("date", "value", "category"));
+		Timer.Sample sample = metrics.start();
+		try (BufferedWriter writer = Files.newBufferedWriter( filePath );
+				CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader("date", "value", "category"))) {
+			forEachPlottedValue(p, category, context, validation,
+					(date, value, valueCategory) -> csvPrinter.printRecord(context.format(date), value, valueCategory));
+		}
+		metrics.stop(sample, PredictionMetrics.EXPORT, PredictionMetrics.TARGET, context.getTarget());
         
-        //load validation data
-        Reader in = new FileReader( ResourceUtils.getFile(buildValidationInputFilePath(target)) );
-		
-		Iterable<CSVRecord> validationRecords = CSVFormat.RFC4180.withFirstRecordAsHeader().parse(in);
-		List<CSVRecord> validationRecordList = StreamSupport.stream(validationRecords.spliterator(), false).collect(Collectors.toList());
-		
-        for(int i = 0; i < mean.size(); i++) {
-        	LocalDate currentPredictedDate = lastDate.plusDays(1+i);
-        	log.debug("exportCategoryPredictionToCsv - currentPredictedDate: {}", currentPredictedDate);
-        	csvPrinter.printRecord(
-        			currentPredictedDate.toString(), 
-        			quantile01.get(i), 
-        			ValueCategory.QUANTILE_01.getValue());
-        	csvPrinter.printRecord(
-        			currentPredictedDate.toString(), 
-        			quantile05.get(i), 
-        			ValueCategory.QUANTILE_05.getValue());
-        	csvPrinter.printRecord(
-        			currentPredictedDate.toString(), 
-        			quantile09.get(i), 
-        			ValueCategory.QUANTILE_09.getValue());
+        return filePath.toAbsolutePath().toString();
+	}
+	
+	/**
+	 * Receives the values plotted for a prediction
+	 */
+	@FunctionalInterface
+	private interface PlottedValueConsumer {
+		void accept(LocalDateTime date, double value, String category) throws IOException;
+	}
+	
+	/**
+	 * Visits the values plotted for a prediction: the predicted quantiles, or the mean when no
+	 * quantile was requested, and the actual values of the series at the predicted dates
+	 */
+	private void forEachPlottedValue(Prediction p, int category, PredictionContext context,
+			ValidationData validation, PlottedValueConsumer consumer) throws IOException {
+		double[] mean = p.getMean();
+		Map<String, double[]> quantiles = p.getQuantiles() == null ? Collections.emptyMap() : p.getQuantiles().getValues();
+		int horizon = mean != null ? mean.length : quantiles.values().stream().mapToInt(q -> q.length).max().orElse(0);
+		String seriesName = context.getSeriesNames().get(category);
+		
+        for(int i = 0; i < horizon; i++) {
+        	LocalDateTime currentPredictedDate = context.getPredictedDateTime(i);
+        	if (quantiles.isEmpty()) {
+        		// plot the mean when no quantile was requested
+        		consumer.accept(currentPredictedDate, mean[i], ValueCategory.MEAN.getValue());
+        	}
+        	for (Map.Entry<String, double[]> quantile : quantiles.entrySet()) {
+        		if (i < quantile.getValue().length) {
+        			consumer.accept(currentPredictedDate, quantile.getValue()[i], ValueCategory.labelOfQuantile(quantile.getKey()));
+        		}
+        	}
         	
-        	if( i < validationRecordList.size()) {
-            	CSVRecord validateRec = validationRecordList.get(i);
-            	if(validateRec != null) {
-                	csvPrinter.printRecord(
-                			currentPredictedDate.toString(), 
-                			category == 0? validateRec.get("category0"):validateRec.get("category1"), 
-                			ValueCategory.ACTUAL.getValue());
-            	}
+        	double actual = validation.getActual(seriesName, currentPredictedDate);
+        	if (!Double.isNaN(actual)) {
+        		consumer.accept(currentPredictedDate, actual, ValueCategory.ACTUAL.getValue());
         	}
-
         }
-        
-        csvPrinter.flush();
-        
-        return filePath.toAbsolutePath().toString();
 	}
 	
+	
 	/**
-	 * Builds DeepAR request string with json format from input file
+	 * Builds DeepAR request string with json format from input file and wraps it,
+	 * together with the dates of the series, in a {@link PredictionContext}
 	 * @param target The tag used to locate the input file, the input file name should have
 	 * pattern 'prediction-input-<target>.csv'
-	 * @return
+	 * @return the context of the new prediction request
 	 * @throws IOException
 	 */
-	public String constructJsonRequestObject(String target) throws IOException {
-		List<Integer> cat0ValueList = new ArrayList<>();
-		List<Integer> cat1ValueList = new ArrayList<>();
-		String startDateTime = null;
-		
-		Reader in = new FileReader( ResourceUtils.getFile(buildPredictionInputFilePath(target)) );
-		Iterable<CSVRecord> records = CSVFormat.RFC4180.withFirstRecordAsHeader().parse(in);
-		
-		//convert to lists of values which will be used to construct the 'Instance' elements of the json request object
-		//Note - You might need to customize code below based on how many categories you have for you input data, you 
-		//can also extend the code to support input features if you want
-		List<CSVRecord> recList = StreamSupport.stream(records.spliterator(), false).collect(Collectors.toList());
-		for(int i = 0; i < recList.size(); i++) {
-			CSVRecord record = recList.get(i);
-			String datetime = record.get("datetime");
-		    String valueOfCategory0 = record.get("category0");
-		    String valueOfCategory1 = record.get("category1");
-			if(i == 0) {
-				//Remember the start time, which is needed to build the request
-				startDateTime = datetime;
-				log.info("constructJsonRequestObject - startDateTime: {}", startDateTime);
-			}
-			if(i == recList.size()-1) {
-				this.lastExistingDate = datetime;
-				log.info("constructJsonRequestObject - lastExistingDate: {}", lastExistingDate);
-			}
-			
-		    cat0ValueList.add(Integer.valueOf(valueOfCategory0));
-		    cat1ValueList.add(Integer.valueOf(valueOfCategory1));
-		}
+	public PredictionContext buildPredictionContext(String target) throws IOException {
+		return buildPredictionContext(target, null);
+	}
+	
+	/**
+	 * Same as {@link #buildPredictionContext(String)}, with the inference options of the request
+	 * @param options the options overriding the profile of the target, may be null
+	 * @throws InvalidPredictionOptionsException if the options are not valid
+	 */
+	public PredictionContext buildPredictionContext(String target, PredictionOptions options) throws IOException {
+		// the input file is parsed once, then served by the registry until it changes
+		TargetSeries targetSeries = seriesRegistry.get(target);
+		SeriesData series = targetSeries.getSeries();
+		log.info("buildPredictionContext - series: {}, observations: {}, sent: {}, startDateTime: {}, lastDate: {}",
+				series.getNames(), series.getLength(), targetSeries.getWindowLength(), targetSeries.getStartDateTime(),
+				series.getLastDateTime());
 		
 		DeepArRequest req = new DeepArRequest();
-		List<Instance> insts = new ArrayList<>();
-		
-		//set cat 0 
-		Instance inst = new Instance();
-		inst.setStart(startDateTime);
-		List<Integer> cat = new ArrayList<>();
-		cat.add(0);
-		inst.setCat(cat);
-		inst.setTarget(cat0ValueList);
-		insts.add(inst);
-		
-		//set cat 1
-		inst = new Instance();
-		inst.setStart(startDateTime);
-		cat = new ArrayList<>();
-		cat.add(1);
-		inst.setCat(cat);
-		inst.setTarget(cat1ValueList);
-		insts.add(inst);
-		
-		req.setInstances(insts);
+		req.setInstances(targetSeries.getInstances());
 		
 		//set configuration data
-		Configuration config = new Configuration();
-		config.setNumSamples(50);
-		
-		List<String> quantiles = new ArrayList<>();
-		quantiles.add("0.1");
-		quantiles.add("0.5");
-		quantiles.add("0.9");
-		
-		config.setQuantiles(quantiles);
-		
-		List<String> outputTypes = new ArrayList<>();
-		outputTypes.add("mean");
-		outputTypes.add("quantiles");
-		outputTypes.add("samples");
-		
-		config.setOutputTypes(outputTypes);
+		Configuration config = resolveProfile(target, options).toConfiguration();
 		req.setConfiguration(config);
 		
-		ObjectMapper objectMapper = new ObjectMapper();
-		String result = objectMapper.writeValueAsString(req);
-		
-		log.debug("constructJsonRequestObject result: {}", result);
-		
-		return result;
+		return PredictionContext.builder()
+				.target(target)
+				.startDateTime(DateTimes.parse(targetSeries.getStartDateTime()))
+				.lastDateTime(DateTimes.parse(series.getLastDateTime()))
+				.frequency(series.getFrequency())
+				.dateTimeFormat(series.getDateTimeFormat())
+				.seriesNames(series.getNames())
+				.filePrefix(buildFilePrefix(target))
+				.request(req)
+				.instancesJson(targetSeries.getInstancesJson())
+				.build();
+	}
+	
+	/**
+	 * Resolves the inference options of a request, starting from the default profile, overridden
+	 * by the profile of the target, then by the profile selected by the request and finally by the
+	 * values set in the request. Samples are requested only when the response handling needs them
+	 * @param target the target to predict
+	 * @param options the options of the request, may be null
+	 * @return the resolved profile
+	 * @throws InvalidPredictionOptionsException if the request selects an unknown profile
+	 */
+	public PredictionProfile resolveProfile(String target, PredictionOptions options) {
+		PredictionProfile profile = appConfig.getDefaultProfile()
+				.overrideWith(findProfile(appConfig.getTargetProfiles().get(target)));
+		if (options != null) {
+			if (options.getProfile() != null) {
+				PredictionProfile selected = findProfile(options.getProfile());
+				if (selected == null) {
+					throw new InvalidPredictionOptionsException("Unknown profile: " + options.getProfile());
+				}
+				profile = profile.overrideWith(selected);
+			}
+			profile = profile.overrideWith(options);
+		}
+		if (appConfig.getResponseConfig().getSamplesMode() != SamplesMode.SKIP) {
+			profile = profile.withSamples();
+		}
+		return profile;
+	}
+	
+	private PredictionProfile findProfile(String name) {
+		return name == null ? null : appConfig.getProfiles().get(name);
 	}
 	
+    /**
+     * Gets the name of the input file of the target, the file is looked up in the data
+     * directory then in the classpath, see {@link DataFiles}
+     */
     public String buildPredictionInputFilePath(String target) {
-        return String.format("classpath:prediction-input-%s.csv", target);
+        return seriesRegistry.buildPredictionInputFileName(target);
     }
     
+    /**
+     * Gets the name of the validation file of the target, see {@link #buildPredictionInputFilePath(String)}
+     */
     public String buildValidationInputFilePath(String target) {
-        return String.format("classpath:validation-%s.csv", target);
+        return validationDataService.buildValidationInputFileName(target);
     }
 }
@@ -0,0 +1,42 @@
+package com.tensorlab.ml;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the latencies of the last successful invocations to estimate their
+ * percentiles, e.g. the delay after which a hedged request is sent
+ */
+public class LatencyTracker {
+	private static final int MIN_SAMPLES = 20;
+
+	private final long[] samples;
+	private int count;
+	private int next;
+
+	public LatencyTracker(int size) {
+		this.samples = new long[size];
+	}
+
+	public synchronized void record(long millis) {
+		samples[next] = millis;
+		next = (next + 1) % samples.length;
+		count = Math.min(count + 1, samples.length);
+	}
+
+	/**
+	 * Gets a percentile of the recorded latencies
+	 * @param percentile between 0 and 1, e.g. 0.95
+	 * @return the latency in milliseconds, or -1 if too few latencies were recorded
+	 */
+	public long percentile(double percentile) {
+		long[] sorted;
+		synchronized (this) {
+			if (count < MIN_SAMPLES) {
+				return -1;
+			}
+			sorted = Arrays.copyOf(samples, count);
+		}
+		Arrays.sort(sorted);
+		return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+	}
+}
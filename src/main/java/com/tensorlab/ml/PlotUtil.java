@@ -1,11 +1,20 @@
 package com.tensorlab.ml;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
+import org.springframework.util.DigestUtils;
+
+import tech.tablesaw.api.DateColumn;
+import tech.tablesaw.api.DateTimeColumn;
+import tech.tablesaw.api.NumberColumn;
 import tech.tablesaw.api.Table;
-import tech.tablesaw.plotly.api.TimeSeriesPlot;
+import tech.tablesaw.columns.Column;
 import tech.tablesaw.plotly.components.Figure;
+import tech.tablesaw.plotly.components.Layout;
 import tech.tablesaw.plotly.components.Page;
+import tech.tablesaw.plotly.traces.ScatterTrace;
 
 /**
  * @author JJ
@@ -21,9 +30,51 @@ public class PlotUtil {
      */
 	public static String plotTimeSeriesToHtml(String title, String sourceFilePath) throws IOException {
 		Table t = Table.read().csv(sourceFilePath);
-		Figure figure = TimeSeriesPlot.create(title, t, "date", "value", "category");
+		return plotTimeSeriesToHtml(title, t);
+	}
+	
+    /**
+     * Plots the time series data of a table as Javascript string, one line per value of
+     * the 'category' column. Unlike TimeSeriesPlot, the 'date' column may hold dates or
+     * date times, e.g. for an hourly series
+     * @param title The title of the graph
+     * @param table The table with the 'date', 'value' and 'category' columns
+     * @return the Java script string representing the plotted graph
+     */
+	public static String plotTimeSeriesToHtml(String title, Table table) {
+		List<Table> lines = table.splitOn(table.categoricalColumn("category")).asTableList();
+		ScatterTrace[] traces = new ScatterTrace[lines.size()];
+		for (int i = 0; i < traces.length; i++) {
+			Table line = lines.get(i).sortOn("date");
+			traces[i] = traceBuilder(line.column("date"), line.numberColumn("value"))
+					.showLegend(true)
+					.name(lines.get(i).name())
+					.mode(ScatterTrace.Mode.LINE)
+					.build();
+		}
+		Figure figure = new Figure(Layout.builder(title, "date", "value").build(), traces);
         Page page = Page.pageBuilder(figure, "target").build();
         String output = page.asJavascript();
 		return output;
 	}
+	
+	private static ScatterTrace.ScatterBuilder traceBuilder(Column<?> dates, NumberColumn<?> values) {
+		if (dates instanceof DateColumn) {
+			return ScatterTrace.builder((DateColumn) dates, values);
+		}
+		if (dates instanceof DateTimeColumn) {
+			return ScatterTrace.builder((DateTimeColumn) dates, values);
+		}
+		return ScatterTrace.builder(dates, values);
+	}
+	
+	/**
+	 * Computes the strong entity tag of a plot, the hash of its content, so a plot
+	 * rendered again from the same forecast gets the same tag
+	 * @param plot the plotted graph
+	 * @return the quoted tag, sent in the ETag header
+	 */
+	public static String computeEtag(String plot) {
+		return '"' + DigestUtils.md5DigestAsHex(plot.getBytes(StandardCharsets.UTF_8)) + '"';
+	}
 }
@@ -0,0 +1,173 @@
+package com.tensorlab.ml;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounded cache of the predictions, keyed by the endpoint, the target and the hash
+ * of the serialized request. The cache holds the pending prediction as soon as it
+ * is requested, so concurrent identical requests share a single endpoint
+ * invocation. Failed or empty predictions are not kept
+ */
+@Slf4j
+@Component
+public class PredictionCache implements InitializingBean {
+
+	/**
+	 * Computes a prediction on the calling thread
+	 */
+	@FunctionalInterface
+	public interface PredictionLoader {
+		CachedPrediction load() throws IOException;
+	}
+
+	@Autowired
+	private AppConfig appConfig;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private Cache<String, CompletableFuture<CachedPrediction>> cache;
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		AppConfig.CacheConfig cacheConfig = appConfig.getCacheConfig();
+		cache = Caffeine.newBuilder()
+				.maximumSize(cacheConfig.getMaxSize())
+				.expireAfterWrite(cacheConfig.getTtl(), TimeUnit.MILLISECONDS)
+				.recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor(meterRegistry, cache, "predictions");
+	}
+
+	public static String buildKey(String endpoint, String target, String requestHash) {
+		return endpoint + ':' + target + ':' + requestHash;
+	}
+
+	/**
+	 * Gets the cached prediction, or computes it on the calling thread. When the same
+	 * prediction is already being computed, waits for it instead
+	 * @param key the key built with {@link #buildKey(String, String, String)}
+	 * @param loader computes the prediction, may return null if there is no prediction
+	 * @return the prediction, or null
+	 * @throws IOException if the prediction failed
+	 */
+	public CachedPrediction get(String key, PredictionLoader loader) throws IOException {
+		if (!appConfig.getCacheConfig().isEnabled()) {
+			return loader.load();
+		}
+		CompletableFuture<CachedPrediction> promise = new CompletableFuture<>();
+		CompletableFuture<CachedPrediction> cached = lookup(key, promise);
+		if (cached == promise) {
+			try {
+				CachedPrediction prediction = loader.load();
+				promise.complete(prediction);
+				return prediction;
+			} catch (IOException | RuntimeException e) {
+				promise.completeExceptionally(e);
+				throw e;
+			}
+		}
+		try {
+			return cached.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Gets the cached prediction, or starts computing it. When the same prediction is
+	 * already being computed, the returned future completes with it
+	 * @param key the key built with {@link #buildKey(String, String, String)}
+	 * @param loader starts computing the prediction, the future may complete with null
+	 * if there is no prediction
+	 * @return a future completed with the prediction
+	 */
+	public CompletableFuture<CachedPrediction> getAsync(String key,
+			Supplier<CompletableFuture<CachedPrediction>> loader) {
+		if (!appConfig.getCacheConfig().isEnabled()) {
+			return loader.get();
+		}
+		CompletableFuture<CachedPrediction> promise = new CompletableFuture<>();
+		CompletableFuture<CachedPrediction> cached = lookup(key, promise);
+		if (cached == promise) {
+			try {
+				loader.get().whenComplete((prediction, e) -> {
+					if (e != null) {
+						promise.completeExceptionally(e);
+					} else {
+						promise.complete(prediction);
+					}
+				});
+			} catch (RuntimeException e) {
+				promise.completeExceptionally(e);
+			}
+		}
+		return cached;
+	}
+
+	/**
+	 * Gets the pending or completed prediction of the key, or registers the promise
+	 * when there is none. The promise is removed once completed without a prediction
+	 */
+	private CompletableFuture<CachedPrediction> lookup(String key, CompletableFuture<CachedPrediction> promise) {
+		CompletableFuture<CachedPrediction> cached = cache.get(key, k -> promise);
+		if (cached == promise) {
+			log.debug("Prediction cache miss, key: {}", key);
+			promise.whenComplete((prediction, e) -> {
+				if (e != null || prediction == null) {
+					cache.asMap().remove(key, promise);
+				}
+			});
+		} else {
+			log.debug("Prediction cache hit, key: {}", key);
+		}
+		return cached;
+	}
+
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	public CacheStats stats() {
+		return cache.stats();
+	}
+
+	/**
+	 * Gets the hit, miss and eviction counters of the cache
+	 */
+	public Map<String, Object> getMetrics() {
+		CacheStats stats = cache.stats();
+		Map<String, Object> metrics = new LinkedHashMap<>();
+		metrics.put("size", cache.estimatedSize());
+		metrics.put("hitCount", stats.hitCount());
+		metrics.put("missCount", stats.missCount());
+		metrics.put("hitRate", stats.hitRate());
+		metrics.put("evictionCount", stats.evictionCount());
+		return metrics;
+	}
+}
@@ -0,0 +1,46 @@
+package com.tensorlab.ml;
+
+import java.time.LocalDateTime;
+
+import tech.tablesaw.api.DateTimeColumn;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+
+/**
+ * The data plotted for a prediction request, collected in memory while the
+ * predictions are parsed. Each row is a value of one of the plotted lines: a
+ * predicted quantile, the mean or the actual value of a series
+ */
+public class PredictionChart {
+	public static final String COLUMN_DATE = "date";
+	public static final String COLUMN_VALUE = "value";
+	public static final String COLUMN_CATEGORY = "category";
+
+	private final DateTimeColumn dates = DateTimeColumn.create(COLUMN_DATE);
+	private final DoubleColumn values = DoubleColumn.create(COLUMN_VALUE);
+	private final StringColumn categories = StringColumn.create(COLUMN_CATEGORY);
+
+	/**
+	 * Adds a value to the chart
+	 * @param date the date time of the value
+	 * @param value the value
+	 * @param category the line the value belongs to
+	 */
+	public void add(LocalDateTime date, double value, String category) {
+		dates.append(date);
+		values.append(value);
+		categories.append(category);
+	}
+
+	public boolean isEmpty() {
+		return values.isEmpty();
+	}
+
+	/**
+	 * Builds the table plotted by {@link PlotUtil#plotTimeSeriesToHtml(String, Table)}
+	 */
+	public Table toTable(String name) {
+		return Table.create(name, dates, values, categories);
+	}
+}
@@ -0,0 +1,74 @@
+package com.tensorlab.ml;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAmount;
+import java.util.List;
+
+import com.tensorlab.ml.aws.sagemaker.deepar.json.requeset.DeepArRequest;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.ToString;
+import lombok.Value;
+
+/**
+ * Immutable state of a single prediction request. The context is created when
+ * the input file is read and is passed along every stage of the pipeline (build,
+ * sign, invoke, export and plot), so concurrent requests never share any mutable
+ * data
+ */
+@Value
+@Builder
+public class PredictionContext {
+	/** the name used to locate the input and validation files */
+	@NonNull
+	String target;
+	/** the date time of the first observation sent, used as the 'start' of each instance */
+	@NonNull
+	LocalDateTime startDateTime;
+	/** the date time of the last observation, the forecast starts right after it */
+	@NonNull
+	LocalDateTime lastDateTime;
+	/** the interval between two consecutive observations, a Period or a Duration */
+	@NonNull
+	TemporalAmount frequency;
+	/** the format of the date times of the input file, used to write the predicted ones */
+	@NonNull
+	@Builder.Default
+	@ToString.Exclude
+	DateTimeFormatter dateTimeFormat = DateTimeFormatter.ISO_LOCAL_DATE;
+	/** the names of the series sent to the endpoint, in instance order */
+	@NonNull
+	List<String> seriesNames;
+	/** the prefix of the files written for this request */
+	@NonNull
+	String filePrefix;
+	/** the DeepAR request, it must not be modified once the context is built */
+	@NonNull
+	@ToString.Exclude
+	DeepArRequest request;
+	/** the instances of the request already serialized, null if they must be serialized with the request */
+	@ToString.Exclude
+	byte[] instancesJson;
+
+	public int getSeriesCount() {
+		return seriesNames.size();
+	}
+
+	/**
+	 * Gets the date time of the n-th predicted value, starting from 0
+	 * @param index the position of the value in the forecast
+	 * @return the date time the predicted value belongs to
+	 */
+	public LocalDateTime getPredictedDateTime(int index) {
+		return lastDateTime.plus(DateTimes.multiply(frequency, index + 1));
+	}
+
+	/**
+	 * Formats a date time like the ones of the input file
+	 */
+	public String format(LocalDateTime dateTime) {
+		return dateTimeFormat.format(dateTime);
+	}
+}
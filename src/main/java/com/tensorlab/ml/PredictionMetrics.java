@@ -0,0 +1,118 @@
+package com.tensorlab.ml;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Records the duration of each stage of the prediction pipeline and the sizes of
+ * the payloads in the {@link MeterRegistry}, scraped from /actuator/prometheus.
+ * Each stage has its own timer, tagged with the target and, for the stages of an
+ * invocation, with the endpoint. The requests packing several targets are tagged
+ * with the {@link #BATCH} target. The load and health of each endpoint are
+ * published as gauges
+ */
+@Component
+public class PredictionMetrics implements InitializingBean {
+	/** parsing of an input file, tagged with the mode: full or append */
+	public static final String CSV_PARSE = "deepar.csv.parse";
+	/** serialization of the instances of a target, or of the payload of a request */
+	public static final String SERIALIZE = "deepar.request.serialize";
+	/** SigV4 signing of a request */
+	public static final String SIGN = "deepar.request.sign";
+	/** wait for a pooled connection, tagged with the client: sync or async */
+	public static final String CONNECTION_ACQUIRE = "deepar.connection.acquire";
+	/** exchange of a request with the endpoint, from the connection request to the response */
+	public static final String INVOKE = "deepar.invoke";
+	/** parsing of a response, the sync client parses it while it's received */
+	public static final String RESPONSE_PARSE = "deepar.response.parse";
+	/** export of a prediction to a csv file */
+	public static final String EXPORT = "deepar.export";
+	/** rendering of the plot of a prediction */
+	public static final String RENDER = "deepar.render";
+	/** precomputation of the forecasts of the due targets, see {@link ForecastPrecomputer} */
+	public static final String PRECOMPUTE = "deepar.precompute";
+	public static final String REQUEST_SIZE = "deepar.request.size";
+	public static final String RESPONSE_SIZE = "deepar.response.size";
+
+	public static final String TARGET = "target";
+	public static final String ENDPOINT = "endpoint";
+	public static final String CLIENT = "client";
+	public static final String OUTCOME = "outcome";
+	public static final String HOST = "host";
+	/** what is serialized: instances or payload */
+	public static final String PART = "part";
+	/** how an input file is parsed: full or append */
+	public static final String MODE = "mode";
+	/** the target tag of the requests packing several targets */
+	public static final String BATCH = "batch";
+
+	@Autowired
+	private MeterRegistry registry;
+
+	@Autowired
+	private EndpointRouter router;
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		for (SageMakerEndpoint endpoint : router.getEndpoints()) {
+			String name = endpoint.getName();
+			Gauge.builder("deepar.endpoint.in.flight", endpoint, e -> e.getConcurrencyLimiter().getInFlight())
+					.tag(ENDPOINT, name).register(registry);
+			Gauge.builder("deepar.endpoint.concurrency.limit", endpoint, e -> e.getConcurrencyLimiter().getLimit())
+					.tag(ENDPOINT, name).register(registry);
+			Gauge.builder("deepar.endpoint.queued", endpoint, e -> e.getConcurrencyLimiter().getQueued())
+					.tag(ENDPOINT, name).register(registry);
+			Gauge.builder("deepar.endpoint.circuit.open", endpoint,
+					e -> e.getCircuitBreaker().getState() == CircuitBreaker.State.CLOSED ? 0 : 1)
+					.tag(ENDPOINT, name).register(registry);
+			FunctionCounter.builder("deepar.endpoint.failures", endpoint, SageMakerEndpoint::getFailures)
+					.tag(ENDPOINT, name).register(registry);
+			FunctionCounter.builder("deepar.endpoint.rejections", endpoint, SageMakerEndpoint::getRejections)
+					.tag(ENDPOINT, name).register(registry);
+		}
+	}
+
+	/**
+	 * Starts timing a stage
+	 * @return the sample to pass to {@link #stop(Timer.Sample, String, String...)}
+	 */
+	public Timer.Sample start() {
+		return Timer.start(registry);
+	}
+
+	/**
+	 * Records the duration of a stage
+	 * @param stage the name of the timer of the stage, e.g. {@link #INVOKE}
+	 * @param tags the tags of the stage as key value pairs, a null value is recorded as none
+	 */
+	public void stop(Timer.Sample sample, String stage, String... tags) {
+		sample.stop(registry.timer(stage, nonNull(tags)));
+	}
+
+	/**
+	 * Records the size of a payload, an unknown size is not recorded
+	 * @param name {@link #REQUEST_SIZE} or {@link #RESPONSE_SIZE}
+	 * @param bytes the size in bytes, negative if unknown
+	 */
+	public void recordSize(String name, long bytes, String... tags) {
+		if (bytes >= 0) {
+			DistributionSummary.builder(name).baseUnit("bytes").tags(nonNull(tags)).register(registry).record(bytes);
+		}
+	}
+
+	private static String[] nonNull(String[] tags) {
+		for (int i = 1; i < tags.length; i += 2) {
+			if (tags[i] == null) {
+				tags[i] = "none";
+			}
+		}
+		return tags;
+	}
+}
@@ -0,0 +1,17 @@
+package com.tensorlab.ml;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * The inference options of a single prediction request, bound from the query
+ * parameters: 'profile' selects one of the profiles defined in {@link AppConfig},
+ * and 'outputTypes', 'numSamples' and 'quantiles' override single values
+ */
+@Data
+@ToString(callSuper = true)
+@EqualsAndHashCode(callSuper = true)
+public class PredictionOptions extends PredictionProfile {
+	private String profile;
+}
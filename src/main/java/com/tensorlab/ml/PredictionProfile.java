@@ -0,0 +1,109 @@
+package com.tensorlab.ml;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.tensorlab.ml.aws.sagemaker.deepar.json.requeset.Configuration;
+
+import lombok.Data;
+
+/**
+ * The inference options sent in the DeepAR request configuration. Profiles are
+ * defined in {@link AppConfig} and can be assigned to targets, and any value left
+ * null is inherited from the profile it overrides
+ */
+@Data
+public class PredictionProfile {
+	public static final String OUTPUT_MEAN = "mean";
+	public static final String OUTPUT_QUANTILES = "quantiles";
+	public static final String OUTPUT_SAMPLES = "samples";
+
+	private static final List<String> OUTPUT_TYPES = Arrays.asList(OUTPUT_MEAN, OUTPUT_QUANTILES, OUTPUT_SAMPLES);
+
+	private List<String> outputTypes;
+	private Integer numSamples;
+	private List<String> quantiles;
+
+	/**
+	 * Gets the default profile, requesting the mean and the 0.1, 0.5 and 0.9
+	 * quantiles but no samples
+	 */
+	public static PredictionProfile defaults() {
+		PredictionProfile profile = new PredictionProfile();
+		profile.setOutputTypes(new ArrayList<>(Arrays.asList(OUTPUT_MEAN, OUTPUT_QUANTILES)));
+		profile.setNumSamples(50);
+		profile.setQuantiles(new ArrayList<>(Arrays.asList("0.1", "0.5", "0.9")));
+		return profile;
+	}
+
+	/**
+	 * Creates a new profile holding the values of this profile, replaced by the
+	 * values set in the override
+	 * @param override the profile whose non null values take precedence, may be null
+	 * @return the merged profile
+	 */
+	public PredictionProfile overrideWith(PredictionProfile override) {
+		PredictionProfile merged = new PredictionProfile();
+		merged.setOutputTypes(pick(override == null ? null : override.getOutputTypes(), outputTypes));
+		merged.setNumSamples(override == null || override.getNumSamples() == null ? numSamples : override.getNumSamples());
+		merged.setQuantiles(pick(override == null ? null : override.getQuantiles(), quantiles));
+		return merged;
+	}
+
+	/**
+	 * Makes sure the samples are requested, for consumers that need them
+	 */
+	public PredictionProfile withSamples() {
+		PredictionProfile profile = overrideWith(null);
+		if (profile.getOutputTypes() != null && !profile.getOutputTypes().contains(OUTPUT_SAMPLES)) {
+			profile.getOutputTypes().add(OUTPUT_SAMPLES);
+		}
+		return profile;
+	}
+
+	/**
+	 * Builds the request configuration of this profile
+	 * @throws InvalidPredictionOptionsException if one of the values is not valid
+	 */
+	public Configuration toConfiguration() {
+		validate();
+		Configuration config = new Configuration();
+		config.setNumSamples(numSamples);
+		config.setOutputTypes(outputTypes == null ? null : new ArrayList<>(outputTypes));
+		config.setQuantiles(quantiles == null ? null : new ArrayList<>(quantiles));
+		return config;
+	}
+
+	private void validate() {
+		if (numSamples != null && numSamples <= 0) {
+			throw new InvalidPredictionOptionsException("num_samples must be positive: " + numSamples);
+		}
+		if (outputTypes != null) {
+			for (String outputType : outputTypes) {
+				if (!OUTPUT_TYPES.contains(outputType)) {
+					throw new InvalidPredictionOptionsException("Unknown output type: " + outputType + ", expected one of " + OUTPUT_TYPES);
+				}
+			}
+		}
+		if (quantiles != null) {
+			for (String quantile : quantiles) {
+				BigDecimal value;
+				try {
+					value = new BigDecimal(quantile);
+				} catch (NumberFormatException e) {
+					throw new InvalidPredictionOptionsException("Invalid quantile: " + quantile, e);
+				}
+				if (value.signum() <= 0 || value.compareTo(BigDecimal.ONE) >= 0) {
+					throw new InvalidPredictionOptionsException("Quantiles must be between 0 and 1: " + quantile);
+				}
+			}
+		}
+	}
+
+	private static List<String> pick(List<String> override, List<String> value) {
+		List<String> picked = override != null && !override.isEmpty() ? override : value;
+		return picked == null ? null : new ArrayList<>(picked);
+	}
+}
@@ -0,0 +1,21 @@
+package com.tensorlab.ml;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a prediction cannot be accepted because the configured concurrency
+ * limits are reached, the client receives a 429 status and may retry later
+ */
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class PredictionRejectedException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public PredictionRejectedException(String message) {
+		super(message);
+	}
+
+	public PredictionRejectedException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,536 @@
+package com.tensorlab.ml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponse;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.Prediction;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.Quantiles;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only store of the received forecasts. The forecasts are appended as
+ * binary records to segment files of bounded size, each record holding the
+ * predicted values as contiguous arrays of doubles, and are indexed in memory by
+ * target and timestamp. The timestamps of a target are unique, they identify its
+ * records. The index is rebuilt from the segments on startup, a record torn by a
+ * crash is truncated and a record copied twice by an interrupted compaction is
+ * indexed once.
+ * <p>
+ * Forecasts older than the retention, or beyond the number kept per target, are
+ * dropped by the compaction, which deletes the segments without live records and
+ * moves the live records out of the mostly dead ones. The moved records are
+ * forced to disk before their old segment is deleted. The samples and the
+ * additional properties of the predictions are not stored.
+ * <p>
+ * Record layout: length (int), CRC32 of the body (int), body: version (byte),
+ * target (UTF), timestamp (long), first predicted date time (long, epoch second
+ * in UTC, an epoch day in the records of version 1), frequency (UTF), series names (int count, UTF each), predictions (int count,
+ * each: mean, quantiles (int count, each: name (UTF), values)), where every array
+ * of values is written as its length (int, -1 for null) followed by the doubles
+ */
+@Slf4j
+@Component
+public class PredictionStore implements InitializingBean, DisposableBean {
+	private static final int SEGMENT_MAGIC = 0x44505331; // "DPS1"
+	private static final int SEGMENT_HEADER_BYTES = 4;
+	private static final int RECORD_HEADER_BYTES = 8;
+	private static final byte RECORD_VERSION = 2;
+	/** the records written before the hourly series, they store the first predicted day */
+	private static final byte DAILY_RECORD_VERSION = 1;
+	private static final String SEGMENT_PREFIX = "predictions-";
+	private static final String SEGMENT_SUFFIX = ".seg";
+
+	@Autowired
+	private AppConfig appConfig;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final NavigableMap<Long, Segment> segments = new TreeMap<>();
+	/** the records of each target, by timestamp */
+	private final Map<String, NavigableMap<Long, IndexEntry>> index = new HashMap<>();
+	private Segment active;
+	private ScheduledExecutorService compactionExecutor;
+
+	private static class Segment {
+		final long id;
+		final Path path;
+		final FileChannel channel;
+		long size;
+		int records;
+		int liveRecords;
+
+		Segment(long id, Path path, FileChannel channel) {
+			this.id = id;
+			this.path = path;
+			this.channel = channel;
+		}
+	}
+
+	private static class IndexEntry {
+		final long timestamp;
+		/** the length of the record, header included */
+		final int length;
+		Segment segment;
+		long offset;
+
+		IndexEntry(long timestamp, int length, Segment segment, long offset) {
+			this.timestamp = timestamp;
+			this.length = length;
+			this.segment = segment;
+			this.offset = offset;
+		}
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		AppConfig.StoreConfig storeConfig = appConfig.getStoreConfig();
+		if (!storeConfig.isEnabled()) {
+			return;
+		}
+		Path directory = Paths.get(storeConfig.getDirectory());
+		Files.createDirectories(directory);
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			for (Path path : files) {
+				String name = path.getFileName().toString();
+				long id;
+				try {
+					id = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+				} catch (NumberFormatException | IndexOutOfBoundsException e) {
+					log.warn("Skipping file {}, its name is not the one of a segment", path);
+					continue;
+				}
+				segments.put(id, new Segment(id, path, FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)));
+			}
+		}
+		for (Segment segment : segments.values()) {
+			scan(segment);
+		}
+		active = segments.isEmpty() || segments.lastEntry().getValue().size >= storeConfig.getMaxSegmentBytes()
+				? createSegment(segments.isEmpty() ? 1 : segments.lastKey() + 1)
+				: segments.lastEntry().getValue();
+		log.info("Prediction store opened, directory: {}, segments: {}, targets: {}", directory.toAbsolutePath(),
+				segments.size(), index.size());
+
+		compact();
+		compactionExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "prediction-store-compaction");
+			thread.setDaemon(true);
+			return thread;
+		});
+		compactionExecutor.scheduleWithFixedDelay(this::compact, storeConfig.getCompactionInterval(),
+				storeConfig.getCompactionInterval(), TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		if (compactionExecutor != null) {
+			compactionExecutor.shutdownNow();
+		}
+		lock.writeLock().lock();
+		try {
+			for (Segment segment : segments.values()) {
+				segment.channel.force(true);
+				segment.channel.close();
+			}
+			segments.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Appends the forecast of a prediction request
+	 * @param context the context of the request, giving the target, the dates and the series
+	 * @param response the response received from the endpoint
+	 * @throws IOException
+	 */
+	public void append(PredictionContext context, DeepArResponse response) throws IOException {
+		if (!appConfig.getStoreConfig().isEnabled()) {
+			return;
+		}
+		int length;
+		lock.writeLock().lock();
+		try {
+			// the entries of a new target are indexed once its first record is written
+			NavigableMap<Long, IndexEntry> entries = index.getOrDefault(context.getTarget(), new TreeMap<>());
+			// a forecast stored in the same millisecond as the previous one gets the next timestamp
+			long timestamp = System.currentTimeMillis();
+			if (!entries.isEmpty() && timestamp <= entries.lastKey()) {
+				timestamp = entries.lastKey() + 1;
+			}
+			byte[] body = encode(context, timestamp, response);
+			CRC32 crc = new CRC32();
+			crc.update(body);
+			ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + body.length);
+			record.putInt(body.length).putInt((int) crc.getValue()).put(body).flip();
+			length = record.remaining();
+
+			IndexEntry entry = new IndexEntry(timestamp, length, null, 0);
+			write(entry, record);
+			entries.put(timestamp, entry);
+			index.putIfAbsent(context.getTarget(), entries);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		log.debug("Forecast stored, target: {}, record bytes: {}", context.getTarget(), length);
+	}
+
+	/**
+	 * Gets the stored forecasts of a target
+	 * @param target the target
+	 * @param from the earliest timestamp, in milliseconds since the epoch, may be null
+	 * @param to the latest timestamp, in milliseconds since the epoch, may be null
+	 * @return the forecasts ordered by timestamp
+	 * @throws IOException
+	 */
+	public List<StoredPrediction> find(String target, Long from, Long to) throws IOException {
+		List<StoredPrediction> found = new ArrayList<>();
+		lock.readLock().lock();
+		try {
+			NavigableMap<Long, IndexEntry> entries = index.get(target);
+			if (entries != null) {
+				for (IndexEntry entry : entries.subMap(from == null ? Long.MIN_VALUE : from, true,
+						to == null ? Long.MAX_VALUE : to, true).values()) {
+					found.add(decode(read(entry)));
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return found;
+	}
+
+	/**
+	 * Gets the latest forecast of a target
+	 * @return the forecast, or null if none is stored
+	 * @throws IOException
+	 */
+	public StoredPrediction findLatest(String target) throws IOException {
+		lock.readLock().lock();
+		try {
+			NavigableMap<Long, IndexEntry> entries = index.get(target);
+			return entries == null || entries.isEmpty() ? null : decode(read(entries.lastEntry().getValue()));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Drops the forecasts beyond the retention policy and reclaims the space of the
+	 * segments holding mostly dropped records
+	 */
+	public void compact() {
+		AppConfig.StoreConfig storeConfig = appConfig.getStoreConfig();
+		long cutoff = System.currentTimeMillis() - storeConfig.getRetention();
+		int dropped = 0;
+		int deleted = 0;
+		lock.writeLock().lock();
+		try {
+			for (Iterator<NavigableMap<Long, IndexEntry>> targets = index.values().iterator(); targets.hasNext();) {
+				NavigableMap<Long, IndexEntry> entries = targets.next();
+				// the oldest forecasts are dropped first
+				int excess = entries.size() - storeConfig.getMaxPerTarget();
+				for (Iterator<IndexEntry> it = entries.values().iterator(); it.hasNext();) {
+					IndexEntry entry = it.next();
+					if (excess-- > 0 || entry.timestamp < cutoff) {
+						entry.segment.liveRecords--;
+						it.remove();
+						dropped++;
+					}
+				}
+				if (entries.isEmpty()) {
+					targets.remove();
+				}
+			}
+
+			boolean relocated = false;
+			for (Segment segment : new ArrayList<>(segments.values())) {
+				if (segment != active && segment.liveRecords > 0 && segment.liveRecords * 2 < segment.records) {
+					relocate(segment);
+					relocated = true;
+				}
+			}
+			if (relocated) {
+				// the moved records must be durable before their old copies are deleted
+				active.channel.force(true);
+			}
+			for (Segment segment : new ArrayList<>(segments.values())) {
+				if (segment != active && segment.liveRecords == 0) {
+					deleteSegment(segment);
+					deleted++;
+				}
+			}
+		} catch (IOException e) {
+			log.error("Error has occurred when compacting the prediction store: " + e, e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		if (dropped > 0 || deleted > 0) {
+			log.info("Prediction store compacted, dropped forecasts: {}, deleted segments: {}", dropped, deleted);
+		}
+	}
+
+	/**
+	 * Moves the live records of the segment to the active segment, must be called
+	 * with the write lock held
+	 */
+	private void relocate(Segment segment) throws IOException {
+		for (NavigableMap<Long, IndexEntry> entries : index.values()) {
+			for (IndexEntry entry : entries.values()) {
+				if (entry.segment == segment) {
+					ByteBuffer record = ByteBuffer.wrap(readRecord(entry));
+					segment.liveRecords--;
+					write(entry, record);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the record at the end of the active segment and points the entry to it,
+	 * must be called with the write lock held
+	 */
+	private void write(IndexEntry entry, ByteBuffer record) throws IOException {
+		if (active.records > 0 && active.size + record.remaining() > appConfig.getStoreConfig().getMaxSegmentBytes()) {
+			active.channel.force(true);
+			active = createSegment(active.id + 1);
+		}
+		long offset = active.size;
+		long position = offset;
+		while (record.hasRemaining()) {
+			position += active.channel.write(record, position);
+		}
+		active.size = position;
+		active.records++;
+		active.liveRecords++;
+		entry.segment = active;
+		entry.offset = offset;
+	}
+
+	private Segment createSegment(long id) throws IOException {
+		Path path = Paths.get(appConfig.getStoreConfig().getDirectory(), String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+		Segment segment = new Segment(id, path, FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+				StandardOpenOption.READ, StandardOpenOption.WRITE));
+		writeSegmentHeader(segment);
+		segments.put(id, segment);
+		return segment;
+	}
+
+	private static void writeSegmentHeader(Segment segment) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_BYTES).putInt(SEGMENT_MAGIC);
+		header.flip();
+		while (header.hasRemaining()) {
+			segment.channel.write(header, SEGMENT_HEADER_BYTES - header.remaining());
+		}
+		segment.size = SEGMENT_HEADER_BYTES;
+	}
+
+	private void deleteSegment(Segment segment) throws IOException {
+		segments.remove(segment.id);
+		segment.channel.close();
+		Files.deleteIfExists(segment.path);
+	}
+
+	/**
+	 * Indexes the records of a segment, the segment is truncated at the first torn or
+	 * corrupted record. The segments must be scanned in order, a record already indexed
+	 * from an older segment was copied by an interrupted compaction and its newer copy
+	 * replaces it
+	 */
+	private void scan(Segment segment) throws IOException {
+		long fileSize = segment.channel.size();
+		ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+		if (fileSize < SEGMENT_HEADER_BYTES) {
+			// the segment was being created
+			log.warn("Rewriting the header of empty segment {}", segment.path);
+			segment.channel.truncate(0);
+			writeSegmentHeader(segment);
+			return;
+		}
+		if (readFully(segment.channel, header, 0, SEGMENT_HEADER_BYTES).getInt() != SEGMENT_MAGIC) {
+			throw new IOException("Not a prediction store segment: " + segment.path);
+		}
+		long position = SEGMENT_HEADER_BYTES;
+		while (position < fileSize) {
+			if (position + RECORD_HEADER_BYTES > fileSize) {
+				break;
+			}
+			readFully(segment.channel, header, position, RECORD_HEADER_BYTES);
+			int length = header.getInt();
+			int checksum = header.getInt();
+			if (length <= 0 || position + RECORD_HEADER_BYTES + length > fileSize) {
+				break;
+			}
+			byte[] body = readFully(segment.channel, ByteBuffer.allocate(length), position + RECORD_HEADER_BYTES, length).array();
+			CRC32 crc = new CRC32();
+			crc.update(body);
+			if ((int) crc.getValue() != checksum) {
+				break;
+			}
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+			in.readByte();
+			String target = in.readUTF();
+			long timestamp = in.readLong();
+			IndexEntry previous = index.computeIfAbsent(target, k -> new TreeMap<>())
+					.put(timestamp, new IndexEntry(timestamp, RECORD_HEADER_BYTES + length, segment, position));
+			if (previous != null) {
+				previous.segment.liveRecords--;
+			}
+			segment.records++;
+			segment.liveRecords++;
+			position += RECORD_HEADER_BYTES + length;
+		}
+		if (position < fileSize) {
+			log.warn("Truncating torn or corrupted record of segment {} at offset {}", segment.path, position);
+			segment.channel.truncate(position);
+		}
+		segment.size = position;
+	}
+
+	private byte[] readRecord(IndexEntry entry) throws IOException {
+		return readFully(entry.segment.channel, ByteBuffer.allocate(entry.length), entry.offset, entry.length).array();
+	}
+
+	private byte[] read(IndexEntry entry) throws IOException {
+		byte[] record = readRecord(entry);
+		byte[] body = new byte[record.length - RECORD_HEADER_BYTES];
+		System.arraycopy(record, RECORD_HEADER_BYTES, body, 0, body.length);
+		return body;
+	}
+
+	private static ByteBuffer readFully(FileChannel channel, ByteBuffer buffer, long position, int length) throws IOException {
+		buffer.clear().limit(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException("Unexpected end of segment at " + (position + buffer.position()));
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	private static byte[] encode(PredictionContext context, long timestamp, DeepArResponse response) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(RECORD_VERSION);
+		out.writeUTF(context.getTarget());
+		out.writeLong(timestamp);
+		out.writeLong(context.getPredictedDateTime(0).toEpochSecond(ZoneOffset.UTC));
+		out.writeUTF(context.getFrequency().toString());
+		out.writeInt(context.getSeriesNames().size());
+		for (String name : context.getSeriesNames()) {
+			out.writeUTF(name);
+		}
+		List<Prediction> predictions = response.getPredictions() == null ? Collections.emptyList() : response.getPredictions();
+		out.writeInt(predictions.size());
+		for (Prediction prediction : predictions) {
+			writeValues(out, prediction.getMean());
+			Map<String, double[]> quantiles = prediction.getQuantiles() == null ? Collections.emptyMap()
+					: prediction.getQuantiles().getValues();
+			out.writeInt(quantiles.size());
+			for (Map.Entry<String, double[]> quantile : quantiles.entrySet()) {
+				out.writeUTF(quantile.getKey());
+				writeValues(out, quantile.getValue());
+			}
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static StoredPrediction decode(byte[] body) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+		byte version = in.readByte();
+		if (version != RECORD_VERSION && version != DAILY_RECORD_VERSION) {
+			throw new IOException("Unsupported prediction record version: " + version);
+		}
+		StoredPrediction stored = new StoredPrediction();
+		stored.setTarget(in.readUTF());
+		stored.setTimestamp(in.readLong());
+		long firstPredicted = in.readLong();
+		stored.setFirstPredictedDateTime(version == DAILY_RECORD_VERSION ? LocalDate.ofEpochDay(firstPredicted).atStartOfDay()
+				: LocalDateTime.ofEpochSecond(firstPredicted, 0, ZoneOffset.UTC));
+		stored.setFrequency(in.readUTF());
+		int seriesCount = in.readInt();
+		List<String> seriesNames = new ArrayList<>(seriesCount);
+		for (int i = 0; i < seriesCount; i++) {
+			seriesNames.add(in.readUTF());
+		}
+		stored.setSeriesNames(seriesNames);
+		int predictionCount = in.readInt();
+		List<Prediction> predictions = new ArrayList<>(predictionCount);
+		for (int i = 0; i < predictionCount; i++) {
+			Prediction prediction = new Prediction();
+			prediction.setMean(readValues(in));
+			int quantileCount = in.readInt();
+			if (quantileCount > 0) {
+				Quantiles quantiles = new Quantiles();
+				for (int q = 0; q < quantileCount; q++) {
+					quantiles.set(in.readUTF(), readValues(in));
+				}
+				prediction.setQuantiles(quantiles);
+			}
+			predictions.add(prediction);
+		}
+		DeepArResponse response = new DeepArResponse();
+		response.setPredictions(predictions);
+		stored.setResponse(response);
+		return stored;
+	}
+
+	private static void writeValues(DataOutputStream out, double[] values) throws IOException {
+		if (values == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(values.length);
+		for (double value : values) {
+			out.writeDouble(value);
+		}
+	}
+
+	private static double[] readValues(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		double[] values = new double[length];
+		for (int i = 0; i < length; i++) {
+			values[i] = in.readDouble();
+		}
+		return values;
+	}
+}
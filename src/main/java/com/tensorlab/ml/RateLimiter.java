@@ -0,0 +1,51 @@
+package com.tensorlab.ml;
+
+/**
+ * Limits the rate of the invocations of an endpoint with a token bucket. The
+ * bucket holds up to burst tokens, refilled at permitsPerSecond, and each
+ * invocation takes one. An invocation finding the bucket empty reserves the next
+ * token and waits for it, unless the wait would exceed its timeout
+ */
+public class RateLimiter {
+	private final double permitsPerSecond;
+	private final double burst;
+	/** the tokens in the bucket, negative when tokens are reserved ahead */
+	private double tokens;
+	private long refilledAt = System.nanoTime();
+
+	/**
+	 * @param permitsPerSecond the sustained rate of the invocations
+	 * @param burst the invocations that can be sent at once, the bucket starts full
+	 */
+	public RateLimiter(double permitsPerSecond, int burst) {
+		this.permitsPerSecond = permitsPerSecond;
+		this.burst = Math.max(1, burst);
+		this.tokens = this.burst;
+	}
+
+	/**
+	 * Reserves a token
+	 * @param maxWait the longest acceptable wait in milliseconds
+	 * @return the wait in milliseconds before the token can be used, 0 if it's available
+	 * now, or -1 if the wait would exceed maxWait, no token is then reserved
+	 */
+	public synchronized long reserve(long maxWait) {
+		long now = System.nanoTime();
+		tokens = Math.min(burst, tokens + (now - refilledAt) / 1e9 * permitsPerSecond);
+		refilledAt = now;
+		if (tokens >= 1) {
+			tokens -= 1;
+			return 0;
+		}
+		long wait = (long) Math.ceil((1 - tokens) / permitsPerSecond * 1000);
+		if (wait > maxWait) {
+			return -1;
+		}
+		tokens -= 1;
+		return wait;
+	}
+
+	public double getRate() {
+		return permitsPerSecond;
+	}
+}
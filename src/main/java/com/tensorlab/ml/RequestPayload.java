@@ -0,0 +1,144 @@
+package com.tensorlab.ml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.entity.NByteArrayEntity;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.tensorlab.ml.aws.auth.Hmac;
+
+import lombok.Getter;
+
+/**
+ * The serialized body of an endpoint request. The body is written once into a
+ * pooled byte buffer while its SHA-256 hash is computed on the fly, so the same
+ * bytes can be signed and sent without keeping extra copies of the payload as a
+ * string.
+ * <p>
+ * The payload must be closed once the request has been sent, which returns its
+ * buffer to the pool. A payload sent several times, e.g. retried, is retained by
+ * each request and the buffer returns to the pool once every holder closed it.
+ */
+public class RequestPayload implements Closeable {
+	private static final int POOL_SIZE = 16;
+	private static final int INITIAL_CAPACITY = 64 * 1024;
+	/** buffers grown beyond this size are not pooled, to avoid pinning a large heap */
+	private static final int MAX_RETAINED_CAPACITY = 8 * 1024 * 1024;
+
+	private static final BlockingQueue<PayloadBuffer> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+
+	private PayloadBuffer buffer;
+	private final AtomicInteger references = new AtomicInteger(1);
+	@Getter
+	private final String sha256Hash;
+
+	private RequestPayload(PayloadBuffer buffer, String sha256Hash) {
+		this.buffer = buffer;
+		this.sha256Hash = sha256Hash;
+	}
+
+	/**
+	 * Serializes the value with the given writer and computes the hash of the
+	 * written bytes in the same pass
+	 * @param writer the Jackson writer used to serialize the value
+	 * @param value the request object
+	 * @return the payload, which must be closed after use
+	 * @throws IOException
+	 */
+	public static RequestPayload serialize(ObjectWriter writer, Object value) throws IOException {
+		return write(out -> writer.writeValue(out, value));
+	}
+
+	/**
+	 * Writes the payload with the given content writer and computes the hash of the
+	 * written bytes in the same pass
+	 * @param content writes the bytes of the payload, possibly in several pieces
+	 * @return the payload, which must be closed after use
+	 * @throws IOException
+	 */
+	public static RequestPayload write(ContentWriter content) throws IOException {
+		PayloadBuffer buffer = POOL.poll();
+		if (buffer == null) {
+			buffer = new PayloadBuffer();
+		}
+		try {
+			DigestOutputStream out = new DigestOutputStream(buffer, Hmac.sha256Digest());
+			content.writeTo(out);
+			return new RequestPayload(buffer, Hmac.toHexString(out.getMessageDigest().digest()));
+		} catch (IOException | RuntimeException e) {
+			release(buffer);
+			throw e;
+		}
+	}
+
+	public int getLength() {
+		return buffer.size();
+	}
+
+	/**
+	 * Writes the payload bytes to the stream, without copying the buffer
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		buffer.writeTo(out);
+	}
+
+	/**
+	 * Wraps the payload bytes in an entity for the asynchronous HTTP client, without
+	 * copying the buffer. The payload must stay open until the request completes
+	 */
+	public NByteArrayEntity asEntity() {
+		return new NByteArrayEntity(buffer.array(), 0, buffer.size(), ContentType.APPLICATION_JSON);
+	}
+
+	/**
+	 * Keeps the buffer out of the pool until {@link #close()} is called once more
+	 */
+	public RequestPayload retain() {
+		references.incrementAndGet();
+		return this;
+	}
+
+	@Override
+	public void close() {
+		if (references.decrementAndGet() == 0 && buffer != null) {
+			release(buffer);
+			buffer = null;
+		}
+	}
+
+	private static void release(PayloadBuffer buffer) {
+		if (buffer.array().length <= MAX_RETAINED_CAPACITY) {
+			buffer.reset();
+			POOL.offer(buffer);
+		}
+	}
+
+	/**
+	 * Writes the content of a payload
+	 */
+	@FunctionalInterface
+	public interface ContentWriter {
+		void writeTo(OutputStream out) throws IOException;
+	}
+
+	/**
+	 * A {@link ByteArrayOutputStream} giving access to its internal array
+	 */
+	private static class PayloadBuffer extends ByteArrayOutputStream {
+		PayloadBuffer() {
+			super(INITIAL_CAPACITY);
+		}
+
+		byte[] array() {
+			return buf;
+		}
+	}
+}
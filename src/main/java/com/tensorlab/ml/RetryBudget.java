@@ -0,0 +1,38 @@
+package com.tensorlab.ml;
+
+/**
+ * Limits the retries to a share of the invocations, so that the retries cannot
+ * multiply the load of an endpoint that is already overloaded. Every invocation
+ * earns ratio tokens, up to capacity tokens, and every retry spends one token
+ */
+public class RetryBudget {
+	private final double ratio;
+	private final double capacity;
+	private double balance;
+
+	/**
+	 * @param ratio the tokens earned by each invocation, e.g. 0.2 for one retry every 5 invocations
+	 * @param capacity the maximum number of tokens, the budget starts full
+	 */
+	public RetryBudget(double ratio, int capacity) {
+		this.ratio = ratio;
+		this.capacity = capacity;
+		this.balance = capacity;
+	}
+
+	public synchronized void onInvocation() {
+		balance = Math.min(capacity, balance + ratio);
+	}
+
+	/**
+	 * Spends a token for a retry
+	 * @return false if the budget is exhausted, the retry must not be sent
+	 */
+	public synchronized boolean tryRetry() {
+		if (balance < 1) {
+			return false;
+		}
+		balance -= 1;
+		return true;
+	}
+}
@@ -0,0 +1,260 @@
+package com.tensorlab.ml;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.NHttpClientConnection;
+import org.apache.http.nio.reactor.ConnectingIOReactor;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.protocol.HTTP;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.client.RestTemplate;
+
+import io.micrometer.core.instrument.Timer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Creates the HTTP client used to invoke the SageMaker endpoint. A single pooled
+ * client is shared by all prediction requests so that connections (and their TLS
+ * sessions) to the runtime host are reused instead of being re-established on
+ * every call. A non-blocking client sharing the same settings backs the
+ * asynchronous prediction endpoint, the connection limits are split between the
+ * two pools by {@link AppConfig.AsyncConfig#getConnectionShare()} so that the
+ * endpoint never sees more than the configured limits. The wait for a pooled connection is recorded
+ * by both clients, see {@link PredictionMetrics#CONNECTION_ACQUIRE}
+ */
+@Slf4j
+@Configuration
+public class SageMakerClientConfig {
+
+	@Autowired
+	private AppConfig appConfig;
+
+	@Autowired
+	private PredictionMetrics metrics;
+
+	@Bean(destroyMethod = "close")
+	public PoolingHttpClientConnectionManager sageMakerConnectionManager() {
+		AppConfig.HttpClientConfig clientConfig = appConfig.getHttpClientConfig();
+		int maxTotal = clientConfig.getMaxTotal() - asyncShareOf(clientConfig.getMaxTotal());
+		int maxPerRoute = clientConfig.getMaxPerRoute() - asyncShareOf(clientConfig.getMaxPerRoute());
+		PoolingHttpClientConnectionManager connectionManager = new TimedConnectionManager(metrics);
+		connectionManager.setMaxTotal(maxTotal);
+		connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+		connectionManager.setValidateAfterInactivity(clientConfig.getValidateAfterInactivity());
+		log.info("SageMaker connection pool created, maxTotal: {}, maxPerRoute: {}", maxTotal, maxPerRoute);
+		return connectionManager;
+	}
+
+	@Bean(destroyMethod = "close")
+	public CloseableHttpClient sageMakerHttpClient(PoolingHttpClientConnectionManager sageMakerConnectionManager) {
+		AppConfig.HttpClientConfig clientConfig = appConfig.getHttpClientConfig();
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(clientConfig.getConnectTimeout())
+				.setSocketTimeout(clientConfig.getSocketTimeout())
+				.setConnectionRequestTimeout(clientConfig.getConnectionRequestTimeout())
+				.build();
+		return HttpClients.custom()
+				.setConnectionManager(sageMakerConnectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.setKeepAliveStrategy(keepAliveStrategy(clientConfig.getKeepAlive()))
+				.evictExpiredConnections()
+				.evictIdleConnections(clientConfig.getIdleEviction(), TimeUnit.MILLISECONDS)
+				.build();
+	}
+
+	/**
+	 * The non-blocking client used by the asynchronous prediction endpoint, the
+	 * responses are handled by the I/O reactor threads instead of servlet threads
+	 */
+	@Bean(destroyMethod = "close")
+	public CloseableHttpAsyncClient sageMakerAsyncHttpClient() throws IOReactorException {
+		AppConfig.HttpClientConfig clientConfig = appConfig.getHttpClientConfig();
+		IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+				.setIoThreadCount(appConfig.getAsyncConfig().getIoThreads())
+				.setConnectTimeout(clientConfig.getConnectTimeout())
+				.setSoTimeout(clientConfig.getSocketTimeout())
+				.build();
+		PoolingNHttpClientConnectionManager connectionManager = new TimedNConnectionManager(
+				new DefaultConnectingIOReactor(ioReactorConfig), metrics);
+		int maxTotal = asyncShareOf(clientConfig.getMaxTotal());
+		int maxPerRoute = asyncShareOf(clientConfig.getMaxPerRoute());
+		connectionManager.setMaxTotal(maxTotal);
+		connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+		log.info("SageMaker async connection pool created, maxTotal: {}, maxPerRoute: {}", maxTotal, maxPerRoute);
+		
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(clientConfig.getConnectTimeout())
+				.setSocketTimeout(clientConfig.getSocketTimeout())
+				.setConnectionRequestTimeout(clientConfig.getConnectionRequestTimeout())
+				.build();
+		CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.setKeepAliveStrategy(keepAliveStrategy(clientConfig.getKeepAlive()))
+				.build();
+		client.start();
+		return client;
+	}
+
+	/**
+	 * Gets the part of a connection limit given to the non-blocking client, each
+	 * client keeps at least one connection
+	 */
+	private int asyncShareOf(int limit) {
+		if (limit < 2) {
+			return limit;
+		}
+		long share = Math.round(limit * appConfig.getAsyncConfig().getConnectionShare());
+		return (int) Math.max(1, Math.min(limit - 1, share));
+	}
+
+	/**
+	 * Bounded executor running the CPU bound stages (request building, response
+	 * parsing, export and plotting) of the asynchronous predictions
+	 */
+	@Bean
+	public ThreadPoolTaskExecutor predictionExecutor() {
+		AppConfig.AsyncConfig asyncConfig = appConfig.getAsyncConfig();
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(asyncConfig.getWorkerThreads());
+		executor.setMaxPoolSize(asyncConfig.getWorkerThreads());
+		executor.setQueueCapacity(asyncConfig.getQueueCapacity());
+		executor.setThreadNamePrefix("prediction-");
+		return executor;
+	}
+
+	@Bean
+	public RestTemplate sageMakerRestTemplate(CloseableHttpClient sageMakerHttpClient) {
+		HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(sageMakerHttpClient);
+		// request payloads are already serialized into a buffer, stream them instead of copying them again
+		requestFactory.setBufferRequestBody(false);
+		return new RestTemplate(requestFactory);
+	}
+
+	/**
+	 * Honours the 'timeout' parameter of the server's Keep-Alive header and falls
+	 * back to the configured keep-alive duration when the server does not send one
+	 */
+	private ConnectionKeepAliveStrategy keepAliveStrategy(long defaultKeepAlive) {
+		return (response, context) -> {
+			HeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+			while (it.hasNext()) {
+				HeaderElement he = it.nextElement();
+				if ("timeout".equalsIgnoreCase(he.getName()) && he.getValue() != null) {
+					try {
+						return Long.parseLong(he.getValue()) * 1000;
+					} catch (NumberFormatException e) {
+						log.debug("Ignoring malformed keep-alive timeout: {}", he.getValue());
+					}
+				}
+			}
+			return defaultKeepAlive;
+		};
+	}
+
+	/**
+	 * Records the wait for a connection of the blocking client
+	 */
+	private static class TimedConnectionManager extends PoolingHttpClientConnectionManager {
+		private final PredictionMetrics metrics;
+
+		TimedConnectionManager(PredictionMetrics metrics) {
+			this.metrics = metrics;
+		}
+
+		@Override
+		public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+			ConnectionRequest request = super.requestConnection(route, state);
+			return new ConnectionRequest() {
+				@Override
+				public HttpClientConnection get(long timeout, TimeUnit tunit)
+						throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+					Timer.Sample sample = metrics.start();
+					try {
+						return request.get(timeout, tunit);
+					} finally {
+						metrics.stop(sample, PredictionMetrics.CONNECTION_ACQUIRE, PredictionMetrics.CLIENT, "sync",
+								PredictionMetrics.HOST, route.getTargetHost().getHostName());
+					}
+				}
+
+				@Override
+				public boolean cancel() {
+					return request.cancel();
+				}
+			};
+		}
+	}
+
+	/**
+	 * Records the wait for a connection of the non-blocking client, until the
+	 * connection is leased or the request fails
+	 */
+	private static class TimedNConnectionManager extends PoolingNHttpClientConnectionManager {
+		private final PredictionMetrics metrics;
+
+		TimedNConnectionManager(ConnectingIOReactor ioReactor, PredictionMetrics metrics) {
+			super(ioReactor);
+			this.metrics = metrics;
+		}
+
+		@Override
+		public Future<NHttpClientConnection> requestConnection(HttpRoute route, Object state, long connectTimeout,
+				long leaseTimeout, TimeUnit tunit, FutureCallback<NHttpClientConnection> callback) {
+			Timer.Sample sample = metrics.start();
+			Runnable stop = () -> metrics.stop(sample, PredictionMetrics.CONNECTION_ACQUIRE, PredictionMetrics.CLIENT,
+					"async", PredictionMetrics.HOST, route.getTargetHost().getHostName());
+			return super.requestConnection(route, state, connectTimeout, leaseTimeout, tunit,
+					new FutureCallback<NHttpClientConnection>() {
+						@Override
+						public void completed(NHttpClientConnection result) {
+							stop.run();
+							if (callback != null) {
+								callback.completed(result);
+							}
+						}
+
+						@Override
+						public void failed(Exception ex) {
+							stop.run();
+							if (callback != null) {
+								callback.failed(ex);
+							}
+						}
+
+						@Override
+						public void cancelled() {
+							stop.run();
+							if (callback != null) {
+								callback.cancelled();
+							}
+						}
+					});
+		}
+	}
+}
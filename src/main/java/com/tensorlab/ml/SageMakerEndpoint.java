@@ -0,0 +1,181 @@
+package com.tensorlab.ml;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.tensorlab.ml.aws.auth.Aws4Signer;
+
+import lombok.Getter;
+
+/**
+ * A SageMaker endpoint the invocations are routed to, with its health, see
+ * {@link CircuitBreaker}, its load: the requests in flight and the moving average
+ * of its latency, and its limits, see {@link ConcurrencyLimiter} and {@link RateLimiter}
+ */
+public class SageMakerEndpoint {
+	/** the weight of the last latency in the moving average */
+	private static final double LATENCY_ALPHA = 0.2;
+
+	@Getter
+	private final AppConfig.EndpointConfig config;
+	@Getter
+	private final CircuitBreaker circuitBreaker;
+	@Getter
+	private final ConcurrencyLimiter concurrencyLimiter;
+	/** null if the rate of the endpoint is not limited */
+	@Getter
+	private final RateLimiter rateLimiter;
+	private final double latencyTolerance;
+
+	private final AtomicInteger outstanding = new AtomicInteger();
+	private final AtomicLong invocations = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong rejections = new AtomicLong();
+	/** the moving average of the latency in milliseconds, 0 until a request succeeded */
+	private volatile double averageLatency;
+
+	/**
+	 * @param config the endpoint, its name and host must be set
+	 */
+	public SageMakerEndpoint(AppConfig.EndpointConfig config, AppConfig.ResilienceConfig resilienceConfig,
+			AppConfig.LimitConfig limitConfig) {
+		this.config = config;
+		this.circuitBreaker = new CircuitBreaker(config.getName(), resilienceConfig.getFailureThreshold(),
+				resilienceConfig.getOpenDuration());
+		this.concurrencyLimiter = new ConcurrencyLimiter(config.getName(), limitConfig.getInitialConcurrency(),
+				limitConfig.getMinConcurrency(), limitConfig.getMaxConcurrency(), limitConfig.getBackoffRatio(),
+				limitConfig.getMaxQueueSize());
+		double rateLimit = config.getRateLimit() != null ? config.getRateLimit() : limitConfig.getRateLimit();
+		this.rateLimiter = rateLimit > 0 ? new RateLimiter(rateLimit, limitConfig.getRateBurst()) : null;
+		this.latencyTolerance = limitConfig.getLatencyTolerance();
+	}
+
+	public String getName() {
+		return config.getName();
+	}
+
+	public String getUrl() {
+		return config.getScheme() + "://" + config.getServiceHost() + Aws4Signer.buildEndpointUrl(config.getServiceEndPoint());
+	}
+
+	public int getOutstanding() {
+		return outstanding.get();
+	}
+
+	/**
+	 * Gets the latency expected for a new request: the average latency multiplied
+	 * by the requests it would queue behind
+	 */
+	public double getExpectedLatency() {
+		return Math.max(averageLatency, 1) * (outstanding.get() + 1);
+	}
+
+	/**
+	 * Reports a request admitted by the limits of the endpoint and sent
+	 */
+	public void onStart() {
+		outstanding.incrementAndGet();
+		invocations.incrementAndGet();
+	}
+
+	/**
+	 * Reports a request answered by the endpoint
+	 * @param latency the duration of the request in milliseconds
+	 */
+	public void onSuccess(long latency) {
+		outstanding.decrementAndGet();
+		boolean slow;
+		synchronized (this) {
+			slow = averageLatency > 0 && latency > latencyTolerance * averageLatency;
+			averageLatency = averageLatency == 0 ? latency : averageLatency + LATENCY_ALPHA * (latency - averageLatency);
+		}
+		circuitBreaker.onSuccess();
+		if (slow) {
+			concurrencyLimiter.onDropped();
+		} else {
+			concurrencyLimiter.onSuccess();
+		}
+	}
+
+	/**
+	 * Reports a request the endpoint failed to answer
+	 * @param overloaded true if the endpoint throttled the request or timed out
+	 */
+	public void onFailure(boolean overloaded) {
+		outstanding.decrementAndGet();
+		failures.incrementAndGet();
+		circuitBreaker.onFailure();
+		if (overloaded) {
+			concurrencyLimiter.onDropped();
+		} else {
+			concurrencyLimiter.release();
+		}
+	}
+
+	/**
+	 * Reports a request whose outcome tells nothing about the endpoint, e.g. it was
+	 * cancelled or rejected because of its content
+	 * @param permit the permit of the request, see {@link CircuitBreaker#tryAcquire()}
+	 */
+	public void onIgnored(CircuitBreaker.Permit permit, boolean answered) {
+		outstanding.decrementAndGet();
+		if (answered) {
+			circuitBreaker.onSuccess();
+		} else {
+			circuitBreaker.release(permit);
+		}
+		concurrencyLimiter.release();
+	}
+
+	/**
+	 * Reports a request rejected by the limits of the endpoint, it was not sent
+	 */
+	public void onRejected(CircuitBreaker.Permit permit) {
+		rejections.incrementAndGet();
+		circuitBreaker.release(permit);
+	}
+
+	/**
+	 * Reports a request given up before it was sent, e.g. a hedged request cancelled
+	 * while it was waiting to be admitted
+	 * @param admitted true if the request had been admitted, its slot is released
+	 */
+	public void onAbandoned(CircuitBreaker.Permit permit, boolean admitted) {
+		circuitBreaker.release(permit);
+		if (admitted) {
+			concurrencyLimiter.release();
+		}
+	}
+
+	public long getFailures() {
+		return failures.get();
+	}
+
+	public long getRejections() {
+		return rejections.get();
+	}
+
+	/**
+	 * Gets the health and load of the endpoint
+	 */
+	public Map<String, Object> getStatus() {
+		Map<String, Object> status = new LinkedHashMap<>();
+		status.put("name", config.getName());
+		status.put("endpoint", config.getServiceEndPoint());
+		status.put("region", config.getServiceRegion());
+		status.put("host", config.getServiceHost());
+		status.put("circuit", circuitBreaker.getState());
+		status.put("outstanding", outstanding.get());
+		status.put("averageLatency", Math.round(averageLatency));
+		status.put("invocations", invocations.get());
+		status.put("failures", failures.get());
+		status.put("inFlight", concurrencyLimiter.getInFlight());
+		status.put("concurrencyLimit", concurrencyLimiter.getLimit());
+		status.put("queued", concurrencyLimiter.getQueued());
+		status.put("rateLimit", rateLimiter != null ? rateLimiter.getRate() : null);
+		status.put("rejections", rejections.get());
+		return status;
+	}
+}
@@ -0,0 +1,126 @@
+package com.tensorlab.ml;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * Reads input files in one streaming pass. The first column holds the date, or
+ * the date and time, of each observation, and every other column of the header is a series. The values
+ * are appended to growing primitive arrays and no record is kept once parsed,
+ * so files with millions of rows can be read with a small footprint
+ */
+public class SeriesCsvReader {
+	public static final String DATETIME_COLUMN = "datetime";
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * Reads all the series of the input
+	 * @param in the csv input, with a header row, it's not closed by this method
+	 * @return the series
+	 * @throws IOException if the input cannot be read, has no series column or no row, or
+	 * holds an invalid value or date time
+	 */
+	public static SeriesData read(Reader in) throws IOException {
+		CSVParser parser = CSVFormat.RFC4180.withFirstRecordAsHeader().parse(in);
+		Map<String, Integer> header = parser.getHeaderMap();
+		if (header == null || header.size() < 2) {
+			throw new IOException("The input must have a date column followed by at least one series column");
+		}
+		Integer dateColumn = header.containsKey(DATETIME_COLUMN) ? header.get(DATETIME_COLUMN) : 0;
+		String[] names = new String[header.size() - 1];
+		int[] columns = new int[names.length];
+		int idx = 0;
+		for (Map.Entry<String, Integer> entry : header.entrySet()) {
+			if (!entry.getValue().equals(dateColumn)) {
+				names[idx] = entry.getKey();
+				columns[idx] = entry.getValue();
+				idx++;
+			}
+		}
+
+		return readRecords(parser, names, dateColumn, columns, new double[names.length][INITIAL_CAPACITY], 0, null, null, null);
+	}
+
+	/**
+	 * Reads the rows appended to an input file already read, so that the new
+	 * observations extend the series without parsing the whole file again
+	 * @param series the series read from the beginning of the file
+	 * @param in the appended rows, without header, it's not closed by this method
+	 * @return the extended series, holding the same values as the given series if the input has no row
+	 * @throws IOException if the input cannot be read or holds an invalid value or date time
+	 */
+	public static SeriesData append(SeriesData series, Reader in) throws IOException {
+		CSVParser parser = CSVFormat.RFC4180.parse(in);
+		// the arrays of the given series are shared with the requests in progress, they are copied on the first row
+		double[][] values = new double[series.getSeriesCount()][];
+		for (int s = 0; s < values.length; s++) {
+			values[s] = series.getValues(s);
+		}
+		return readRecords(parser, series.getNames().toArray(new String[0]), series.getDateColumn(), series.getColumns(),
+				values, series.getLength(), series.getStartDateTime(), series.getPreviousDateTime(), series.getLastDateTime());
+	}
+
+	private static SeriesData readRecords(Iterable<CSVRecord> records, String[] names, int dateColumn, int[] columns,
+			double[][] values, int length, String startDateTime, String previousDateTime, String lastDateTime)
+			throws IOException {
+		for (CSVRecord record : records) {
+			if (length == values[0].length) {
+				int capacity = length + Math.max(length >> 1, INITIAL_CAPACITY);
+				for (int s = 0; s < values.length; s++) {
+					values[s] = Arrays.copyOf(values[s], capacity);
+				}
+			}
+			for (int s = 0; s < columns.length; s++) {
+				values[s][length] = parseValue(record.get(columns[s]), record, names[s]);
+			}
+			String datetime = record.get(dateColumn);
+			if (startDateTime == null) {
+				startDateTime = datetime;
+			}
+			previousDateTime = lastDateTime;
+			lastDateTime = datetime;
+			length++;
+		}
+
+		if (length == 0) {
+			throw new IOException("The input has no observation");
+		}
+		for (int s = 0; s < values.length; s++) {
+			if (values[s].length != length) {
+				values[s] = Arrays.copyOf(values[s], length);
+			}
+		}
+		// only the date times the series are dated with are parsed, the other rows are assumed evenly spaced
+		checkDateTime(startDateTime);
+		checkDateTime(previousDateTime);
+		checkDateTime(lastDateTime);
+		return new SeriesData(names, values, length, startDateTime, previousDateTime, lastDateTime, dateColumn, columns);
+	}
+
+	private static void checkDateTime(String datetime) throws IOException {
+		try {
+			if (datetime != null) {
+				DateTimes.parse(datetime);
+			}
+		} catch (DateTimeParseException e) {
+			throw new IOException(String.format("Invalid date '%s'", datetime), e);
+		}
+	}
+
+	private static double parseValue(String value, CSVRecord record, String column) throws IOException {
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			throw new IOException(String.format("Invalid value '%s' of column %s at line %d", value, column,
+					record.getRecordNumber() + 1), e);
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package com.tensorlab.ml;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAmount;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * The time series read from an input file, the values of each series column are
+ * kept in a primitive array instead of a list of boxed values
+ * 
+ * @see SeriesCsvReader
+ */
+@Getter
+public class SeriesData {
+	/** the names of the series columns, in file order */
+	private final List<String> names;
+	/** the number of observations of every series */
+	private final int length;
+	private final String startDateTime;
+	/** the date before the last one, null if the file has a single observation */
+	private final String previousDateTime;
+	private final String lastDateTime;
+	@Getter(AccessLevel.NONE)
+	private final double[][] values;
+	/** the position of the date column and of each series column in the file, to read the appended rows */
+	@Getter(AccessLevel.PACKAGE)
+	private final int dateColumn;
+	@Getter(AccessLevel.PACKAGE)
+	private final int[] columns;
+
+	SeriesData(String[] names, double[][] values, int length, String startDateTime, String previousDateTime,
+			String lastDateTime, int dateColumn, int[] columns) {
+		this.names = Collections.unmodifiableList(Arrays.asList(names));
+		this.values = values;
+		this.length = length;
+		this.startDateTime = startDateTime;
+		this.previousDateTime = previousDateTime;
+		this.lastDateTime = lastDateTime;
+		this.dateColumn = dateColumn;
+		this.columns = columns;
+	}
+
+	public int getSeriesCount() {
+		return names.size();
+	}
+
+	/**
+	 * Infers the interval of the series from its last two observations, a
+	 * {@link java.time.Period} for the daily, weekly or monthly series and a
+	 * {@link java.time.Duration} for the series observed during the day, falls back
+	 * to daily when the series has a single observation
+	 */
+	public TemporalAmount getFrequency() {
+		if (previousDateTime == null) {
+			return DateTimes.DEFAULT_FREQUENCY;
+		}
+		return DateTimes.between(DateTimes.parse(previousDateTime), DateTimes.parse(lastDateTime));
+	}
+
+	/**
+	 * Gets the date time of an observation. Like DeepAR, it assumes the observations
+	 * are evenly spaced, so the date time is counted back from the last one
+	 * @param index the position of the observation, from 0 to {@link #getLength()} - 1
+	 */
+	public LocalDateTime getDateTime(int index) {
+		return DateTimes.parse(lastDateTime).minus(DateTimes.multiply(getFrequency(), length - 1 - index));
+	}
+
+	/**
+	 * Gets the format of the date times of the file, so the date times sent to the
+	 * endpoint or exported look like the ones read
+	 */
+	public DateTimeFormatter getDateTimeFormat() {
+		return DateTimes.formatOf(lastDateTime);
+	}
+
+	/**
+	 * Gets the values of a series, the returned array holds exactly
+	 * {@link #getLength()} values and must not be modified
+	 */
+	public double[] getValues(int series) {
+		return values[series];
+	}
+}
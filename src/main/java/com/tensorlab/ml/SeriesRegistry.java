@@ -0,0 +1,338 @@
+package com.tensorlab.ml;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.requeset.Instance;
+
+import io.micrometer.core.instrument.Timer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Registry of the input series of the targets. Each input file is parsed once,
+ * turned into the instances of the DeepAR requests and serialized, so the requests
+ * of a known target skip the parsing and the serialization of its series. When a
+ * history window is configured, see {@link AppConfig.DataConfig}, the instances
+ * only hold the last observations of each series.
+ * <p>
+ * An entry is refreshed on its next use once its file changes, see {@link DataFiles}.
+ * When rows were only appended to the file, the new rows are read from the end of
+ * the file and extend the series, otherwise the file is parsed again. The file is
+ * read up to its last complete row, a last row without line break may still be
+ * being written: it's added to the series when it can be parsed, and read again
+ * with the next appended rows
+ */
+@Slf4j
+@Service
+public class SeriesRegistry {
+	/** the number of bytes compared to check that the content read is still at the start of the file */
+	private static final int TAIL_LENGTH = 256;
+
+	@Autowired
+	private DataFiles dataFiles;
+
+	@Autowired
+	private AppConfig appConfig;
+
+	@Autowired
+	private PredictionMetrics metrics;
+
+	private final ObjectWriter instancesWriter = new ObjectMapper().writerFor(new TypeReference<List<Instance>>() {});
+
+	private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+	/** the lock of each target, held while its file is read so it's read once */
+	private final Map<String, Object> locks = new ConcurrentHashMap<>();
+	/** the target of each loaded file */
+	private final Map<String, String> targetsByFileName = new ConcurrentHashMap<>();
+	/** incremented on every change of the file of a target */
+	private final Map<String, Long> versions = new ConcurrentHashMap<>();
+	private final Consumer<String> fileListener = this::onFileChanged;
+
+	/**
+	 * Gets the series of a target
+	 * @param target the target
+	 * @return the parsed series
+	 * @throws IOException if the input file of the target cannot be found or read
+	 */
+	public TargetSeries get(String target) throws IOException {
+		Entry entry = cache.get(target);
+		if (entry == null || entry.version != currentVersion(target)) {
+			// the file is read out of the map, only the requests of this target wait for it
+			synchronized (lockOf(target)) {
+				entry = cache.get(target);
+				if (entry == null || entry.version != currentVersion(target)) {
+					entry = refresh(target, entry);
+					cache.put(target, entry);
+				}
+			}
+		}
+		return entry.series;
+	}
+
+	public String buildPredictionInputFileName(String target) {
+		return String.format("prediction-input-%s.csv", target);
+	}
+
+	public void invalidate(String target) {
+		synchronized (lockOf(target)) {
+			cache.remove(target);
+		}
+	}
+
+	private Object lockOf(String target) {
+		return locks.computeIfAbsent(target, k -> new Object());
+	}
+
+	/**
+	 * Gets the number of observations sent for a target, 0 for the whole series
+	 */
+	public int getHistoryWindow(String target) {
+		Integer window = appConfig.getDataConfig().getTargetHistoryWindows().get(target);
+		return window != null ? window : appConfig.getDataConfig().getHistoryWindow();
+	}
+
+	private long currentVersion(String target) {
+		return versions.getOrDefault(target, 0L);
+	}
+
+	private void onFileChanged(String fileName) {
+		String target = targetsByFileName.get(fileName);
+		if (target != null) {
+			log.info("Input file of target {} changed, it will be refreshed", target);
+			versions.merge(target, 1L, Long::sum);
+		}
+	}
+
+	private Entry refresh(String target, Entry current) throws IOException {
+		// the version is read before the file, a change made while it's read is picked up by the next call
+		long version = currentVersion(target);
+		String fileName = buildPredictionInputFileName(target);
+		Path path = dataFiles.resolve(fileName);
+		targetsByFileName.put(fileName, target);
+		dataFiles.watch(path, fileListener);
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (current != null && current.path.equals(path) && isAppendedTo(current, channel)) {
+				return append(target, current, channel, version);
+			}
+			return load(target, path, channel, version);
+		}
+	}
+
+	private Entry load(String target, Path path, FileChannel channel, long version) throws IOException {
+		long size = channel.size();
+		long position = lastLineEnd(channel, size);
+		if (position == 0) {
+			// not even the header is complete
+			position = size;
+		}
+		Reader in = new BufferedReader(Channels.newReader(limit(channel, position), dataFiles.newDecoder(), -1));
+		Timer.Sample sample = metrics.start();
+		SeriesData complete = SeriesCsvReader.read(in);
+		byte[] lastRow = readFully(channel, position, (int) Math.min(size - position, Integer.MAX_VALUE));
+		SeriesData series = withLastRow(target, complete, lastRow, 0, lastRow.length);
+		metrics.stop(sample, PredictionMetrics.CSV_PARSE, PredictionMetrics.TARGET, target, PredictionMetrics.MODE, "full");
+
+		TargetSeries targetSeries = buildTargetSeries(target, series);
+		log.info("Input series loaded, target: {}, file: {}, series: {}, observations: {}, sent: {}, serialized bytes: {}",
+				target, path, series.getNames(), series.getLength(), targetSeries.getWindowLength(),
+				targetSeries.getInstancesJson().length);
+		return new Entry(targetSeries, complete, path, position, readTail(channel, position), version);
+	}
+
+	/**
+	 * Reads the complete rows written after the content already read, a row still
+	 * being written is read by the next refresh
+	 */
+	private Entry append(String target, Entry current, FileChannel channel, long version) throws IOException {
+		byte[] appended = readFully(channel, current.position, (int) (channel.size() - current.position));
+		int end = appended.length;
+		while (end > 0 && appended[end - 1] != '\n') {
+			end--;
+		}
+
+		Timer.Sample sample = metrics.start();
+		SeriesData complete = end == 0 ? current.complete : SeriesCsvReader.append(current.complete,
+				new InputStreamReader(new ByteArrayInputStream(appended, 0, end), dataFiles.newDecoder()));
+		SeriesData series = withLastRow(target, complete, appended, end, appended.length);
+		metrics.stop(sample, PredictionMetrics.CSV_PARSE, PredictionMetrics.TARGET, target, PredictionMetrics.MODE, "append");
+		long position = current.position + end;
+		TargetSeries targetSeries = buildTargetSeries(target, series);
+		log.info("Input series extended, target: {}, appended: {}, observations: {}, sent: {}, serialized bytes: {}",
+				target, series.getLength() - current.series.getSeries().getLength(), series.getLength(),
+				targetSeries.getWindowLength(), targetSeries.getInstancesJson().length);
+		return new Entry(targetSeries, complete, current.path, position, readTail(channel, position), version);
+	}
+
+	/**
+	 * Adds the last row, written without line break, to the complete rows. The row is
+	 * left out when it cannot be parsed, it's still being written
+	 */
+	private SeriesData withLastRow(String target, SeriesData complete, byte[] bytes, int from, int to) {
+		if (from == to) {
+			return complete;
+		}
+		try {
+			return SeriesCsvReader.append(complete,
+					new InputStreamReader(new ByteArrayInputStream(bytes, from, to - from), dataFiles.newDecoder()));
+		} catch (IOException | RuntimeException e) {
+			log.info("Incomplete last row of the input file of target {} left out: {}", target, e.toString());
+			return complete;
+		}
+	}
+
+	/**
+	 * Gets the offset right after the last line break of the file, 0 if it has none
+	 */
+	private static long lastLineEnd(FileChannel channel, long size) throws IOException {
+		long end = size;
+		while (end > 0) {
+			int length = (int) Math.min(TAIL_LENGTH, end);
+			byte[] bytes = readFully(channel, end - length, length);
+			for (int i = length - 1; i >= 0; i--) {
+				if (bytes[i] == '\n') {
+					return end - length + i + 1;
+				}
+			}
+			end -= length;
+		}
+		return 0;
+	}
+
+	/**
+	 * Gets a channel reading the file from its current position up to the end offset
+	 */
+	private static ReadableByteChannel limit(FileChannel channel, long end) {
+		return new ReadableByteChannel() {
+			@Override
+			public int read(ByteBuffer dst) throws IOException {
+				long remaining = end - channel.position();
+				if (remaining <= 0) {
+					return -1;
+				}
+				if (dst.remaining() <= remaining) {
+					return channel.read(dst);
+				}
+				ByteBuffer limited = dst.duplicate();
+				limited.limit(limited.position() + (int) remaining);
+				int read = channel.read(limited);
+				dst.position(limited.position());
+				return read;
+			}
+
+			@Override
+			public boolean isOpen() {
+				return channel.isOpen();
+			}
+
+			@Override
+			public void close() {
+				// the channel is closed by the caller
+			}
+		};
+	}
+
+	private static byte[] readFully(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(Math.max(length, 0));
+		while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0) {
+			// read up to the size of the file
+		}
+		return buffer.position() == buffer.capacity() ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
+	}
+
+	/**
+	 * Checks whether rows were only appended to the file since it was read: the
+	 * content read ended with a complete row and it's still at the same place
+	 */
+	private boolean isAppendedTo(Entry entry, FileChannel channel) throws IOException {
+		long appended = channel.size() - entry.position;
+		if (entry.tail.length == 0 || entry.tail[entry.tail.length - 1] != '\n' || appended < 0 || appended > Integer.MAX_VALUE) {
+			return false;
+		}
+		return Arrays.equals(entry.tail, readTail(channel, entry.position));
+	}
+
+	private byte[] readTail(FileChannel channel, long position) throws IOException {
+		ByteBuffer tail = ByteBuffer.allocate((int) Math.min(TAIL_LENGTH, position));
+		long start = position - tail.capacity();
+		while (tail.hasRemaining() && channel.read(tail, start + tail.position()) >= 0) {
+			// read the bytes right before the position
+		}
+		return tail.hasRemaining() ? new byte[0] : tail.array();
+	}
+
+	private TargetSeries buildTargetSeries(String target, SeriesData series) throws IOException {
+		int window = getHistoryWindow(target);
+		int offset = window > 0 && window < series.getLength() ? series.getLength() - window : 0;
+		// the start of a window is counted back from the last date, as DeepAR assumes evenly spaced observations,
+		// and written like the date times of the file
+		String startDateTime = offset == 0 ? series.getStartDateTime()
+				: series.getDateTimeFormat().format(series.getDateTime(offset));
+
+		//every series column of the input file becomes one 'Instance' of the json request object, the category
+		//of the instance is the position of the column. You can extend the code to support input features if you want
+		List<Instance> instances = new ArrayList<>();
+		for (int s = 0; s < series.getSeriesCount(); s++) {
+			double[] values = series.getValues(s);
+			Instance inst = new Instance();
+			inst.setStart(startDateTime);
+			inst.setCat(Collections.singletonList(s));
+			inst.setTarget(offset == 0 ? values : Arrays.copyOfRange(values, offset, values.length));
+			instances.add(inst);
+		}
+		instances = Collections.unmodifiableList(instances);
+		Timer.Sample sample = metrics.start();
+		byte[] instancesJson = instancesWriter.writeValueAsBytes(instances);
+		metrics.stop(sample, PredictionMetrics.SERIALIZE, PredictionMetrics.TARGET, target, PredictionMetrics.PART,
+				"instances");
+		return new TargetSeries(series, startDateTime, series.getLength() - offset, instances, instancesJson);
+	}
+
+	/**
+	 * A loaded input file and how far it has been read
+	 */
+	private static class Entry {
+		final TargetSeries series;
+		/** the series of the complete rows read, extended by the appended rows */
+		final SeriesData complete;
+		final Path path;
+		/** the number of bytes of the file read */
+		final long position;
+		/** the last bytes read, empty if they cannot be compared */
+		final byte[] tail;
+		/** the version of the file when it was read */
+		final long version;
+
+		Entry(TargetSeries series, SeriesData complete, Path path, long position, byte[] tail, long version) {
+			this.series = series;
+			this.complete = complete;
+			this.path = path;
+			this.position = position;
+			this.tail = tail;
+			this.version = version;
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package com.tensorlab.ml;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponse;
+
+import lombok.Data;
+
+/**
+ * A forecast read back from the {@link PredictionStore}
+ */
+@Data
+public class StoredPrediction {
+	private String target;
+	/** when the forecast was stored, in milliseconds since the epoch */
+	private long timestamp;
+	/** the date time of the first predicted value */
+	private LocalDateTime firstPredictedDateTime;
+	/** the interval between two predicted values, e.g. P1D or PT1H */
+	private String frequency;
+	/** the names of the predicted series, in prediction order */
+	private List<String> seriesNames;
+	private DeepArResponse response;
+}
@@ -0,0 +1,30 @@
+package com.tensorlab.ml;
+
+import java.util.List;
+
+import com.tensorlab.ml.aws.sagemaker.deepar.json.requeset.Instance;
+
+import lombok.ToString;
+import lombok.Value;
+
+/**
+ * The parsed input file of a target, kept by the {@link SeriesRegistry}. The
+ * instances hold the history window of the series, the last observations only
+ * when a window is configured. They and their serialized form are shared by all
+ * the requests of the target and must not be modified
+ */
+@Value
+public class TargetSeries {
+	/** every observation of the input file */
+	SeriesData series;
+	/** the date of the first observation of the window, the 'start' of the instances */
+	String startDateTime;
+	/** the number of observations of each instance */
+	int windowLength;
+	/** one instance per series column, the category of the instance is the position of the column */
+	@ToString.Exclude
+	List<Instance> instances;
+	/** the instances serialized as a json array, ready to be copied into the request payloads */
+	@ToString.Exclude
+	byte[] instancesJson;
+}
@@ -0,0 +1,148 @@
+package com.tensorlab.ml;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * The actual values of a validation file, indexed by date time. The date times are
+ * kept sorted as epoch seconds next to one primitive array of values per series, so
+ * the actual value of a predicted date time is found with a binary search
+ */
+public class ValidationData {
+	public static final ValidationData EMPTY = new ValidationData(Collections.emptyMap(), new long[0], new double[0][]);
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	private final Map<String, Integer> seriesIndex;
+	private final long[] seconds;
+	private final double[][] values;
+
+	private ValidationData(Map<String, Integer> seriesIndex, long[] seconds, double[][] values) {
+		this.seriesIndex = seriesIndex;
+		this.seconds = seconds;
+		this.values = values;
+	}
+
+	/**
+	 * Gets the actual value of a series at a date time
+	 * @param series the name of the series column
+	 * @param dateTime the date time, at the start of the day for a date
+	 * @return the value, or NaN if the file has no value for the series at this date time
+	 */
+	public double getActual(String series, LocalDateTime dateTime) {
+		Integer s = seriesIndex.get(series);
+		if (s == null) {
+			return Double.NaN;
+		}
+		int i = Arrays.binarySearch(seconds, dateTime.toEpochSecond(ZoneOffset.UTC));
+		return i < 0 ? Double.NaN : values[s][i];
+	}
+
+	/**
+	 * Gets the number of date times of the file
+	 */
+	public int size() {
+		return seconds.length;
+	}
+
+	/**
+	 * Reads a validation file, the first column (or the 'datetime' column) holds the
+	 * date times and every other column is a series, empty values are read as NaN
+	 * @param in the csv input, with a header row, it's not closed by this method
+	 * @return the actual values
+	 * @throws IOException if the input cannot be read or holds an invalid date or value
+	 */
+	public static ValidationData read(Reader in) throws IOException {
+		CSVParser parser = CSVFormat.RFC4180.withFirstRecordAsHeader().parse(in);
+		Map<String, Integer> header = parser.getHeaderMap();
+		if (header == null || header.size() < 2) {
+			return EMPTY;
+		}
+		Integer dateColumn = header.containsKey(SeriesCsvReader.DATETIME_COLUMN) ? header.get(SeriesCsvReader.DATETIME_COLUMN) : 0;
+		Map<String, Integer> seriesIndex = new HashMap<>();
+		int[] columns = new int[header.size() - 1];
+		for (Map.Entry<String, Integer> entry : header.entrySet()) {
+			if (!entry.getValue().equals(dateColumn)) {
+				columns[seriesIndex.size()] = entry.getValue();
+				seriesIndex.put(entry.getKey(), seriesIndex.size());
+			}
+		}
+
+		long[] seconds = new long[INITIAL_CAPACITY];
+		double[][] values = new double[columns.length][INITIAL_CAPACITY];
+		int length = 0;
+		boolean sorted = true;
+		for (CSVRecord record : parser) {
+			if (length == seconds.length) {
+				int capacity = length + (length >> 1);
+				seconds = Arrays.copyOf(seconds, capacity);
+				for (int s = 0; s < values.length; s++) {
+					values[s] = Arrays.copyOf(values[s], capacity);
+				}
+			}
+			seconds[length] = parseDateTime(record.get(dateColumn), record);
+			sorted &= length == 0 || seconds[length - 1] < seconds[length];
+			for (int s = 0; s < columns.length; s++) {
+				values[s][length] = parseValue(record.get(columns[s]), record);
+			}
+			length++;
+		}
+
+		if (sorted) {
+			seconds = Arrays.copyOf(seconds, length);
+			for (int s = 0; s < values.length; s++) {
+				values[s] = Arrays.copyOf(values[s], length);
+			}
+		} else {
+			// the rows are not in date order, sort them for the binary search
+			long[] unsortedSeconds = seconds;
+			int[] order = IntStream.range(0, length).boxed()
+					.sorted(Comparator.comparingLong(i -> unsortedSeconds[i]))
+					.mapToInt(Integer::intValue).toArray();
+			seconds = new long[length];
+			for (int i = 0; i < length; i++) {
+				seconds[i] = unsortedSeconds[order[i]];
+			}
+			for (int s = 0; s < values.length; s++) {
+				double[] sortedValues = new double[length];
+				for (int i = 0; i < length; i++) {
+					sortedValues[i] = values[s][order[i]];
+				}
+				values[s] = sortedValues;
+			}
+		}
+		return new ValidationData(seriesIndex, seconds, values);
+	}
+
+	private static long parseDateTime(String datetime, CSVRecord record) throws IOException {
+		try {
+			return DateTimes.parse(datetime).toEpochSecond(ZoneOffset.UTC);
+		} catch (DateTimeParseException e) {
+			throw new IOException(String.format("Invalid date '%s' at line %d", datetime, record.getRecordNumber() + 1), e);
+		}
+	}
+
+	private static double parseValue(String value, CSVRecord record) throws IOException {
+		if (value.trim().isEmpty()) {
+			return Double.NaN;
+		}
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			throw new IOException(String.format("Invalid value '%s' at line %d", value, record.getRecordNumber() + 1), e);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.tensorlab.ml;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Serves the actual values of the validation files. Each file is parsed once into
+ * a {@link ValidationData} and kept until it changes, see {@link DataFiles}: a
+ * modified file is parsed again on its next use. A target without validation file
+ * has no actual values
+ */
+@Slf4j
+@Service
+public class ValidationDataService {
+
+	@Autowired
+	private DataFiles dataFiles;
+
+	private final Map<String, ValidationData> cache = new ConcurrentHashMap<>();
+	/** the target of each loaded file */
+	private final Map<String, String> targetsByFileName = new ConcurrentHashMap<>();
+	private final Consumer<String> fileListener = this::onFileChanged;
+
+	/**
+	 * Gets the actual values of a target
+	 * @param target the target
+	 * @return the actual values, {@link ValidationData#EMPTY} if the target has no validation file
+	 * @throws IOException if the validation file cannot be read
+	 */
+	public ValidationData get(String target) throws IOException {
+		try {
+			return cache.computeIfAbsent(target, this::loadUnchecked);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	public String buildValidationInputFileName(String target) {
+		return String.format("validation-%s.csv", target);
+	}
+
+	public void invalidate(String target) {
+		cache.remove(target);
+	}
+
+	private void onFileChanged(String fileName) {
+		String target = targetsByFileName.get(fileName);
+		if (target != null) {
+			log.info("Validation file of target {} changed, it will be reloaded", target);
+			invalidate(target);
+		}
+	}
+
+	private ValidationData loadUnchecked(String target) {
+		String fileName = buildValidationInputFileName(target);
+		targetsByFileName.put(fileName, target);
+		Path path;
+		try {
+			path = dataFiles.resolve(fileName);
+		} catch (FileNotFoundException e) {
+			log.debug("No validation file for target: {}", target);
+			try {
+				dataFiles.watch(fileName, fileListener);
+			} catch (IOException watchError) {
+				log.warn("Cannot watch the data directory: " + watchError, watchError);
+			}
+			return ValidationData.EMPTY;
+		}
+		try (Reader in = dataFiles.newReader(path)) {
+			dataFiles.watch(path, fileListener);
+			ValidationData data = ValidationData.read(in);
+			log.info("Validation data loaded, target: {}, file: {}, dates: {}", target, path, data.size());
+			return data;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot read the validation file of target " + target, e);
+		}
+	}
+}
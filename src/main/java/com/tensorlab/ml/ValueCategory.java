@@ -1,5 +1,7 @@
 package com.tensorlab.ml;
 
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.Quantiles;
+
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
@@ -14,4 +16,23 @@ public enum ValueCategory {
 	ACTUAL("actual");
 	
 	private final @NonNull String value;
+	
+	/**
+	 * Gets the category label of a predicted quantile
+	 * @param quantile the quantile as sent in the request configuration, e.g. "0.1"
+	 * @return the label of the matching category, or 'quantile-[QUANTILE]' for the
+	 * quantiles without a category
+	 */
+	public static String labelOfQuantile(String quantile) {
+		switch (quantile) {
+		case Quantiles.QUANTILE_01:
+			return QUANTILE_01.getValue();
+		case Quantiles.QUANTILE_05:
+			return QUANTILE_05.getValue();
+		case Quantiles.QUANTILE_09:
+			return QUANTILE_09.getValue();
+		default:
+			return "quantile-" + quantile;
+		}
+	}
 }
@@ -1,12 +1,25 @@
 package com.tensorlab.ml;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -14,25 +27,181 @@ import lombok.extern.slf4j.Slf4j;
 @RestController
 public class WebController {
 
+	@Autowired
+	private AppConfig appConfig;
+	
 	@Autowired
 	private LabManager labManager;
 	
+	@Autowired
+	private BatchPredictionService batchPredictionService;
+	
+	@Autowired
+	private PredictionCache predictionCache;
+	
+	@Autowired
+	private PredictionStore predictionStore;
+	
+	@Autowired
+	private EndpointRouter endpointRouter;
+	
+	@Autowired
+	private ForecastPrecomputer forecastPrecomputer;
+	
 	/**
 	 * Process the prediction request based on the specified target name
 	 * @param target The name of the target to predict, the value will be used to 
 	 * construct the name of the file containing the input data for the DeepAR model,
 	 * with format like this: prediction-input-[TARGET].csv, 
 	 * see {@link LabManager#buildPredictionInputFilePath(String)} for more details
-	 * @param request
-	 * @return the javascript string containing prediction graph
+	 * @param options The inference options of the request: 'profile' selects a configured profile,
+	 * 'outputTypes', 'numSamples' and 'quantiles' override its values, see {@link PredictionOptions}
+	 * @param request its If-None-Match header is compared with the ETag of the plot
+	 * @param response gets the ETag and Cache-Control headers of the plot, and the Age
+	 * header, in seconds, when the forecast was precomputed
+	 * @return the javascript string containing prediction graph, nothing with a 304 when
+	 * the client already has it
 	 * @throws Exception
 	 */
 	@RequestMapping(value="/predict/sagemaker/deepar", method=RequestMethod.GET)
 	public String predict(
 			@RequestParam("target") String target, 
-			HttpServletRequest request
+			PredictionOptions options,
+			HttpServletRequest request,
+			HttpServletResponse response
 			) throws Exception {
-		log.info("Request received, prediction target name: {}", target);
-		return labManager.predict(target);
+		log.info("Request received, prediction target name: {}, options: {}", target, options);
+		ForecastPrecomputer.Forecast precomputed = findPrecomputed(target, options, response);
+		if (precomputed != null) {
+			return respond(target, precomputed.getPlot(), precomputed.getEtag(), request, response);
+		}
+		return respond(target, labManager.predict(target, options), null, request, response);
+	}
+	
+	/**
+	 * Asynchronous variant of {@link #predict(String, PredictionOptions, HttpServletRequest, HttpServletResponse)}, the servlet
+	 * thread is released while the endpoint is invoked. Responds with 429 when the
+	 * configured concurrency limits are reached
+	 * @param target The name of the target to predict
+	 * @param options The inference options of the request
+	 * @param request its If-None-Match header is compared with the ETag of the plot
+	 * @param response gets the same headers as the synchronous variant
+	 * @return a future completed with the javascript string containing prediction graph
+	 */
+	@RequestMapping(value="/predict/sagemaker/deepar/async", method=RequestMethod.GET)
+	public CompletableFuture<String> predictAsync(@RequestParam("target") String target, PredictionOptions options,
+			HttpServletRequest request, HttpServletResponse response) {
+		log.info("Async request received, prediction target name: {}, options: {}", target, options);
+		ForecastPrecomputer.Forecast precomputed = findPrecomputed(target, options, response);
+		if (precomputed != null) {
+			return CompletableFuture.completedFuture(
+					respond(target, precomputed.getPlot(), precomputed.getEtag(), request, response));
+		}
+		return labManager.predictAsync(target, options).thenApply(plot -> respond(target, plot, null, request, response));
+	}
+	
+	/**
+	 * Predicts several targets at once, the series of the targets are packed into as few
+	 * endpoint invocations as the configured batch limits allow
+	 * @param targets The names of the targets to predict
+	 * @return the predictions of each target, and the errors of the targets that failed
+	 */
+	@RequestMapping(value="/predict/sagemaker/deepar/batch", method=RequestMethod.POST)
+	public BatchPredictionResponse predictBatch(@RequestBody List<String> targets) {
+		log.info("Batch request received, targets: {}", targets);
+		return batchPredictionService.predict(targets);
+	}
+	
+	/**
+	 * Gets the forecasts stored for a target
+	 * @param target The name of the target
+	 * @param from The earliest time the forecasts were stored, in milliseconds since the epoch, optional
+	 * @param to The latest time the forecasts were stored, in milliseconds since the epoch, optional
+	 * @return the forecasts in the order they were stored
+	 * @throws IOException
+	 */
+	@RequestMapping(value="/predict/sagemaker/deepar/history", method=RequestMethod.GET)
+	public List<StoredPrediction> history(
+			@RequestParam("target") String target,
+			@RequestParam(value="from", required=false) Long from,
+			@RequestParam(value="to", required=false) Long to
+			) throws IOException {
+		return predictionStore.find(target, from, to);
+	}
+	
+	/**
+	 * Gets the hit, miss and eviction counters of the prediction cache
+	 */
+	@RequestMapping(value="/predict/sagemaker/deepar/cache/stats", method=RequestMethod.GET)
+	public Map<String, Object> cacheStats() {
+		return predictionCache.getMetrics();
+	}
+	
+	/**
+	 * Gets the health and load of each endpoint the predictions are routed to
+	 */
+	@RequestMapping(value="/predict/sagemaker/deepar/endpoints", method=RequestMethod.GET)
+	public List<Map<String, Object>> endpoints() {
+		return endpointRouter.getEndpoints().stream().map(SageMakerEndpoint::getStatus).collect(Collectors.toList());
+	}
+	
+	/**
+	 * Gets the state of the precomputed forecasts: when each one was computed, its
+	 * age in milliseconds, whether it's stale and when it's computed next
+	 */
+	@RequestMapping(value="/predict/sagemaker/deepar/precomputed", method=RequestMethod.GET)
+	public List<Map<String, Object>> precomputed() {
+		return forecastPrecomputer.getStatus();
+	}
+	
+	/**
+	 * Gets the precomputed forecast of a request, see {@link ForecastPrecomputer}
+	 * @return the forecast, or null if the request must be predicted
+	 */
+	private ForecastPrecomputer.Forecast findPrecomputed(String target, PredictionOptions options,
+			HttpServletResponse response) {
+		ForecastPrecomputer.Forecast forecast = forecastPrecomputer.find(target, options);
+		if (forecast == null) {
+			return null;
+		}
+		long age = Math.max(0, System.currentTimeMillis() - forecast.getComputedAt()) / 1000;
+		log.info("Serving the forecast of target {} precomputed {} s ago", target, age);
+		response.setHeader(HttpHeaders.AGE, String.valueOf(age));
+		return forecast;
+	}
+	
+	/**
+	 * Adds the Cache-Control and ETag headers of a plot to the response, see
+	 * {@link AppConfig.HttpCacheConfig}. The error response gets neither
+	 * @param etag the entity tag of the plot, computed from the plot when null
+	 * @return the plot, or null when it matches the If-None-Match header of the request,
+	 * the response is then a 304
+	 */
+	private String respond(String target, String plot, String etag, HttpServletRequest request,
+			HttpServletResponse response) {
+		if (plot == null || LabManager.ERROR_RESPONSE.equals(plot)) {
+			return plot;
+		}
+		AppConfig.HttpCacheConfig cacheConfig = appConfig.getHttpCacheConfig();
+		String cacheControl = cacheConfig.getTargetCacheControls().getOrDefault(target, cacheConfig.getCacheControl());
+		if (cacheControl != null && !cacheControl.isEmpty()) {
+			response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+		}
+		if (cacheConfig.isEtagEnabled() && new ServletWebRequest(request, response)
+				.checkNotModified(etag != null ? etag : PlotUtil.computeEtag(plot))) {
+			log.info("Plot of target {} not modified", target);
+			return null;
+		}
+		return plot;
+	}
+	
+	/**
+	 * Responds with 400 when the inference options of a request are not valid
+	 */
+	@ExceptionHandler(InvalidPredictionOptionsException.class)
+	@ResponseStatus(HttpStatus.BAD_REQUEST)
+	public String handleInvalidOptions(InvalidPredictionOptionsException e) {
+		log.warn("Invalid prediction request: {}", e.getMessage());
+		return e.getMessage();
 	}
-}
\ No newline at end of file
+}
@@ -51,6 +51,8 @@ public class Aws4Signer {
 	@Autowired
 	private AppConfig appConfig;
 
+	private final SigningKeyCache signingKeyCache = new SigningKeyCache();
+
 	/**
 	 * Gets the timestamp in YYYYMMDD'T'HHMMSS'Z' format, which is the required
 	 * format for AWS4 signing request headers and credential string
@@ -92,15 +94,30 @@ public class Aws4Signer {
 		return now.format(formatter);
 	}
 
+	/**
+	 * Gets the signing key of the given date, the key is derived once per UTC day
+	 * and credentials, see {@link SigningKeyCache}
+	 * 
+	 * @param timestamp
+	 *            the date of the request in yyyyMMdd format
+	 * @return the signing key
+	 */
 	public byte[] generateAws4SigningKey(String timestamp) {
+		return generateAws4SigningKey(timestamp, appConfig.getAwsAuthConfig().getServiceRegion());
+	}
+
+	/**
+	 * Same as {@link #generateAws4SigningKey(String)}, for an endpoint of the given
+	 * region, the keys of each region are cached separately
+	 */
+	public byte[] generateAws4SigningKey(String timestamp, String regionName) {
+		String accessKey = appConfig.getAwsAuthConfig().getAccessKey();
 		String secretKey = appConfig.getAwsAuthConfig().getSecretKey();
-		String regionName = appConfig.getAwsAuthConfig().getServiceRegion();
 		String serviceName = appConfig.getAwsAuthConfig().getServiceName();
 
 		byte[] signatureKey = null;
 		try {
-			signatureKey = Aws4SignatureKeyGenerator.generateSignatureKey(secretKey, timestamp, regionName,
-					serviceName);
+			signatureKey = signingKeyCache.getSigningKey(accessKey, secretKey, timestamp, regionName, serviceName);
 		} catch (Exception e) {
 			log.error("An error has ocurred when generate signature key: " + e, e);
 		}
@@ -108,15 +125,57 @@ public class Aws4Signer {
 		return signatureKey;
 	}
 
+	/**
+	 * Drops the cached signing keys, call it after the credentials have been rotated
+	 */
+	public void invalidateSigningKeys() {
+		signingKeyCache.invalidateAll();
+	}
+
 	public String buildEndpointUrl() {
-		return String.format("/endpoints/%s/invocations", appConfig.getAwsAuthConfig().getServiceEndPoint());
+		return buildEndpointUrl(appConfig.getAwsAuthConfig().getServiceEndPoint());
+	}
+
+	/**
+	 * Builds the path of the invocations of an endpoint, which is also the canonical
+	 * URI of their signature
+	 */
+	public static String buildEndpointUrl(String serviceEndPoint) {
+		return String.format("/endpoints/%s/invocations", serviceEndPoint);
 	}
 
 	public HttpHeaders buildHeadersWithAuthentication(String requestBody) {
 		HttpHeaders headers = null;
 		try {
-			AuthenticationData authData = buildAuthorizationData(requestBody);
-			headers = createAwsSagemakerRequestHeaders(authData);
+			headers = buildHeadersWithPayloadHash(Hmac.getSha256Hash(requestBody));
+		} catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+			log.error("An error has ocurred when hashing the request payload: " + e, e);
+		}
+
+		return headers;
+	}
+
+	/**
+	 * Builds the authentication headers of a request whose payload has already been
+	 * hashed, e.g. while it was serialized
+	 * 
+	 * @param payloadHash
+	 *            the lower case hex SHA-256 hash of the request payload
+	 * @return the headers, or null if the signature could not be computed
+	 */
+	public HttpHeaders buildHeadersWithPayloadHash(String payloadHash) {
+		return buildHeadersWithPayloadHash(payloadHash, appConfig.getAwsAuthConfig().toEndpointConfig());
+	}
+
+	/**
+	 * Same as {@link #buildHeadersWithPayloadHash(String)}, for a request sent to the
+	 * given endpoint, signed for its host and region
+	 */
+	public HttpHeaders buildHeadersWithPayloadHash(String payloadHash, AppConfig.EndpointConfig endpoint) {
+		HttpHeaders headers = null;
+		try {
+			AuthenticationData authData = buildAuthorizationDataForPayloadHash(payloadHash, endpoint);
+			headers = createAwsSagemakerRequestHeaders(authData, endpoint.getServiceHost());
 		} catch (InvalidKeyException | NoSuchAlgorithmException | UnsupportedEncodingException | SignatureException
 				| IllegalStateException e) {
 			log.error("An error has ocurred when building authentication data: " + e, e);
@@ -148,11 +207,39 @@ public class Aws4Signer {
 	 */
 	public AuthenticationData buildAuthorizationData(String requestBody) throws NoSuchAlgorithmException,
 			UnsupportedEncodingException, InvalidKeyException, SignatureException, IllegalStateException {
-		log.info("predict - start");
+		return buildAuthorizationDataForPayloadHash(Hmac.getSha256Hash(requestBody));
+	}
+
+	/**
+	 * Same as {@link #buildAuthorizationData(String)}, for a payload that has
+	 * already been hashed
+	 * 
+	 * @param payloadHash
+	 *            the lower case hex SHA-256 hash of the request payload
+	 * 
+	 * @return
+	 * @throws NoSuchAlgorithmException
+	 * @throws UnsupportedEncodingException
+	 * @throws InvalidKeyException
+	 * @throws SignatureException
+	 * @throws IllegalStateException
+	 */
+	public AuthenticationData buildAuthorizationDataForPayloadHash(String payloadHash) throws NoSuchAlgorithmException,
+			UnsupportedEncodingException, InvalidKeyException, SignatureException, IllegalStateException {
+		return buildAuthorizationDataForPayloadHash(payloadHash, appConfig.getAwsAuthConfig().toEndpointConfig());
+	}
+
+	/**
+	 * Same as {@link #buildAuthorizationDataForPayloadHash(String)}, for a request sent
+	 * to the given endpoint
+	 */
+	public AuthenticationData buildAuthorizationDataForPayloadHash(String payloadHash, AppConfig.EndpointConfig endpoint)
+			throws NoSuchAlgorithmException, UnsupportedEncodingException, InvalidKeyException, SignatureException,
+			IllegalStateException {
+		log.info("sign - start, endpoint: {}", endpoint.getServiceEndPoint());
 
 		// Starting building the lengthy signing data
 		AppConfig.AwsAuthConfig awsAuthConfig = appConfig.getAwsAuthConfig();
-		String payloadHash = Hmac.getSha256Hash(requestBody);
 
 		OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
 		String timestamp = getTimeStamp(now);
@@ -163,7 +250,7 @@ public class Aws4Signer {
 
 		// Step 2: Create canonical URI--the part of the URI from domain to query
 		// string (use '/' if no path)
-		String canonical_uri = buildEndpointUrl();
+		String canonical_uri = buildEndpointUrl(endpoint.getServiceEndPoint());
 
 		// Step 3: Create the canonical query string. In this example, request
 		// parameters are passed in the body of the request and the query string
@@ -174,7 +261,7 @@ public class Aws4Signer {
 		// and lowercase, and sorted in code point order from low to high.
 		// Note that there is a trailing \n.
 		String canonical_headers = "content-type:" + REQUEST_CONTENT_TYPE + "\n" + "host:"
-				+ awsAuthConfig.getServiceHost() + "\n" + "x-amz-content-sha256:" + payloadHash + "\n" + "x-amz-date:"
+				+ endpoint.getServiceHost() + "\n" + "x-amz-content-sha256:" + payloadHash + "\n" + "x-amz-date:"
 				+ timestamp + "\n";
 		String signed_headers = "content-type;host;x-amz-content-sha256;x-amz-date";
 
@@ -185,7 +272,7 @@ public class Aws4Signer {
 
 		log.debug("canonical_request : {}", canonical_request);
 
-		String credential_scope = date + "/" + awsAuthConfig.getServiceRegion() + "/" + awsAuthConfig.getServiceName()
+		String credential_scope = date + "/" + endpoint.getServiceRegion() + "/" + awsAuthConfig.getServiceName()
 				+ "/" + "aws4_request";
 		String canonical_request_hash = Hmac.getSha256Hash(canonical_request);
 
@@ -195,7 +282,7 @@ public class Aws4Signer {
 				+ canonical_request_hash;
 
 		log.debug("string_to_sign : {}", string_to_sign);
-		byte[] sigKey = generateAws4SigningKey(date);
+		byte[] sigKey = generateAws4SigningKey(date, endpoint.getServiceRegion());
 
 		String signature = Hmac.calculateHMAC(string_to_sign, sigKey, Hmac.HMAC_SHA256);
 		String authorization_header = AUTH_ALGORITHM + " " + "Credential=" + awsAuthConfig.getAccessKey() + "/"
@@ -212,14 +299,16 @@ public class Aws4Signer {
 	 * @param authData
 	 *            the {@link AuthenticationData} object containing required
 	 *            authentication data for build the headers
+	 * @param host
+	 *            the host of the endpoint, as signed
 	 * @return an {@link org.springframework.http.HttpHeaders} object that contains
 	 *         all the required headers
 	 */
-	private HttpHeaders createAwsSagemakerRequestHeaders(AuthenticationData authData) {
+	private HttpHeaders createAwsSagemakerRequestHeaders(AuthenticationData authData, String host) {
 		java.util.List<MediaType> accepts = Arrays.asList(MediaType.APPLICATION_JSON);
 		HttpHeaders headers = new HttpHeaders();
 		headers.setContentType(MediaType.APPLICATION_JSON);
-		headers.add("Host", appConfig.getAwsAuthConfig().getServiceHost());
+		headers.add("Host", host);
 		headers.add("X-Amz-Date", authData.getTimestamp());
 		headers.add("X-Amz-Content-Sha256", authData.getPayloadHash());
 		headers.add("Authorization", authData.getAuthorizationHeader());
@@ -1,11 +1,12 @@
 package com.tensorlab.ml.aws.auth;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
-import java.util.Formatter;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
@@ -13,36 +14,115 @@ import lombok.extern.slf4j.Slf4j;
 
 /**
  * Utility class used to generate hash and sign data
+ * <p>
+ * The {@link MessageDigest} and {@link Mac} instances are expensive to look up,
+ * so one instance per algorithm is kept for each thread and reset before every
+ * use
+ *
  * @author JJ.Sun
  */
 @Slf4j
 public class Hmac {
 	public static final String HMAC_SHA512 = "HmacSHA512";
 	public static final String HMAC_SHA256 = "HmacSHA256";
-	
+	public static final String SHA256 = "SHA-256";
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private static final ThreadLocal<MessageDigest> SHA256_DIGEST = ThreadLocal.withInitial(() -> newInstance(SHA256));
+	private static final ThreadLocal<Mac> HMAC_SHA256_MAC = ThreadLocal.withInitial(() -> newMac(HMAC_SHA256));
+	private static final ThreadLocal<Mac> HMAC_SHA512_MAC = ThreadLocal.withInitial(() -> newMac(HMAC_SHA512));
+
 	public static String getSha256Hash(String input) throws NoSuchAlgorithmException, UnsupportedEncodingException {
-        MessageDigest md = MessageDigest.getInstance("SHA-256"); 
-        byte[] messageDigest = md.digest(input.getBytes("UTF-8"));
-        return toHexString(messageDigest);
+		return getSha256Hash(input.getBytes(StandardCharsets.UTF_8));
 	}
-	
+
+	/**
+	 * Hashes the payload bytes directly, without decoding them to a string first
+	 * @param input the bytes to hash
+	 * @return the lower case hex string of the SHA-256 hash
+	 */
+	public static String getSha256Hash(byte[] input) {
+		return toHexString(sha256Digest().digest(input));
+	}
+
+	/**
+	 * Hashes the remaining bytes of the buffer, the position of the buffer is moved
+	 * to its limit
+	 * @param input the buffer to hash
+	 * @return the lower case hex string of the SHA-256 hash
+	 */
+	public static String getSha256Hash(ByteBuffer input) {
+		MessageDigest md = sha256Digest();
+		md.update(input);
+		return toHexString(md.digest());
+	}
+
+	/**
+	 * Gets the SHA-256 {@link MessageDigest} of the current thread, reset and
+	 * ready to use. The instance must not be handed over to another thread
+	 * @return the digest
+	 */
+	public static MessageDigest sha256Digest() {
+		MessageDigest md = SHA256_DIGEST.get();
+		md.reset();
+		return md;
+	}
+
 	public static String calculateHMAC(String data, byte[] key, String method)
 			throws SignatureException, NoSuchAlgorithmException, InvalidKeyException, IllegalStateException, UnsupportedEncodingException {
 		log.debug("calculateHMAC - input data: {}", data);
-		SecretKeySpec secretKeySpec = new SecretKeySpec(key, method);
-		Mac mac = Mac.getInstance(method);
-		mac.init(secretKeySpec);
-		return toHexString(mac.doFinal(data.getBytes("UTF-8")));
+		return toHexString(hmac(data, key, method));
+	}
+
+	/**
+	 * Computes the raw HMAC of the data with the given algorithm
+	 * @param data the data to sign, encoded as UTF-8
+	 * @param key the signing key
+	 * @param method the HMAC algorithm, e.g. {@link #HMAC_SHA256}
+	 * @return the HMAC bytes
+	 * @throws NoSuchAlgorithmException
+	 * @throws InvalidKeyException
+	 */
+	public static byte[] hmac(String data, byte[] key, String method) throws NoSuchAlgorithmException, InvalidKeyException {
+		Mac mac = getMac(method);
+		mac.init(new SecretKeySpec(key, method));
+		return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static String toHexString(byte[] bytes) {
+		char[] hex = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			int v = bytes[i] & 0xff;
+			hex[i * 2] = HEX_DIGITS[v >>> 4];
+			hex[i * 2 + 1] = HEX_DIGITS[v & 0x0f];
+		}
+		return new String(hex);
+	}
+
+	private static Mac getMac(String method) throws NoSuchAlgorithmException {
+		if (HMAC_SHA256.equals(method)) {
+			return HMAC_SHA256_MAC.get();
+		} else if (HMAC_SHA512.equals(method)) {
+			return HMAC_SHA512_MAC.get();
+		}
+		return Mac.getInstance(method);
+	}
+
+	private static MessageDigest newInstance(String algorithm) {
+		try {
+			return MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Digest algorithm not available: " + algorithm, e);
+		}
 	}
 
-	private static String toHexString(byte[] bytes) {
-		Formatter formatter = new Formatter();
-		for (byte b : bytes) {
-			formatter.format("%02x", b);
+	private static Mac newMac(String algorithm) {
+		try {
+			return Mac.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("MAC algorithm not available: " + algorithm, e);
 		}
-		String s = formatter.toString();
-		formatter.close();
-		return s;
 	}
 
 }
@@ -0,0 +1,80 @@
+package com.tensorlab.ml.aws.auth;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.NonNull;
+import lombok.ToString;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Caches the derived AWS4 signing keys. A signing key only depends on the
+ * secret key, the date of the request, the region and the service name, so it
+ * can be reused by every request signed on the same UTC day instead of running
+ * the four chained HMAC computations each time.
+ * <p>
+ * The date and the credentials are part of the cache key, a new key is derived
+ * automatically after midnight UTC or when the credentials are rotated, and the
+ * keys of previous days or credentials are dropped at that point.
+ */
+@Slf4j
+public class SigningKeyCache {
+
+	@Value
+	static class Scope {
+		@NonNull
+		String date;
+		@NonNull
+		String region;
+		@NonNull
+		String service;
+		@NonNull
+		String accessKey;
+		@NonNull
+		@ToString.Exclude
+		String secretKey;
+	}
+
+	private final Map<Scope, byte[]> signingKeys = new ConcurrentHashMap<>();
+
+	/**
+	 * Gets the signing key of the given scope, deriving it when it's not cached yet
+	 *
+	 * @return the signing key
+	 * @throws Exception
+	 *             if the key cannot be derived
+	 */
+	public byte[] getSigningKey(String accessKey, String secretKey, String date, String region, String service)
+			throws Exception {
+		Scope scope = new Scope(date, region, service, accessKey, secretKey);
+		byte[] signingKey = signingKeys.get(scope);
+		if (signingKey == null) {
+			signingKey = Aws4SignatureKeyGenerator.generateSignatureKey(secretKey, date, region, service);
+			evictStaleScopes(scope);
+			signingKeys.put(scope, signingKey);
+			log.debug("Signing key derived for scope: {}", scope);
+		}
+		return signingKey;
+	}
+
+	/**
+	 * Removes all the cached keys, e.g. after the credentials have been rotated
+	 */
+	public void invalidateAll() {
+		signingKeys.clear();
+	}
+
+	public int size() {
+		return signingKeys.size();
+	}
+
+	/**
+	 * Drops the keys of previous days and of credentials that have been replaced
+	 */
+	private void evictStaleScopes(Scope current) {
+		signingKeys.keySet().removeIf(scope -> !scope.getDate().equals(current.getDate())
+				|| !scope.getAccessKey().equals(current.getAccessKey())
+				|| !scope.getSecretKey().equals(current.getSecretKey()));
+	}
+}
@@ -0,0 +1,35 @@
+package com.tensorlab.ml.aws.sagemaker.deepar.json;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * Writes a double array as a json array, whole numbers are written without
+ * fraction (e.g. 42 instead of 42.0) so integer series keep their original
+ * representation and the payload stays small
+ */
+public class CompactDoubleArraySerializer extends StdSerializer<double[]> {
+	private static final long serialVersionUID = 1L;
+
+	private static final double MAX_EXACT_LONG = 1L << 53;
+
+	public CompactDoubleArraySerializer() {
+		super(double[].class);
+	}
+
+	@Override
+	public void serialize(double[] values, JsonGenerator gen, SerializerProvider provider) throws IOException {
+		gen.writeStartArray(values.length);
+		for (double value : values) {
+			if (value == Math.rint(value) && Math.abs(value) < MAX_EXACT_LONG) {
+				gen.writeNumber((long) value);
+			} else {
+				gen.writeNumber(value);
+			}
+		}
+		gen.writeEndArray();
+	}
+}
@@ -1,6 +1,7 @@
 
 package com.tensorlab.ml.aws.sagemaker.deepar.json.requeset;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,7 +27,7 @@ public class Configuration {
     @JsonProperty("quantiles")
     private List<String> quantiles = null;
     @JsonIgnore
-    private Map<String, Object> additionalProperties = new HashMap<String, Object>();
+    private Map<String, Object> additionalProperties;
 
     @JsonProperty("num_samples")
     public Integer getNumSamples() {
@@ -60,11 +61,14 @@ public class Configuration {
 
     @JsonAnyGetter
     public Map<String, Object> getAdditionalProperties() {
-        return this.additionalProperties;
+        return this.additionalProperties == null ? Collections.<String, Object>emptyMap() : this.additionalProperties;
     }
 
     @JsonAnySetter
     public void setAdditionalProperty(String name, Object value) {
+        if (this.additionalProperties == null) {
+            this.additionalProperties = new HashMap<String, Object>();
+        }
         this.additionalProperties.put(name, value);
     }
 
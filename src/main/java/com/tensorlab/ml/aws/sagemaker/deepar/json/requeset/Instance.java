@@ -1,6 +1,7 @@
 
 package com.tensorlab.ml.aws.sagemaker.deepar.json.requeset;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -10,6 +11,8 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.CompactDoubleArraySerializer;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonPropertyOrder({
@@ -22,11 +25,12 @@ public class Instance {
     @JsonProperty("start")
     private String start;
     @JsonProperty("target")
-    private List<Integer> target = null;
+    @JsonSerialize(using = CompactDoubleArraySerializer.class)
+    private double[] target = null;
     @JsonProperty("cat")
     private List<Integer> cat = null;
     @JsonIgnore
-    private Map<String, Object> additionalProperties = new HashMap<String, Object>();
+    private Map<String, Object> additionalProperties;
 
     @JsonProperty("start")
     public String getStart() {
@@ -39,12 +43,12 @@ public class Instance {
     }
 
     @JsonProperty("target")
-    public List<Integer> getTarget() {
+    public double[] getTarget() {
         return target;
     }
 
     @JsonProperty("target")
-    public void setTarget(List<Integer> target) {
+    public void setTarget(double[] target) {
         this.target = target;
     }
 
@@ -60,11 +64,14 @@ public class Instance {
 
     @JsonAnyGetter
     public Map<String, Object> getAdditionalProperties() {
-        return this.additionalProperties;
+        return this.additionalProperties == null ? Collections.<String, Object>emptyMap() : this.additionalProperties;
     }
 
     @JsonAnySetter
     public void setAdditionalProperty(String name, Object value) {
+        if (this.additionalProperties == null) {
+            this.additionalProperties = new HashMap<String, Object>();
+        }
         this.additionalProperties.put(name, value);
     }
 
@@ -1,6 +1,7 @@
 
 package com.tensorlab.ml.aws.sagemaker.deepar.json.response;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,7 +24,7 @@ public class DeepArResponse {
     @JsonProperty("predictions")
     private List<Prediction> predictions = null;
     @JsonIgnore
-    private Map<String, Object> additionalProperties = new HashMap<String, Object>();
+    private Map<String, Object> additionalProperties;
 
     @JsonProperty("predictions")
     public List<Prediction> getPredictions() {
@@ -37,11 +38,14 @@ public class DeepArResponse {
 
     @JsonAnyGetter
     public Map<String, Object> getAdditionalProperties() {
-        return this.additionalProperties;
+        return this.additionalProperties == null ? Collections.<String, Object>emptyMap() : this.additionalProperties;
     }
 
     @JsonAnySetter
     public void setAdditionalProperty(String name, Object value) {
+        if (this.additionalProperties == null) {
+            this.additionalProperties = new HashMap<String, Object>();
+        }
         this.additionalProperties.put(name, value);
     }
 
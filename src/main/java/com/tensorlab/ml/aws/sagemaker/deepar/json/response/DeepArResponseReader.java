@@ -0,0 +1,219 @@
+package com.tensorlab.ml.aws.sagemaker.deepar.json.response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reads a DeepAR response with the streaming parser, one prediction at a time.
+ * Each prediction is handed to a {@link PredictionHandler} as soon as it has been
+ * parsed, and the 'samples' of the predictions, by far the largest part of the
+ * response, can be kept, skipped without being bound, or reduced on the fly to
+ * extra quantiles
+ */
+public class DeepArResponseReader {
+
+	public enum SamplesMode {
+		/** bind the samples to {@link Prediction#getSamples()} */
+		KEEP,
+		/** skip the samples without binding them */
+		SKIP,
+		/** compute the configured quantiles from the samples, then drop them */
+		REDUCE
+	}
+
+	/**
+	 * Receives the predictions while the response is read
+	 */
+	@FunctionalInterface
+	public interface PredictionHandler {
+		/**
+		 * @param index the position of the prediction in the response, i.e. the position of
+		 * its instance in the request
+		 * @param prediction the parsed prediction
+		 */
+		void onPrediction(int index, Prediction prediction) throws IOException;
+	}
+
+	private final ObjectMapper objectMapper;
+	private final SamplesMode samplesMode;
+	private final double[] sampleQuantiles;
+	private final String[] sampleQuantileNames;
+
+	public DeepArResponseReader(ObjectMapper objectMapper, SamplesMode samplesMode, List<Double> sampleQuantiles) {
+		this.objectMapper = objectMapper;
+		this.samplesMode = samplesMode;
+		this.sampleQuantiles = new double[sampleQuantiles.size()];
+		this.sampleQuantileNames = new String[sampleQuantiles.size()];
+		for (int i = 0; i < sampleQuantiles.size(); i++) {
+			if (sampleQuantiles.get(i) < 0 || sampleQuantiles.get(i) > 1) {
+				throw new IllegalArgumentException("Quantiles must be between 0 and 1: " + sampleQuantiles.get(i));
+			}
+			this.sampleQuantiles[i] = sampleQuantiles.get(i);
+			this.sampleQuantileNames[i] = BigDecimal.valueOf(sampleQuantiles.get(i)).stripTrailingZeros().toPlainString();
+		}
+	}
+
+	/**
+	 * Reads the whole response
+	 * @param in the response body, it's not closed by this method
+	 * @return the response
+	 * @throws IOException
+	 */
+	public DeepArResponse read(InputStream in) throws IOException {
+		return read(in, null);
+	}
+
+	/**
+	 * Reads the response and hands every prediction to the handler once parsed
+	 * @param in the response body, it's not closed by this method
+	 * @param handler the handler receiving the predictions, may be null
+	 * @return the response, containing all the predictions
+	 * @throws IOException
+	 */
+	public DeepArResponse read(InputStream in, PredictionHandler handler) throws IOException {
+		DeepArResponse response = new DeepArResponse();
+		List<Prediction> predictions = new ArrayList<>();
+		response.setPredictions(predictions);
+
+		try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+			parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+			expect(parser.nextToken(), JsonToken.START_OBJECT);
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				JsonToken token = parser.nextToken();
+				if ("predictions".equals(field) && token == JsonToken.START_ARRAY) {
+					while (parser.nextToken() == JsonToken.START_OBJECT) {
+						Prediction prediction = readPrediction(parser);
+						if (handler != null) {
+							handler.onPrediction(predictions.size(), prediction);
+						}
+						predictions.add(prediction);
+					}
+				} else {
+					response.setAdditionalProperty(field, parser.readValueAsTree());
+				}
+			}
+		}
+		return response;
+	}
+
+	private Prediction readPrediction(JsonParser parser) throws IOException {
+		Prediction prediction = new Prediction();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			parser.nextToken();
+			if ("mean".equals(field)) {
+				prediction.setMean(parser.readValueAs(double[].class));
+			} else if ("quantiles".equals(field)) {
+				readQuantiles(parser, prediction);
+			} else if ("samples".equals(field)) {
+				readSamples(parser, prediction);
+			} else {
+				prediction.setAdditionalProperty(field, parser.readValueAsTree());
+			}
+		}
+		return prediction;
+	}
+
+	/**
+	 * Merges the quantiles of the response into the ones already computed from the
+	 * samples, the quantiles of the response take precedence
+	 */
+	private void readQuantiles(JsonParser parser, Prediction prediction) throws IOException {
+		Quantiles quantiles = parser.readValueAs(Quantiles.class);
+		if (prediction.getQuantiles() == null || quantiles == null) {
+			prediction.setQuantiles(quantiles);
+			return;
+		}
+		quantiles.getValues().forEach(prediction.getQuantiles()::set);
+	}
+
+	private void readSamples(JsonParser parser, Prediction prediction) throws IOException {
+		switch (samplesMode) {
+		case KEEP:
+			prediction.setSamples(parser.readValueAs(double[][].class));
+			break;
+		case REDUCE:
+			reduceSamples(parser, prediction);
+			break;
+		default:
+			parser.skipChildren();
+		}
+	}
+
+	/**
+	 * Reads the samples into one flat array and computes the configured quantiles
+	 * of each time step, no array is allocated per sample. The quantiles already read
+	 * from the response are kept
+	 */
+	private void reduceSamples(JsonParser parser, Prediction prediction) throws IOException {
+		expect(parser.currentToken(), JsonToken.START_ARRAY);
+		double[] flat = new double[256];
+		int size = 0;
+		int sampleCount = 0;
+		int horizon = -1;
+		while (parser.nextToken() == JsonToken.START_ARRAY) {
+			int length = 0;
+			while (parser.nextToken() != JsonToken.END_ARRAY) {
+				if (size == flat.length) {
+					flat = Arrays.copyOf(flat, size * 2);
+				}
+				flat[size++] = parser.getDoubleValue();
+				length++;
+			}
+			if (horizon >= 0 && length != horizon) {
+				throw new IOException("Samples have different lengths: " + horizon + " and " + length);
+			}
+			horizon = length;
+			sampleCount++;
+		}
+		if (sampleCount == 0 || sampleQuantiles.length == 0) {
+			return;
+		}
+
+		if (prediction.getQuantiles() == null) {
+			prediction.setQuantiles(new Quantiles());
+		}
+		double[][] result = new double[sampleQuantiles.length][horizon];
+		double[] column = new double[sampleCount];
+		for (int t = 0; t < horizon; t++) {
+			for (int s = 0; s < sampleCount; s++) {
+				column[s] = flat[s * horizon + t];
+			}
+			Arrays.sort(column);
+			for (int q = 0; q < sampleQuantiles.length; q++) {
+				result[q][t] = quantile(column, sampleQuantiles[q]);
+			}
+		}
+		for (int q = 0; q < sampleQuantiles.length; q++) {
+			if (prediction.getQuantiles().get(sampleQuantileNames[q]) == null) {
+				prediction.getQuantiles().set(sampleQuantileNames[q], result[q]);
+			}
+		}
+	}
+
+	/**
+	 * Gets the quantile of sorted values, with linear interpolation between the
+	 * closest ranks
+	 */
+	static double quantile(double[] sorted, double p) {
+		double rank = p * (sorted.length - 1);
+		int lower = (int) Math.floor(rank);
+		int upper = Math.min(lower + 1, sorted.length - 1);
+		return sorted[lower] + (rank - lower) * (sorted[upper] - sorted[lower]);
+	}
+
+	private static void expect(JsonToken actual, JsonToken expected) throws IOException {
+		if (actual != expected) {
+			throw new IOException("Unexpected token in DeepAR response: " + actual + ", expected: " + expected);
+		}
+	}
+}
@@ -1,8 +1,8 @@
 
 package com.tensorlab.ml.aws.sagemaker.deepar.json.response;
 
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import com.fasterxml.jackson.annotation.JsonAnyGetter;
 import com.fasterxml.jackson.annotation.JsonAnySetter;
@@ -25,11 +25,11 @@ public class Prediction {
     @JsonProperty("quantiles")
     private Quantiles quantiles;
     @JsonProperty("samples")
-    private List<List<Double>> samples = null;
+    private double[][] samples = null;
     @JsonProperty("mean")
-    private List<Double> mean = null;
+    private double[] mean = null;
     @JsonIgnore
-    private Map<String, Object> additionalProperties = new HashMap<String, Object>();
+    private Map<String, Object> additionalProperties;
 
     @JsonProperty("quantiles")
     public Quantiles getQuantiles() {
@@ -42,32 +42,35 @@ public class Prediction {
     }
 
     @JsonProperty("samples")
-    public List<List<Double>> getSamples() {
+    public double[][] getSamples() {
         return samples;
     }
 
     @JsonProperty("samples")
-    public void setSamples(List<List<Double>> samples) {
+    public void setSamples(double[][] samples) {
         this.samples = samples;
     }
 
     @JsonProperty("mean")
-    public List<Double> getMean() {
+    public double[] getMean() {
         return mean;
     }
 
     @JsonProperty("mean")
-    public void setMean(List<Double> mean) {
+    public void setMean(double[] mean) {
         this.mean = mean;
     }
 
     @JsonAnyGetter
     public Map<String, Object> getAdditionalProperties() {
-        return this.additionalProperties;
+        return this.additionalProperties == null ? Collections.<String, Object>emptyMap() : this.additionalProperties;
     }
 
     @JsonAnySetter
     public void setAdditionalProperty(String name, Object value) {
+        if (this.additionalProperties == null) {
+            this.additionalProperties = new HashMap<String, Object>();
+        }
         this.additionalProperties.put(name, value);
     }
 
@@ -1,74 +1,84 @@
 
 package com.tensorlab.ml.aws.sagemaker.deepar.json.response;
 
-import java.util.HashMap;
-import java.util.List;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import com.fasterxml.jackson.annotation.JsonAnyGetter;
 import com.fasterxml.jackson.annotation.JsonAnySetter;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
-import lombok.ToString;
-
-@ToString
+/**
+ * The predicted quantiles, keyed by the quantile as sent in the request
+ * configuration (e.g. "0.1"). Each quantile is bound directly to a primitive array
+ */
 @JsonInclude(JsonInclude.Include.NON_NULL)
-@JsonPropertyOrder({
-    "0.1",
-    "0.9",
-    "0.5"
-})
 public class Quantiles {
 
-    @JsonProperty("0.1")
-    private List<Double> _01 = null;
-    @JsonProperty("0.9")
-    private List<Double> _09 = null;
-    @JsonProperty("0.5")
-    private List<Double> _05 = null;
+    public static final String QUANTILE_01 = "0.1";
+    public static final String QUANTILE_05 = "0.5";
+    public static final String QUANTILE_09 = "0.9";
+
     @JsonIgnore
-    private Map<String, Object> additionalProperties = new HashMap<String, Object>();
+    private Map<String, double[]> values = new LinkedHashMap<String, double[]>();
 
-    @JsonProperty("0.1")
-    public List<Double> get01() {
-        return _01;
+    @JsonIgnore
+    public double[] get01() {
+        return get(QUANTILE_01);
     }
 
-    @JsonProperty("0.1")
-    public void set01(List<Double> _01) {
-        this._01 = _01;
+    public void set01(double[] _01) {
+        set(QUANTILE_01, _01);
     }
 
-    @JsonProperty("0.9")
-    public List<Double> get09() {
-        return _09;
+    @JsonIgnore
+    public double[] get09() {
+        return get(QUANTILE_09);
     }
 
-    @JsonProperty("0.9")
-    public void set09(List<Double> _09) {
-        this._09 = _09;
+    public void set09(double[] _09) {
+        set(QUANTILE_09, _09);
     }
 
-    @JsonProperty("0.5")
-    public List<Double> get05() {
-        return _05;
+    @JsonIgnore
+    public double[] get05() {
+        return get(QUANTILE_05);
     }
 
-    @JsonProperty("0.5")
-    public void set05(List<Double> _05) {
-        this._05 = _05;
+    public void set05(double[] _05) {
+        set(QUANTILE_05, _05);
+    }
+
+    /**
+     * Gets the values of a quantile
+     * @param quantile the quantile as sent in the request configuration, e.g. "0.1"
+     * @return the values, or null if the quantile is not part of the response
+     */
+    public double[] get(String quantile) {
+        return this.values.get(quantile);
     }
 
     @JsonAnyGetter
-    public Map<String, Object> getAdditionalProperties() {
-        return this.additionalProperties;
+    public Map<String, double[]> getValues() {
+        return this.values;
     }
 
     @JsonAnySetter
-    public void setAdditionalProperty(String name, Object value) {
-        this.additionalProperties.put(name, value);
+    public void set(String quantile, double[] values) {
+        this.values.put(quantile, values);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Quantiles(");
+        for (Map.Entry<String, double[]> entry : this.values.entrySet()) {
+            if (sb.length() > "Quantiles(".length()) {
+                sb.append(", ");
+            }
+            sb.append(entry.getKey()).append('=').append(Arrays.toString(entry.getValue()));
+        }
+        return sb.append(')').toString();
     }
 
 }
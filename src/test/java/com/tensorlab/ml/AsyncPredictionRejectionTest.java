@@ -0,0 +1,51 @@
+package com.tensorlab.ml;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+/**
+ * A request rejected by a later stage of the asynchronous prediction, once the
+ * servlet thread is released, must still get a 429
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "app-config.store-config.enabled=false")
+@AutoConfigureMockMvc
+public class AsyncPredictionRejectionTest {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@MockBean
+	private LabManager labManager;
+
+	@Test
+	public void laterRejectionIsTooManyRequests() throws Exception {
+		CompletableFuture<String> rejected = CompletableFuture.<String>completedFuture("plot").handle((plot, e) -> {
+			throw new PredictionRejectedException("Prediction queue is full", new RejectedExecutionException());
+		});
+		given(labManager.predictAsync(eq("daily"), any())).willReturn(rejected);
+
+		MvcResult result = mockMvc.perform(get("/predict/sagemaker/deepar/async").param("target", "daily"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		mockMvc.perform(asyncDispatch(result)).andExpect(status().isTooManyRequests());
+	}
+}
@@ -0,0 +1,73 @@
+package com.tensorlab.ml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Opens, half opens and closes a circuit, only the trial invocation lets another
+ * trial through when it's released
+ */
+public class CircuitBreakerTest {
+	private static final long OPEN_DURATION = 50;
+
+	private final CircuitBreaker circuitBreaker = new CircuitBreaker("test", 2, OPEN_DURATION);
+
+	@Test
+	public void opensAfterConsecutiveFailures() {
+		assertNotNull(circuitBreaker.tryAcquire());
+		circuitBreaker.onFailure();
+		circuitBreaker.onSuccess();
+		circuitBreaker.onFailure();
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+		circuitBreaker.onFailure();
+		assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+		assertNull(circuitBreaker.tryAcquire());
+	}
+
+	@Test
+	public void trialClosesTheCircuit() throws Exception {
+		open();
+		CircuitBreaker.Permit trial = circuitBreaker.tryAcquire();
+		assertNotNull(trial);
+		assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+		assertNull(circuitBreaker.tryAcquire());
+		circuitBreaker.onSuccess();
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+		assertNotNull(circuitBreaker.tryAcquire());
+	}
+
+	@Test
+	public void failedTrialOpensTheCircuit() throws Exception {
+		open();
+		assertNotNull(circuitBreaker.tryAcquire());
+		circuitBreaker.onFailure();
+		assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+		assertNull(circuitBreaker.tryAcquire());
+	}
+
+	@Test
+	public void releasingAnotherInvocationKeepsTheTrial() throws Exception {
+		// e.g. a losing hedged attempt sent before the circuit opened
+		CircuitBreaker.Permit earlier = circuitBreaker.tryAcquire();
+		open();
+		CircuitBreaker.Permit trial = circuitBreaker.tryAcquire();
+		assertNotNull(trial);
+
+		circuitBreaker.release(earlier);
+		assertNull(circuitBreaker.tryAcquire());
+
+		circuitBreaker.release(trial);
+		assertNotNull(circuitBreaker.tryAcquire());
+		assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+	}
+
+	private void open() throws InterruptedException {
+		circuitBreaker.onFailure();
+		circuitBreaker.onFailure();
+		assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+		Thread.sleep(OPEN_DURATION + 10);
+	}
+}
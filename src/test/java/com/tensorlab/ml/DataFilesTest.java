@@ -0,0 +1,45 @@
+package com.tensorlab.ml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Decodes the data files written with another charset than the configured one
+ */
+public class DataFilesTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void malformedBytesAreReplaced() throws Exception {
+		assertEquals("date,caf\uFFFD", readFirstLine("UTF-8"));
+	}
+
+	@Test
+	public void configuredCharsetIsUsed() throws Exception {
+		assertEquals("date,caf\u00E9", readFirstLine("windows-1252"));
+	}
+
+	private String readFirstLine(String charset) throws Exception {
+		Path file = folder.newFile("prediction-input-legacy.csv").toPath();
+		// "date,café" written in windows-1252
+		Files.write(file, new byte[] { 'd', 'a', 't', 'e', ',', 'c', 'a', 'f', (byte) 0xE9, '\n' });
+		AppConfig appConfig = new AppConfig();
+		appConfig.getDataConfig().setCharset(charset);
+		DataFiles dataFiles = new DataFiles();
+		ReflectionTestUtils.setField(dataFiles, "appConfig", appConfig);
+		try (Reader in = dataFiles.newReader(file)) {
+			return new BufferedReader(in).readLine();
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package com.tensorlab.ml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Queues invocations behind a single invocation slot, the timeouts of their waits
+ * must not outlive them
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+		"app-config.store-config.enabled=false",
+		"app-config.limit-config.initial-concurrency=1",
+		"app-config.limit-config.min-concurrency=1",
+		"app-config.limit-config.max-concurrency=1",
+		"app-config.limit-config.queue-timeout=60000" })
+public class EndpointResilienceTest {
+	private static final int INVOCATIONS = 20;
+
+	@Autowired
+	private EndpointResilience resilience;
+
+	@Test
+	public void admittedInvocationsCancelTheirTimeouts() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(INVOCATIONS);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < INVOCATIONS; i++) {
+				results.add(executor.submit(() -> resilience.call("daily", endpoint -> {
+					try {
+						Thread.sleep(5);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					return endpoint.getName();
+				}, () -> true)));
+			}
+			for (Future<String> result : results) {
+				result.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		ScheduledThreadPoolExecutor scheduler = (ScheduledThreadPoolExecutor) ReflectionTestUtils.getField(resilience,
+				"scheduler");
+		assertEquals(0, scheduler.getQueue().size());
+	}
+}
@@ -0,0 +1,29 @@
+package com.tensorlab.ml;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Load test of a failing endpoint: a tenth of the invocations of the stub fail,
+ * the retries must hide them from almost every request
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+		"app-config.store-config.enabled=false",
+		"stub-config.latency-distribution=FIXED",
+		"stub-config.latency=20",
+		"stub-config.error-rate=0.1" })
+public class FailingEndpointLoadTest extends LoadTestSupport {
+
+	@Test
+	public void failedInvocationsAreRetried() throws Exception {
+		Result result = run(ASYNC_PATH, WARMUP, REQUESTS, CONCURRENCY);
+		assertTrue("The stub did not fail", stub.getResponseCount(HttpStatus.INTERNAL_SERVER_ERROR) > 0);
+		// three attempts all failing is rare, not impossible
+		assertTrue(result.toString(), result.count(200) >= REQUESTS * 0.98);
+		assertWithinBounds(result);
+	}
+}
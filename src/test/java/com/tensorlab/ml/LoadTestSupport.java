@@ -0,0 +1,170 @@
+package com.tensorlab.ml;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.tensorlab.ml.stub.DeepArStubController;
+import com.tensorlab.ml.stub.StubEndpointHost;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sends prediction requests to the application started with the stub profile, so
+ * it invokes its own stub endpoint, from concurrent clients, each one sending its
+ * next request once it got the previous response. The subclasses set the behavior
+ * of the stub and check the statuses and the latencies of the requests. The
+ * application listens on a random port, see {@link StubEndpointHost}
+ */
+@Slf4j
+@RunWith(SpringRunner.class)
+@ActiveProfiles("stub")
+public abstract class LoadTestSupport {
+	protected static final String ASYNC_PATH = "/predict/sagemaker/deepar/async?target=sample";
+	protected static final int WARMUP = 10;
+	protected static final int REQUESTS = 100;
+	protected static final int CONCURRENCY = 16;
+	/**
+	 * The bounds of every run, loose enough for a shared build machine: a run below
+	 * them is orders of magnitude slower than expected
+	 */
+	protected static final double MIN_THROUGHPUT = 2;
+	protected static final double MAX_P99_LATENCY = 10000;
+	/** the status of the requests that got no response */
+	protected static final int NO_RESPONSE = -1;
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	protected DeepArStubController stub;
+
+	private CloseableHttpClient client;
+
+	@Before
+	public void openClient() {
+		client = HttpClients.custom().setMaxConnTotal(64).setMaxConnPerRoute(64).build();
+	}
+
+	@After
+	public void closeClient() throws IOException {
+		client.close();
+	}
+
+	/**
+	 * Sends the requests, after warmup requests whose results are not kept
+	 * @param path the requested path and query
+	 */
+	protected Result run(String path, int warmup, int requests, int concurrency) throws InterruptedException {
+		run("http://localhost:" + port + path, warmup, concurrency);
+		Result result = run("http://localhost:" + port + path, requests, concurrency);
+		log.info("Load test of {} from {} clients: {}", path, concurrency, result);
+		return result;
+	}
+
+	/**
+	 * Checks the throughput and the tail latency of a run against the bounds of every run
+	 */
+	protected static void assertWithinBounds(Result result) {
+		assertTrue(result.toString(), result.throughput() >= MIN_THROUGHPUT);
+		assertTrue(result.toString(), result.percentile(0.99) <= MAX_P99_LATENCY);
+	}
+
+	private Result run(String url, int requests, int concurrency) throws InterruptedException {
+		Result result = new Result(requests);
+		AtomicInteger next = new AtomicInteger();
+		ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+		long start = System.nanoTime();
+		for (int c = 0; c < concurrency; c++) {
+			clients.execute(() -> {
+				for (int i = next.getAndIncrement(); i < requests; i = next.getAndIncrement()) {
+					long sent = System.nanoTime();
+					int status;
+					try (CloseableHttpResponse response = client.execute(new HttpGet(url))) {
+						EntityUtils.consume(response.getEntity());
+						status = response.getStatusLine().getStatusCode();
+					} catch (IOException e) {
+						status = NO_RESPONSE;
+					}
+					result.record(i, System.nanoTime() - sent, status);
+				}
+			});
+		}
+		clients.shutdown();
+		clients.awaitTermination(10, TimeUnit.MINUTES);
+		result.elapsed = System.nanoTime() - start;
+		return result;
+	}
+
+	/**
+	 * The latencies and statuses of the requests of a run
+	 */
+	protected static class Result {
+		private final long[] latencies;
+		private final Map<Integer, Integer> statuses = new TreeMap<>();
+		private long elapsed;
+
+		Result(int requests) {
+			latencies = new long[requests];
+		}
+
+		synchronized void record(int request, long latency, int status) {
+			latencies[request] = latency;
+			statuses.merge(status, 1, Integer::sum);
+		}
+
+		/**
+		 * Gets the number of requests answered with a status
+		 */
+		synchronized int count(int status) {
+			return statuses.getOrDefault(status, 0);
+		}
+
+		synchronized Map<Integer, Integer> getStatuses() {
+			return new TreeMap<>(statuses);
+		}
+
+		/**
+		 * Gets the requests per second
+		 */
+		double throughput() {
+			return latencies.length / (elapsed / 1e9);
+		}
+
+		/**
+		 * Gets a percentile of the latencies, in milliseconds
+		 * @param percentile the percentile, from 0 to 1
+		 */
+		synchronized double percentile(double percentile) {
+			long[] sorted = latencies.clone();
+			Arrays.sort(sorted);
+			return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)] / 1e6;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%.1f requests/s, latency (ms) p50 %.1f, p90 %.1f, p99 %.1f, max %.1f, statuses %s",
+					throughput(), percentile(0.5), percentile(0.9), percentile(0.99), percentile(1), getStatuses());
+		}
+	}
+}
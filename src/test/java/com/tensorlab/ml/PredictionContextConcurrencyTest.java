@@ -0,0 +1,145 @@
+package com.tensorlab.ml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAmount;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponse;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.Prediction;
+
+import lombok.Value;
+
+/**
+ * Runs hundreds of concurrent requests for targets of different dates and
+ * frequencies through the build and export stages, each request must only see
+ * the dates of its own target, written like the dates of its input file
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "app-config.store-config.enabled=false")
+public class PredictionContextConcurrencyTest {
+	private static final int REQUESTS = 400;
+	private static final int THREADS = 32;
+	private static final int HORIZON = 5;
+	private static final DateTimeFormatter DAILY_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE;
+	private static final DateTimeFormatter HOURLY_FORMAT = DateTimeFormatter.ofPattern("uuuu-MM-dd HH:mm:ss");
+
+	/** the targets of the input files of the test resources, with their dates and the format of their dates */
+	private static final List<Target> TARGETS = Arrays.asList(
+			new Target("daily", LocalDate.of(2006, 1, 1).atStartOfDay(), LocalDate.of(2006, 1, 20).atStartOfDay(),
+					Period.ofDays(1), DAILY_FORMAT, 1),
+			new Target("weekly", LocalDate.of(2010, 3, 7).atStartOfDay(), LocalDate.of(2010, 6, 13).atStartOfDay(),
+					Period.ofDays(7), DAILY_FORMAT, 2),
+			new Target("monthly", LocalDate.of(2015, 1, 1).atStartOfDay(), LocalDate.of(2015, 12, 1).atStartOfDay(),
+					Period.ofMonths(1), DAILY_FORMAT, 3),
+			new Target("hourly", LocalDateTime.of(2019, 4, 1, 0, 0), LocalDateTime.of(2019, 4, 2, 5, 0),
+					Duration.ofHours(1), HOURLY_FORMAT, 2));
+
+	@Value
+	private static class Target {
+		String name;
+		LocalDateTime startDateTime;
+		LocalDateTime lastDateTime;
+		TemporalAmount frequency;
+		DateTimeFormatter format;
+		int seriesCount;
+	}
+
+	@Autowired
+	private LabManager labManager;
+
+	@Test
+	public void concurrentRequestsKeepTheirOwnDates() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> results = new ArrayList<>();
+		try {
+			for (int i = 0; i < REQUESTS; i++) {
+				Target target = TARGETS.get(i % TARGETS.size());
+				results.add(executor.submit(() -> {
+					start.await();
+					predict(target);
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<?> result : results) {
+				// rethrows the assertion errors of the requests
+				result.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void predict(Target target) throws Exception {
+		PredictionContext context = labManager.buildPredictionContext(target.getName());
+		assertEquals(target.getName(), context.getTarget());
+		assertEquals(target.getStartDateTime(), context.getStartDateTime());
+		assertEquals(target.getLastDateTime(), context.getLastDateTime());
+		assertEquals(target.getFrequency(), context.getFrequency());
+		assertEquals(target.getSeriesCount(), context.getSeriesCount());
+		assertEquals(target.getFormat().format(target.getStartDateTime()), context.getRequest().getInstances().get(0).getStart());
+
+		List<String> files = labManager.exportJsonResponseToCsv(forecast(context.getSeriesCount()), context);
+		assertEquals(context.getSeriesCount(), files.size());
+		try {
+			for (String file : files) {
+				List<CSVRecord> records;
+				try (Reader in = Files.newBufferedReader(Paths.get(file))) {
+					records = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(in).getRecords();
+				}
+				assertEquals(HORIZON, records.size());
+				LocalDateTime expected = target.getLastDateTime();
+				for (int i = 0; i < HORIZON; i++) {
+					expected = expected.plus(target.getFrequency());
+					assertEquals(file, target.getFormat().format(expected), records.get(i).get("date"));
+				}
+			}
+		} finally {
+			for (String file : files) {
+				Files.deleteIfExists(Paths.get(file));
+			}
+		}
+	}
+
+	/**
+	 * Builds a response holding the mean of each series
+	 */
+	private static DeepArResponse forecast(int seriesCount) {
+		List<Prediction> predictions = new ArrayList<>();
+		for (int s = 0; s < seriesCount; s++) {
+			Prediction prediction = new Prediction();
+			double[] mean = new double[HORIZON];
+			Arrays.fill(mean, s);
+			prediction.setMean(mean);
+			predictions.add(prediction);
+		}
+		DeepArResponse response = new DeepArResponse();
+		response.setPredictions(Collections.unmodifiableList(predictions));
+		return response;
+	}
+}
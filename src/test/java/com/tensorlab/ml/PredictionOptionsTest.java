@@ -0,0 +1,111 @@
+package com.tensorlab.ml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.util.NestedServletException;
+
+/**
+ * Binds the inference options from the query parameters, resolves them against the
+ * configured profiles and answers the invalid ones with 400
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+		"app-config.store-config.enabled=false",
+		"app-config.response-config.samples-mode=SKIP",
+		"app-config.profiles.fast.num-samples=10",
+		"app-config.profiles.fast.output-types=mean",
+		"app-config.profiles.wide.quantiles=0.05,0.95",
+		"app-config.target-profiles.weekly=wide" })
+@AutoConfigureMockMvc
+public class PredictionOptionsTest {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@SpyBean
+	private LabManager labManager;
+
+	@Test
+	public void queryParametersAreBound() throws Exception {
+		doReturn("plot").when(labManager).predict(eq("daily"), any());
+		mockMvc.perform(get("/predict/sagemaker/deepar").param("target", "daily").param("profile", "fast")
+				.param("numSamples", "20").param("quantiles", "0.2,0.8"))
+				.andExpect(status().isOk());
+
+		ArgumentCaptor<PredictionOptions> options = ArgumentCaptor.forClass(PredictionOptions.class);
+		verify(labManager).predict(eq("daily"), options.capture());
+		assertEquals("fast", options.getValue().getProfile());
+		assertEquals(Integer.valueOf(20), options.getValue().getNumSamples());
+		assertEquals(Arrays.asList("0.2", "0.8"), options.getValue().getQuantiles());
+	}
+
+	@Test
+	public void requestOverridesSelectedProfileOverridesTargetProfile() {
+		PredictionProfile target = labManager.resolveProfile("weekly", null);
+		assertEquals(Arrays.asList("0.05", "0.95"), target.getQuantiles());
+		assertEquals(Integer.valueOf(50), target.getNumSamples());
+
+		PredictionOptions options = new PredictionOptions();
+		options.setProfile("fast");
+		PredictionProfile selected = labManager.resolveProfile("weekly", options);
+		assertEquals(Arrays.asList("mean"), selected.getOutputTypes());
+		assertEquals(Integer.valueOf(10), selected.getNumSamples());
+		assertEquals(Arrays.asList("0.05", "0.95"), selected.getQuantiles());
+
+		options.setNumSamples(30);
+		options.setQuantiles(Arrays.asList("0.3"));
+		PredictionProfile overridden = labManager.resolveProfile("weekly", options);
+		assertEquals(Arrays.asList("mean"), overridden.getOutputTypes());
+		assertEquals(Integer.valueOf(30), overridden.getNumSamples());
+		assertEquals(Arrays.asList("0.3"), overridden.getQuantiles());
+	}
+
+	@Test
+	public void unknownProfileIsBadRequest() throws Exception {
+		mockMvc.perform(get("/predict/sagemaker/deepar").param("target", "daily").param("profile", "missing"))
+				.andExpect(status().isBadRequest())
+				.andExpect(content().string("Unknown profile: missing"));
+	}
+
+	@Test
+	public void invalidValuesAreBadRequest() throws Exception {
+		mockMvc.perform(get("/predict/sagemaker/deepar").param("target", "daily").param("numSamples", "0"))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(get("/predict/sagemaker/deepar").param("target", "daily").param("quantiles", "0.5,2"))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(get("/predict/sagemaker/deepar/async").param("target", "daily").param("outputTypes", "median"))
+				.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void internalErrorsAreNotBadRequests() throws Exception {
+		doThrow(new IllegalArgumentException("internal")).when(labManager).predict(eq("broken"), any());
+		try {
+			mockMvc.perform(get("/predict/sagemaker/deepar").param("target", "broken"));
+			fail("the error should reach the container");
+		} catch (NestedServletException e) {
+			// no handler resolved it, the container answers with 500
+			assertEquals("internal", e.getCause().getMessage());
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package com.tensorlab.ml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.tensorlab.ml.aws.sagemaker.deepar.json.requeset.Configuration;
+
+/**
+ * Merges and validates the inference options
+ */
+public class PredictionProfileTest {
+
+	@Test
+	public void defaultsRequestTheMeanAndThreeQuantiles() {
+		Configuration config = PredictionProfile.defaults().toConfiguration();
+		assertEquals(Arrays.asList("mean", "quantiles"), config.getOutputTypes());
+		assertEquals(Integer.valueOf(50), config.getNumSamples());
+		assertEquals(Arrays.asList("0.1", "0.5", "0.9"), config.getQuantiles());
+	}
+
+	@Test
+	public void overrideReplacesOnlyTheValuesItSets() {
+		PredictionProfile override = new PredictionProfile();
+		override.setNumSamples(200);
+		override.setOutputTypes(Collections.emptyList());
+		PredictionProfile merged = PredictionProfile.defaults().overrideWith(override);
+		assertEquals(Integer.valueOf(200), merged.getNumSamples());
+		assertEquals(Arrays.asList("mean", "quantiles"), merged.getOutputTypes());
+		assertEquals(Arrays.asList("0.1", "0.5", "0.9"), merged.getQuantiles());
+		assertEquals(PredictionProfile.defaults(), PredictionProfile.defaults().overrideWith(null));
+	}
+
+	@Test
+	public void withSamplesAddsTheSamplesOnce() {
+		PredictionProfile profile = PredictionProfile.defaults().withSamples();
+		assertEquals(Arrays.asList("mean", "quantiles", "samples"), profile.getOutputTypes());
+		assertEquals(profile.getOutputTypes(), profile.withSamples().getOutputTypes());
+		// the original profile is not modified
+		assertEquals(Arrays.asList("mean", "quantiles"), PredictionProfile.defaults().getOutputTypes());
+		assertNull(new PredictionProfile().withSamples().getOutputTypes());
+	}
+
+	@Test(expected = InvalidPredictionOptionsException.class)
+	public void numSamplesMustBePositive() {
+		PredictionProfile profile = new PredictionProfile();
+		profile.setNumSamples(0);
+		profile.toConfiguration();
+	}
+
+	@Test(expected = InvalidPredictionOptionsException.class)
+	public void outputTypesMustBeKnown() {
+		PredictionProfile profile = new PredictionProfile();
+		profile.setOutputTypes(Arrays.asList("mean", "median"));
+		profile.toConfiguration();
+	}
+
+	@Test(expected = InvalidPredictionOptionsException.class)
+	public void quantilesMustBeNumbers() {
+		PredictionProfile profile = new PredictionProfile();
+		profile.setQuantiles(Arrays.asList("0.1", "high"));
+		profile.toConfiguration();
+	}
+
+	@Test(expected = InvalidPredictionOptionsException.class)
+	public void quantilesMustBeBetweenZeroAndOne() {
+		PredictionProfile profile = new PredictionProfile();
+		profile.setQuantiles(Arrays.asList("0.5", "1"));
+		profile.toConfiguration();
+	}
+}
@@ -0,0 +1,243 @@
+package com.tensorlab.ml;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.tensorlab.ml.aws.sagemaker.deepar.json.requeset.DeepArRequest;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponse;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.Prediction;
+
+/**
+ * Appends, compacts and reopens a store, the forecasts must keep their timestamp
+ * order and be found once across restarts
+ */
+public class PredictionStoreTest {
+	private static final double DELTA = 1e-9;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private AppConfig appConfig;
+	private PredictionStore store;
+
+	@Before
+	public void setUp() throws Exception {
+		appConfig = new AppConfig();
+		appConfig.getStoreConfig().setDirectory(folder.getRoot().getPath());
+		// compacted explicitly by the tests
+		appConfig.getStoreConfig().setCompactionInterval(60 * 60 * 1000);
+		store = open();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		store.destroy();
+	}
+
+	@Test
+	public void forecastsAreFoundByTimestamp() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			store.append(context("a"), forecast(i));
+		}
+		List<StoredPrediction> found = store.find("a", null, null);
+		assertEquals(Arrays.asList(0.0, 1.0, 2.0, 3.0, 4.0), means(found));
+		// stored in the same millisecond or not, each forecast has its own timestamp
+		for (int i = 1; i < found.size(); i++) {
+			assertTrue(found.get(i).getTimestamp() > found.get(i - 1).getTimestamp());
+		}
+		assertEquals(Arrays.asList(1.0, 2.0, 3.0),
+				means(store.find("a", found.get(1).getTimestamp(), found.get(3).getTimestamp())));
+		assertEquals(4.0, store.findLatest("a").getResponse().getPredictions().get(0).getMean()[0], DELTA);
+		assertEquals(LocalDate.of(2020, 1, 2).atStartOfDay(), store.findLatest("a").getFirstPredictedDateTime());
+		assertNull(store.findLatest("b"));
+	}
+
+	@Test
+	public void hourlyForecastKeepsItsTimeOfDay() throws Exception {
+		store.append(PredictionContext.builder()
+				.target("hourly")
+				.startDateTime(LocalDateTime.of(2019, 4, 1, 0, 0))
+				.lastDateTime(LocalDateTime.of(2019, 4, 2, 5, 0))
+				.frequency(Duration.ofHours(1))
+				.seriesNames(Collections.singletonList("series"))
+				.filePrefix("hourly")
+				.request(new DeepArRequest())
+				.build(), forecast(1));
+		StoredPrediction stored = store.findLatest("hourly");
+		assertEquals(LocalDateTime.of(2019, 4, 2, 6, 0), stored.getFirstPredictedDateTime());
+		assertEquals("PT1H", stored.getFrequency());
+	}
+
+	@Test
+	public void relocatedForecastsKeepTheirOrderAcrossRestarts() throws Exception {
+		store.append(context("a"), forecast(1));
+		int recordBytes = (int) Files.size(segments().get(0)) - 4;
+		// four records per segment
+		appConfig.getStoreConfig().setMaxSegmentBytes(4 + 4 * recordBytes);
+		store.append(context("b"), forecast(11));
+		store.append(context("b"), forecast(12));
+		store.append(context("b"), forecast(13));
+		store.append(context("b"), forecast(14));
+		store.append(context("b"), forecast(15));
+		store.append(context("a"), forecast(2));
+		assertEquals(2, segments().size());
+
+		// the first segment only keeps the oldest forecast of a, which is moved after the latest one
+		appConfig.getStoreConfig().setMaxPerTarget(2);
+		store.compact();
+		assertEquals(1, segments().size());
+		assertLatest(2.0, Arrays.asList(1.0, 2.0), Arrays.asList(14.0, 15.0));
+
+		store.destroy();
+		store = open();
+		assertLatest(2.0, Arrays.asList(1.0, 2.0), Arrays.asList(14.0, 15.0));
+
+		// the excess trim drops the oldest forecasts, not the last relocated ones
+		appConfig.getStoreConfig().setMaxPerTarget(1);
+		store.compact();
+		assertLatest(2.0, Arrays.asList(2.0), Arrays.asList(15.0));
+	}
+
+	@Test
+	public void recordsCopiedByAnInterruptedCompactionAreFoundOnce() throws Exception {
+		store.append(context("a"), forecast(1));
+		store.append(context("a"), forecast(2));
+		store.destroy();
+		// the records were copied to a new segment, the old one was not deleted
+		Path segment = segments().get(0);
+		Files.copy(segment, segment.resolveSibling("predictions-00000002.seg"));
+
+		store = open();
+		assertEquals(Arrays.asList(1.0, 2.0), means(store.find("a", null, null)));
+		store.compact();
+		assertEquals(1, segments().size());
+		assertFalse(Files.exists(segment));
+		assertEquals(Arrays.asList(1.0, 2.0), means(store.find("a", null, null)));
+	}
+
+	@Test
+	public void tornRecordIsTruncated() throws Exception {
+		store.append(context("a"), forecast(1));
+		store.destroy();
+		Path segment = segments().get(0);
+		long size = Files.size(segment);
+		Files.write(segment, new byte[] { 0, 0, 1, 0, 7 }, StandardOpenOption.APPEND);
+
+		store = open();
+		assertEquals(size, Files.size(segment));
+		store.append(context("a"), forecast(2));
+		assertEquals(Arrays.asList(1.0, 2.0), means(store.find("a", null, null)));
+	}
+
+	@Test
+	public void expiredForecastsAreDropped() throws Exception {
+		store.append(context("a"), forecast(1));
+		appConfig.getStoreConfig().setRetention(-60 * 1000);
+		store.compact();
+		assertNull(store.findLatest("a"));
+		assertEquals(Collections.emptyList(), store.find("a", null, null));
+	}
+
+	@Test
+	public void failedAppendLeavesNoTarget() throws Exception {
+		// too long to be encoded
+		char[] name = new char[70000];
+		Arrays.fill(name, 'x');
+		try {
+			store.append(context("a", new String(name)), forecast(1));
+			fail("The record was encoded");
+		} catch (IOException e) {
+			// expected
+		}
+		assertNull(store.findLatest("a"));
+		assertEquals(Collections.emptyList(), store.find("a", null, null));
+	}
+
+	@Test
+	public void filesNotNamedLikeSegmentsAreSkipped() throws Exception {
+		store.append(context("a"), forecast(1));
+		store.destroy();
+		Files.write(folder.getRoot().toPath().resolve("predictions-old.seg"), new byte[] { 1, 2, 3 });
+		store = open();
+		assertEquals(1.0, store.findLatest("a").getResponse().getPredictions().get(0).getMean()[0], DELTA);
+	}
+
+	private void assertLatest(double latest, List<Double> a, List<Double> b) throws IOException {
+		assertEquals(latest, store.findLatest("a").getResponse().getPredictions().get(0).getMean()[0], DELTA);
+		assertEquals(a, means(store.find("a", null, null)));
+		assertEquals(b, means(store.find("b", null, null)));
+	}
+
+	private PredictionStore open() throws Exception {
+		PredictionStore opened = new PredictionStore();
+		ReflectionTestUtils.setField(opened, "appConfig", appConfig);
+		opened.afterPropertiesSet();
+		return opened;
+	}
+
+	private List<Path> segments() throws IOException {
+		try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+			return files.sorted().collect(Collectors.toList());
+		}
+	}
+
+	private static PredictionContext context(String target) {
+		return context(target, "series");
+	}
+
+	private static PredictionContext context(String target, String seriesName) {
+		return PredictionContext.builder()
+				.target(target)
+				.startDateTime(LocalDate.of(2019, 1, 1).atStartOfDay())
+				.lastDateTime(LocalDate.of(2020, 1, 1).atStartOfDay())
+				.frequency(Period.ofDays(1))
+				.seriesNames(Collections.singletonList(seriesName))
+				.filePrefix(target)
+				.request(new DeepArRequest())
+				.build();
+	}
+
+	private static DeepArResponse forecast(double mean) {
+		Prediction prediction = new Prediction();
+		prediction.setMean(new double[] { mean, mean });
+		DeepArResponse response = new DeepArResponse();
+		response.setPredictions(Collections.singletonList(prediction));
+		return response;
+	}
+
+	private static List<Double> means(List<StoredPrediction> stored) {
+		List<Double> means = new ArrayList<>();
+		for (StoredPrediction prediction : stored) {
+			double[] mean = prediction.getResponse().getPredictions().get(0).getMean();
+			assertArrayEquals(new double[] { mean[0], mean[0] }, mean, DELTA);
+			means.add(mean[0]);
+		}
+		return means;
+	}
+}
@@ -0,0 +1,131 @@
+package com.tensorlab.ml;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Period;
+import java.time.temporal.TemporalAmount;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Reads input files whose last row is still being written, and the dates of
+ * daily, weekly, monthly and hourly input files
+ */
+public class SeriesRegistryTest {
+	private static final String TARGET = "growing";
+	private static final String FILE_NAME = "prediction-input-growing.csv";
+	private static final double DELTA = 1e-9;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private DataFiles dataFiles;
+	private SeriesRegistry registry;
+	private AppConfig appConfig;
+	private Path file;
+
+	@Before
+	public void setUp() {
+		appConfig = new AppConfig();
+		appConfig.getDataConfig().setDirectory(folder.getRoot().getPath());
+		dataFiles = new DataFiles();
+		ReflectionTestUtils.setField(dataFiles, "appConfig", appConfig);
+		PredictionMetrics metrics = new PredictionMetrics();
+		ReflectionTestUtils.setField(metrics, "registry", new SimpleMeterRegistry());
+		registry = new SeriesRegistry();
+		ReflectionTestUtils.setField(registry, "appConfig", appConfig);
+		ReflectionTestUtils.setField(registry, "dataFiles", dataFiles);
+		ReflectionTestUtils.setField(registry, "metrics", metrics);
+		file = folder.getRoot().toPath().resolve(FILE_NAME);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		dataFiles.destroy();
+	}
+
+	@Test
+	public void halfWrittenRowIsLeftOut() throws Exception {
+		write("datetime,a,b\n2020-01-01,1,10\n2020-01-02,2,20\n2020-01-03,3,");
+		assertSeries("2020-01-02", new double[] { 1, 2 }, new double[] { 10, 20 });
+
+		write("30\n2020-01-04,4,4");
+		assertSeries("2020-01-04", new double[] { 1, 2, 3, 4 }, new double[] { 10, 20, 30, 4 });
+
+		// the last row without line break is read again once completed
+		write("0\n2020-01-05,5");
+		assertSeries("2020-01-04", new double[] { 1, 2, 3, 4 }, new double[] { 10, 20, 30, 40 });
+
+		write(",50\n");
+		assertSeries("2020-01-05", new double[] { 1, 2, 3, 4, 5 }, new double[] { 10, 20, 30, 40, 50 });
+	}
+
+	@Test
+	public void lastRowWithoutLineBreakIsRead() throws Exception {
+		write("datetime,a\n2020-01-01,1\n2020-01-02,2");
+		assertSeries("2020-01-02", new double[] { 1, 2 });
+
+		write("\n2020-01-03,3\n");
+		assertSeries("2020-01-03", new double[] { 1, 2, 3 });
+	}
+
+	@Test
+	public void windowStartIsWrittenLikeTheInputDates() throws Exception {
+		appConfig.getDataConfig().setHistoryWindow(10);
+		assertWindow("daily", Period.ofDays(1), "2006-01-11");
+		assertWindow("weekly", Period.ofDays(7), "2010-04-11");
+		assertWindow("monthly", Period.ofMonths(1), "2015-03-01");
+		assertWindow("hourly", Duration.ofHours(1), "2019-04-01 20:00:00");
+	}
+
+	@Test
+	public void invalidDateIsAnInputError() throws Exception {
+		write("datetime,a\n2020-01-01,1\n01/02/2020,2\n");
+		try {
+			registry.get(TARGET);
+			fail("The date is not valid");
+		} catch (IOException e) {
+			assertEquals("Invalid date '01/02/2020'", e.getMessage());
+		}
+	}
+
+	private void assertWindow(String target, TemporalAmount frequency, String startDateTime) throws Exception {
+		// the input files of the test resources are found on the classpath
+		TargetSeries series = registry.get(target);
+		assertEquals(frequency, series.getSeries().getFrequency());
+		assertEquals(10, series.getWindowLength());
+		assertEquals(startDateTime, series.getStartDateTime());
+		assertEquals(startDateTime, series.getInstances().get(0).getStart());
+	}
+
+	private void write(String content) throws Exception {
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		// the change would be notified by the watcher thread
+		ReflectionTestUtils.invokeMethod(registry, "onFileChanged", FILE_NAME);
+	}
+
+	private void assertSeries(String lastDateTime, double[]... values) throws Exception {
+		SeriesData series = registry.get(TARGET).getSeries();
+		assertEquals(lastDateTime, series.getLastDateTime());
+		assertEquals(values.length, series.getSeriesCount());
+		for (int s = 0; s < values.length; s++) {
+			assertEquals(values[s].length, series.getLength());
+			assertArrayEquals(values[s], series.getValues(s), DELTA);
+		}
+	}
+}
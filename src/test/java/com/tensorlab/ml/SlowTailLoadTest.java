@@ -0,0 +1,28 @@
+package com.tensorlab.ml;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+
+/**
+ * Load test of an endpoint with a slow tail: the latencies of the stub are log
+ * normal with a large spread, the slow invocations are hedged and every request
+ * must succeed within the bounds
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+		"app-config.store-config.enabled=false",
+		"app-config.resilience-config.hedging-enabled=true",
+		"stub-config.latency-distribution=LOG_NORMAL",
+		"stub-config.latency=50",
+		"stub-config.latency-spread=1.5" })
+public class SlowTailLoadTest extends LoadTestSupport {
+
+	@Test
+	public void slowInvocationsAreHedged() throws Exception {
+		Result result = run(ASYNC_PATH, WARMUP, REQUESTS, CONCURRENCY);
+		assertEquals(result.toString(), REQUESTS, result.count(200));
+		assertWithinBounds(result);
+	}
+}
@@ -0,0 +1,27 @@
+package com.tensorlab.ml;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Load test of the service itself: the stub answers after a fixed latency, every
+ * request must succeed and reach the stub once
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+		"app-config.store-config.enabled=false",
+		"stub-config.latency-distribution=FIXED",
+		"stub-config.latency=50" })
+public class SteadyLoadTest extends LoadTestSupport {
+
+	@Test
+	public void everyRequestSucceeds() throws Exception {
+		Result result = run(ASYNC_PATH, WARMUP, REQUESTS, CONCURRENCY);
+		assertEquals(result.toString(), REQUESTS, result.count(200));
+		assertEquals(WARMUP + REQUESTS, stub.getResponseCount(HttpStatus.OK));
+		assertWithinBounds(result);
+	}
+}
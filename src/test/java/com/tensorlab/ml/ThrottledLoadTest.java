@@ -0,0 +1,32 @@
+package com.tensorlab.ml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Load test of a throttled endpoint: the stub throttles the invocations beyond 20
+ * per second, the retries and the adaptive concurrency limit must keep most of the
+ * requests successful, the others being rejected rather than failed
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+		"app-config.store-config.enabled=false",
+		"stub-config.latency-distribution=FIXED",
+		"stub-config.latency=20",
+		"stub-config.throttle-rate=20",
+		"stub-config.throttle-burst=5" })
+public class ThrottledLoadTest extends LoadTestSupport {
+
+	@Test
+	public void throttledInvocationsAreRetried() throws Exception {
+		Result result = run(ASYNC_PATH, WARMUP, REQUESTS, CONCURRENCY);
+		assertTrue("The stub did not throttle", stub.getResponseCount(HttpStatus.TOO_MANY_REQUESTS) > 0);
+		assertTrue(result.toString(), result.count(200) >= REQUESTS * 0.95);
+		assertEquals(result.toString(), REQUESTS, result.count(200) + result.count(429) + result.count(503));
+		assertWithinBounds(result);
+	}
+}
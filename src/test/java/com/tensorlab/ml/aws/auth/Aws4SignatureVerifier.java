@@ -0,0 +1,138 @@
+package com.tensorlab.ml.aws.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SignatureException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Verifies the AWS4 signature of a request the way the AWS services do, the
+ * counterpart of {@link Aws4Signer}: the canonical request is rebuilt from the
+ * headers named by the signature, signed with the secret key of the credential
+ * and compared with the signature of the request. Only the signed requests with
+ * an empty query string, like the endpoint invocations, are supported
+ */
+public class Aws4SignatureVerifier {
+	private final static String AUTH_ALGORITHM = "AWS4-HMAC-SHA256";
+	private final static DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'")
+			.withZone(ZoneOffset.UTC);
+	/** the largest difference between the time of the request and the clock, as allowed by AWS */
+	private final static Duration MAX_CLOCK_SKEW = Duration.ofMinutes(15);
+
+	private final String accessKey;
+	private final String secretKey;
+	private final String serviceName;
+	private final SigningKeyCache signingKeyCache = new SigningKeyCache();
+
+	/**
+	 * @param accessKey the only access key accepted
+	 * @param secretKey the secret key of the access key
+	 * @param serviceName the name of the service the requests must be signed for
+	 */
+	public Aws4SignatureVerifier(String accessKey, String secretKey, String serviceName) {
+		this.accessKey = accessKey;
+		this.secretKey = secretKey;
+		this.serviceName = serviceName;
+	}
+
+	/**
+	 * Verifies the signature of a request
+	 * @param method the HTTP method of the request
+	 * @param uri the path of the request, its canonical URI
+	 * @param headers gets the value of a header of the request by name, ignoring the case
+	 * @param payload the body of the request
+	 * @throws SignatureException if the request is not signed, or not signed with the
+	 * expected credentials, or its signature or payload hash do not match
+	 */
+	public void verify(String method, String uri, Function<String, String> headers, byte[] payload)
+			throws SignatureException {
+		Map<String, String> authorization = parseAuthorization(headers.apply("Authorization"));
+		String[] credential = authorization.get("Credential").split("/");
+		if (credential.length != 5 || !"aws4_request".equals(credential[4])) {
+			throw new SignatureException("Invalid credential scope: " + authorization.get("Credential"));
+		}
+		if (!accessKey.equals(credential[0])) {
+			throw new SignatureException("The security token included in the request is invalid");
+		}
+		if (!serviceName.equals(credential[3])) {
+			throw new SignatureException("Credential should be scoped to correct service: " + serviceName);
+		}
+		String date = credential[1];
+		String region = credential[2];
+
+		String timestamp = headers.apply("X-Amz-Date");
+		if (timestamp == null || !timestamp.startsWith(date)) {
+			throw new SignatureException("X-Amz-Date is missing or does not match the credential date");
+		}
+		try {
+			Duration skew = Duration.between(Instant.from(TIMESTAMP_FORMAT.parse(timestamp)), Instant.now());
+			if (skew.abs().compareTo(MAX_CLOCK_SKEW) > 0) {
+				throw new SignatureException("Signature expired: " + timestamp);
+			}
+		} catch (DateTimeParseException e) {
+			throw new SignatureException("Invalid X-Amz-Date: " + timestamp);
+		}
+
+		String payloadHash = Hmac.getSha256Hash(payload);
+		if (!payloadHash.equals(headers.apply("X-Amz-Content-Sha256"))) {
+			throw new SignatureException("The provided 'x-amz-content-sha256' header does not match what was computed");
+		}
+
+		String signedHeaders = authorization.get("SignedHeaders");
+		StringBuilder canonicalHeaders = new StringBuilder();
+		for (String name : signedHeaders.split(";")) {
+			String value = headers.apply(name);
+			if (value == null) {
+				throw new SignatureException("Signed header is missing: " + name);
+			}
+			canonicalHeaders.append(name).append(':').append(value.trim()).append('\n');
+		}
+		// the canonical query string is empty
+		String canonicalRequest = method + "\n" + uri + "\n" + "\n" + canonicalHeaders + "\n" + signedHeaders + "\n"
+				+ payloadHash;
+		String credentialScope = date + "/" + region + "/" + serviceName + "/" + "aws4_request";
+		String stringToSign = AUTH_ALGORITHM + "\n" + timestamp + "\n" + credentialScope + "\n"
+				+ Hmac.getSha256Hash(canonicalRequest.getBytes(StandardCharsets.UTF_8));
+
+		byte[] signature;
+		try {
+			signature = Hmac.hmac(stringToSign,
+					signingKeyCache.getSigningKey(accessKey, secretKey, date, region, serviceName), Hmac.HMAC_SHA256);
+		} catch (Exception e) {
+			throw new SignatureException("The signature cannot be computed: " + e, e);
+		}
+		// compared in constant time, like any secret
+		if (!MessageDigest.isEqual(Hmac.toHexString(signature).getBytes(StandardCharsets.US_ASCII),
+				authorization.get("Signature").getBytes(StandardCharsets.US_ASCII))) {
+			throw new SignatureException("The request signature we calculated does not match the signature you provided");
+		}
+	}
+
+	/**
+	 * Parses the Authorization header: the algorithm followed by the comma separated
+	 * Credential, SignedHeaders and Signature
+	 */
+	private static Map<String, String> parseAuthorization(String header) throws SignatureException {
+		if (header == null || !header.startsWith(AUTH_ALGORITHM + " ")) {
+			throw new SignatureException("Missing Authentication Token");
+		}
+		Map<String, String> values = new HashMap<>();
+		for (String part : header.substring(AUTH_ALGORITHM.length() + 1).split(",")) {
+			int separator = part.indexOf('=');
+			if (separator > 0) {
+				values.put(part.substring(0, separator).trim(), part.substring(separator + 1).trim());
+			}
+		}
+		if (!values.containsKey("Credential") || !values.containsKey("SignedHeaders") || !values.containsKey("Signature")) {
+			throw new SignatureException("Authorization header requires 'Credential', 'SignedHeaders' and 'Signature'");
+		}
+		return values;
+	}
+}
@@ -0,0 +1,53 @@
+package com.tensorlab.ml.aws.auth;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class HmacTest {
+	private static final String EMPTY_SHA256 = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+	private static final String ABC_SHA256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+	@Test
+	public void hashesStringsBytesAndBuffersAlike() throws Exception {
+		assertEquals(EMPTY_SHA256, Hmac.getSha256Hash(""));
+		assertEquals(ABC_SHA256, Hmac.getSha256Hash("abc"));
+		assertEquals(ABC_SHA256, Hmac.getSha256Hash("abc".getBytes(StandardCharsets.UTF_8)));
+
+		ByteBuffer buffer = ByteBuffer.wrap("xxabcxx".getBytes(StandardCharsets.UTF_8), 2, 3);
+		assertEquals(ABC_SHA256, Hmac.getSha256Hash(buffer));
+		assertEquals(buffer.limit(), buffer.position());
+	}
+
+	@Test
+	public void reusedDigestIsReset() {
+		Hmac.sha256Digest().update("leftover".getBytes(StandardCharsets.UTF_8));
+		assertEquals(ABC_SHA256, Hmac.getSha256Hash("abc".getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Test case 2 of RFC 4231
+	 */
+	@Test
+	public void computesTheRfc4231Hmacs() throws Exception {
+		byte[] key = "Jefe".getBytes(StandardCharsets.UTF_8);
+		String data = "what do ya want for nothing?";
+		assertEquals("5bdcc146bf60754e6a042426089575c75a003f089d2739839dec58b964ec3843",
+				Hmac.calculateHMAC(data, key, Hmac.HMAC_SHA256));
+		assertEquals("164b7a7bfcf819e2e395fbe73b56e0a387bd64222e831fd610270cd7ea2505549758bf75c05a994a6d034f65f8f0e6fd"
+				+ "caeab1a34d4a6b4b636e070a38bce737", Hmac.calculateHMAC(data, key, Hmac.HMAC_SHA512));
+		// the MAC of the thread is initialized again with each key
+		Hmac.hmac(data, "other".getBytes(StandardCharsets.UTF_8), Hmac.HMAC_SHA256);
+		assertEquals("5bdcc146bf60754e6a042426089575c75a003f089d2739839dec58b964ec3843",
+				Hmac.toHexString(Hmac.hmac(data, key, Hmac.HMAC_SHA256)));
+	}
+
+	@Test
+	public void encodesEveryByteValue() {
+		assertEquals("", Hmac.toHexString(new byte[0]));
+		assertEquals("00017f80feff", Hmac.toHexString(new byte[] { 0x00, 0x01, 0x7f, (byte) 0x80, (byte) 0xfe, (byte) 0xff }));
+	}
+}
@@ -0,0 +1,54 @@
+package com.tensorlab.ml.aws.auth;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class SigningKeyCacheTest {
+	private static final String ACCESS_KEY = "AKIDEXAMPLE";
+	/** the example of the AWS documentation, "Examples of how to derive a signing key for Signature Version 4" */
+	private static final String SECRET_KEY = "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY";
+	private static final String EXPECTED_KEY = "f4780e2d9f65fa895f9c67b32ce1baf0b0d8a43505a000a1a9e090d414db404d";
+
+	@Test
+	public void derivesTheDocumentedKey() throws Exception {
+		SigningKeyCache cache = new SigningKeyCache();
+		byte[] key = cache.getSigningKey(ACCESS_KEY, SECRET_KEY, "20120215", "us-east-1", "iam");
+		assertEquals(EXPECTED_KEY, Hmac.toHexString(key));
+	}
+
+	@Test
+	public void reusesTheKeyOfTheSameScope() throws Exception {
+		SigningKeyCache cache = new SigningKeyCache();
+		byte[] first = cache.getSigningKey(ACCESS_KEY, SECRET_KEY, "20120215", "us-east-1", "iam");
+		byte[] second = cache.getSigningKey(ACCESS_KEY, SECRET_KEY, "20120215", "us-east-1", "iam");
+		assertSame(first, second);
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void cachesEachRegionSeparately() throws Exception {
+		SigningKeyCache cache = new SigningKeyCache();
+		byte[] east = cache.getSigningKey(ACCESS_KEY, SECRET_KEY, "20120215", "us-east-1", "sagemaker");
+		byte[] west = cache.getSigningKey(ACCESS_KEY, SECRET_KEY, "20120215", "us-west-2", "sagemaker");
+		assertEquals(2, cache.size());
+		assertArrayEquals(Aws4SignatureKeyGenerator.generateSignatureKey(SECRET_KEY, "20120215", "us-west-2", "sagemaker"),
+				west);
+		assertSame(east, cache.getSigningKey(ACCESS_KEY, SECRET_KEY, "20120215", "us-east-1", "sagemaker"));
+	}
+
+	@Test
+	public void dropsTheKeysOfPreviousDaysAndRotatedCredentials() throws Exception {
+		SigningKeyCache cache = new SigningKeyCache();
+		byte[] previousDay = cache.getSigningKey(ACCESS_KEY, SECRET_KEY, "20120215", "us-east-1", "iam");
+		cache.getSigningKey(ACCESS_KEY, SECRET_KEY, "20120216", "us-east-1", "iam");
+		assertEquals(1, cache.size());
+
+		cache.getSigningKey(ACCESS_KEY, "rotated", "20120216", "us-east-1", "iam");
+		assertEquals(1, cache.size());
+		assertNotSame(previousDay, cache.getSigningKey(ACCESS_KEY, SECRET_KEY, "20120215", "us-east-1", "iam"));
+	}
+}
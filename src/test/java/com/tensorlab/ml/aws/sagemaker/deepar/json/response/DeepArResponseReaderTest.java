@@ -0,0 +1,132 @@
+package com.tensorlab.ml.aws.sagemaker.deepar.json.response;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponseReader.SamplesMode;
+
+/**
+ * Reads small responses in each samples mode, with the samples before and after the
+ * quantiles of the response
+ */
+public class DeepArResponseReaderTest {
+	private static final double DELTA = 1e-9;
+
+	private static final String SAMPLES = "\"samples\": [[1.0, 10.0], [2.0, 20.0], [3.0, 30.0], [4.0, 40.0], [5.0, 50.0]]";
+	private static final String QUANTILES = "\"quantiles\": {\"0.1\": [0.5, 5.0], \"0.9\": [9.5, 95.0]}";
+	private static final String MEAN = "\"mean\": [3.0, 30.0]";
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	public void keepBindsTheSamples() throws IOException {
+		Prediction prediction = readOne(SamplesMode.KEEP, Arrays.asList(0.5), QUANTILES, SAMPLES, MEAN);
+		assertEquals(5, prediction.getSamples().length);
+		assertArrayEquals(new double[] { 3.0, 30.0 }, prediction.getSamples()[2], DELTA);
+		assertArrayEquals(new double[] { 3.0, 30.0 }, prediction.getMean(), DELTA);
+		assertEquals(Arrays.asList("0.1", "0.9"), new ArrayList<>(prediction.getQuantiles().getValues().keySet()));
+	}
+
+	@Test
+	public void skipDropsTheSamples() throws IOException {
+		Prediction prediction = readOne(SamplesMode.SKIP, Arrays.asList(0.5), SAMPLES, QUANTILES, MEAN);
+		assertNull(prediction.getSamples());
+		assertNull(prediction.getQuantiles().get("0.5"));
+		assertArrayEquals(new double[] { 0.5, 5.0 }, prediction.getQuantiles().get01(), DELTA);
+		assertArrayEquals(new double[] { 3.0, 30.0 }, prediction.getMean(), DELTA);
+	}
+
+	@Test
+	public void reduceBeforeTheQuantilesKeepsBoth() throws IOException {
+		Prediction prediction = readOne(SamplesMode.REDUCE, Arrays.asList(0.5, 0.25), SAMPLES, QUANTILES, MEAN);
+		assertReduced(prediction);
+	}
+
+	@Test
+	public void reduceAfterTheQuantilesKeepsBoth() throws IOException {
+		Prediction prediction = readOne(SamplesMode.REDUCE, Arrays.asList(0.5, 0.25), QUANTILES, SAMPLES, MEAN);
+		assertReduced(prediction);
+	}
+
+	@Test
+	public void responseQuantilesTakePrecedence() throws IOException {
+		Prediction before = readOne(SamplesMode.REDUCE, Arrays.asList(0.1), SAMPLES, QUANTILES);
+		Prediction after = readOne(SamplesMode.REDUCE, Arrays.asList(0.1), QUANTILES, SAMPLES);
+		assertArrayEquals(new double[] { 0.5, 5.0 }, before.getQuantiles().get01(), DELTA);
+		assertArrayEquals(new double[] { 0.5, 5.0 }, after.getQuantiles().get01(), DELTA);
+	}
+
+	@Test
+	public void reduceWithoutQuantilesInTheResponse() throws IOException {
+		Prediction prediction = readOne(SamplesMode.REDUCE, Arrays.asList(0.0, 1.0), SAMPLES);
+		assertNull(prediction.getSamples());
+		assertArrayEquals(new double[] { 1.0, 10.0 }, prediction.getQuantiles().get("0"), DELTA);
+		assertArrayEquals(new double[] { 5.0, 50.0 }, prediction.getQuantiles().get("1"), DELTA);
+	}
+
+	@Test
+	public void handlerReceivesEachPredictionInOrder() throws IOException {
+		String json = "{\"predictions\": [{" + MEAN + "}, {\"mean\": [1.0]}], \"model\": \"deepar\"}";
+		List<Integer> indexes = new ArrayList<>();
+		List<Prediction> handled = new ArrayList<>();
+		DeepArResponse response = new DeepArResponseReader(objectMapper, SamplesMode.SKIP, Collections.emptyList())
+				.read(stream(json), (index, prediction) -> {
+					indexes.add(index);
+					handled.add(prediction);
+				});
+		assertEquals(Arrays.asList(0, 1), indexes);
+		assertEquals(response.getPredictions(), handled);
+		assertEquals("deepar", objectMapper.convertValue(response.getAdditionalProperties().get("model"), String.class));
+	}
+
+	@Test(expected = IOException.class)
+	public void samplesOfDifferentLengthsAreRejected() throws IOException {
+		readOne(SamplesMode.REDUCE, Arrays.asList(0.5), "\"samples\": [[1.0, 2.0], [3.0]]");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void quantilesOutOfRangeAreRejected() {
+		new DeepArResponseReader(objectMapper, SamplesMode.REDUCE, Arrays.asList(1.5));
+	}
+
+	@Test
+	public void quantileInterpolatesBetweenRanks() {
+		double[] sorted = { 1.0, 2.0, 3.0, 4.0 };
+		assertEquals(1.0, DeepArResponseReader.quantile(sorted, 0.0), DELTA);
+		assertEquals(2.5, DeepArResponseReader.quantile(sorted, 0.5), DELTA);
+		assertEquals(3.7, DeepArResponseReader.quantile(sorted, 0.9), DELTA);
+		assertEquals(4.0, DeepArResponseReader.quantile(sorted, 1.0), DELTA);
+	}
+
+	private static void assertReduced(Prediction prediction) {
+		assertNull(prediction.getSamples());
+		Quantiles quantiles = prediction.getQuantiles();
+		assertArrayEquals(new double[] { 0.5, 5.0 }, quantiles.get01(), DELTA);
+		assertArrayEquals(new double[] { 9.5, 95.0 }, quantiles.get09(), DELTA);
+		assertArrayEquals(new double[] { 3.0, 30.0 }, quantiles.get05(), DELTA);
+		assertArrayEquals(new double[] { 2.0, 20.0 }, quantiles.get("0.25"), DELTA);
+	}
+
+	private Prediction readOne(SamplesMode mode, List<Double> sampleQuantiles, String... fields) throws IOException {
+		String json = "{\"predictions\": [{" + String.join(", ", fields) + "}]}";
+		DeepArResponse response = new DeepArResponseReader(objectMapper, mode, sampleQuantiles).read(stream(json));
+		assertEquals(1, response.getPredictions().size());
+		return response.getPredictions().get(0);
+	}
+
+	private static ByteArrayInputStream stream(String json) {
+		return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,158 @@
+package com.tensorlab.ml.stub;
+
+import java.io.IOException;
+import java.security.SignatureException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tensorlab.ml.AppConfig;
+import com.tensorlab.ml.RateLimiter;
+import com.tensorlab.ml.aws.auth.Aws4SignatureVerifier;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.requeset.DeepArRequest;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A local DeepAR endpoint, served with the stub profile to test the application
+ * without SageMaker, e.g. under load. It answers the invocations of any endpoint
+ * name with synthesized predictions, see {@link StubPredictionGenerator}, after
+ * verifying their signature with the configured credentials. The latency, the
+ * throttling and the errors of the endpoint are simulated, see
+ * {@link StubConfig}
+ */
+@Slf4j
+@Profile("stub")
+@RestController
+public class DeepArStubController implements InitializingBean, DisposableBean {
+
+	@Autowired
+	private AppConfig appConfig;
+
+	@Autowired
+	private StubConfig stubConfig;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	/** the throttling of each endpoint name */
+	private final Map<String, RateLimiter> throttles = new ConcurrentHashMap<>();
+	/** the number of invocations answered with each status */
+	private final Map<HttpStatus, LongAdder> responses = new ConcurrentHashMap<>();
+	private Aws4SignatureVerifier verifier;
+	private StubPredictionGenerator generator;
+	private ScheduledExecutorService scheduler;
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		AppConfig.AwsAuthConfig auth = appConfig.getAwsAuthConfig();
+		verifier = new Aws4SignatureVerifier(auth.getAccessKey(), auth.getSecretKey(), auth.getServiceName());
+		generator = new StubPredictionGenerator(stubConfig.getPredictionLength());
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "stub-scheduler");
+			thread.setDaemon(true);
+			return thread;
+		});
+		log.warn("DeepAR stub endpoint enabled: {}", stubConfig);
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		scheduler.shutdownNow();
+	}
+
+	/**
+	 * Invokes the stub endpoint, like the InvokeEndpoint API of SageMaker
+	 * @param name the name of the endpoint, any name is served
+	 * @param body the DeepAR request
+	 * @return a future completed with the response once the simulated latency has elapsed
+	 */
+	@RequestMapping(value = "/endpoints/{name}/invocations", method = RequestMethod.POST)
+	public CompletableFuture<ResponseEntity<byte[]>> invoke(@PathVariable("name") String name,
+			@RequestBody byte[] body, HttpServletRequest request) throws IOException {
+		StubConfig config = stubConfig;
+		if (config.isVerifySignature()) {
+			try {
+				verifier.verify(request.getMethod(), request.getRequestURI(), request::getHeader, body);
+			} catch (SignatureException e) {
+				log.warn("Stub invocation of {} rejected: {}", name, e.getMessage());
+				return CompletableFuture.completedFuture(error(HttpStatus.FORBIDDEN, e.getMessage()));
+			}
+		}
+		if (config.getThrottleRate() > 0 && throttles
+				.computeIfAbsent(name, n -> new RateLimiter(config.getThrottleRate(), config.getThrottleBurst()))
+				.reserve(0) < 0) {
+			return CompletableFuture.completedFuture(error(HttpStatus.TOO_MANY_REQUESTS, "Rate exceeded"));
+		}
+
+		DeepArRequest deepArRequest;
+		try {
+			deepArRequest = objectMapper.readValue(body, DeepArRequest.class);
+		} catch (IOException e) {
+			return CompletableFuture.completedFuture(error(HttpStatus.BAD_REQUEST, "Invalid request: " + e.getMessage()));
+		}
+		int instances = deepArRequest.getInstances() == null ? 0 : deepArRequest.getInstances().size();
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		ResponseEntity<byte[]> response;
+		if (random.nextDouble() < config.getErrorRate()) {
+			response = error(HttpStatus.valueOf(config.getErrorStatus()), "Injected error");
+		} else {
+			byte[] payload = objectMapper.writeValueAsBytes(generator.generate(deepArRequest, random));
+			response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(payload);
+			count(HttpStatus.OK);
+		}
+
+		long latency = (long) config.getLatencyDistribution().sample(random, config.getLatency(),
+				config.getLatencySpread()) + config.getLatencyPerInstance() * instances;
+		log.debug("Stub invocation of {}, instances: {}, status: {}, latency: {} ms", name, instances,
+				response.getStatusCodeValue(), latency);
+		if (latency <= 0) {
+			return CompletableFuture.completedFuture(response);
+		}
+		CompletableFuture<ResponseEntity<byte[]>> delayed = new CompletableFuture<>();
+		scheduler.schedule(() -> delayed.complete(response), latency, TimeUnit.MILLISECONDS);
+		return delayed;
+	}
+
+	/**
+	 * Gets the number of invocations answered with a status since the start
+	 */
+	public long getResponseCount(HttpStatus status) {
+		LongAdder count = responses.get(status);
+		return count == null ? 0 : count.sum();
+	}
+
+	private void count(HttpStatus status) {
+		responses.computeIfAbsent(status, s -> new LongAdder()).increment();
+	}
+
+	/**
+	 * Builds an error response with a body like the ones of SageMaker
+	 */
+	private ResponseEntity<byte[]> error(HttpStatus status, String message) throws IOException {
+		count(status);
+		byte[] body = objectMapper.writeValueAsBytes(Collections.singletonMap("message", message));
+		return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON).body(body);
+	}
+}
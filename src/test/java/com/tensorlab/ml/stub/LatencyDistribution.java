@@ -0,0 +1,57 @@
+package com.tensorlab.ml.stub;
+
+import java.util.Random;
+
+/**
+ * The distribution of the latencies of the stub endpoint, each one draws a latency
+ * from its mean and spread
+ */
+public enum LatencyDistribution {
+	/** no latency */
+	NONE {
+		@Override
+		public double sample(Random random, double mean, double spread) {
+			return 0;
+		}
+	},
+	/** always the mean */
+	FIXED {
+		@Override
+		public double sample(Random random, double mean, double spread) {
+			return mean;
+		}
+	},
+	/** uniform between mean * (1 - spread) and mean * (1 + spread) */
+	UNIFORM {
+		@Override
+		public double sample(Random random, double mean, double spread) {
+			return Math.max(0, mean * (1 + spread * (2 * random.nextDouble() - 1)));
+		}
+	},
+	/** exponential, like the service times of a busy server, the spread is ignored */
+	EXPONENTIAL {
+		@Override
+		public double sample(Random random, double mean, double spread) {
+			return -mean * Math.log(1 - random.nextDouble());
+		}
+	},
+	/** log-normal with a sigma of spread, a long tail for the larger spreads */
+	LOG_NORMAL {
+		@Override
+		public double sample(Random random, double mean, double spread) {
+			if (mean <= 0) {
+				return 0;
+			}
+			// the median is lowered so the mean stays the configured one
+			return Math.exp(Math.log(mean) - spread * spread / 2 + spread * random.nextGaussian());
+		}
+	};
+
+	/**
+	 * Draws a latency
+	 * @param mean the mean latency in milliseconds
+	 * @param spread the spread of the distribution, see each distribution
+	 * @return the latency in milliseconds
+	 */
+	public abstract double sample(Random random, double mean, double spread);
+}
@@ -0,0 +1,33 @@
+package com.tensorlab.ml.stub;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * The local DeepAR endpoint served with the stub profile, see
+ * {@link DeepArStubController}. It answers predictionLength values per series
+ * after a latency drawn from latencyDistribution, with a mean of latency
+ * milliseconds plus latencyPerInstance per series. The invocations beyond
+ * throttleRate per second are throttled (429), 0 disables the throttling, and a
+ * fraction errorRate of them fail with errorStatus. Time values in milliseconds
+ */
+@Data
+@Profile("stub")
+@Component
+@ConfigurationProperties(prefix = "stub-config")
+public class StubConfig {
+	private int predictionLength = 30;
+	private boolean verifySignature = true;
+	private LatencyDistribution latencyDistribution = LatencyDistribution.FIXED;
+	private long latency = 50;
+	/** the spread of the latency: the relative half-width of UNIFORM, the sigma of LOG_NORMAL */
+	private double latencySpread = 0.5;
+	private long latencyPerInstance = 0;
+	private double throttleRate = 0;
+	private int throttleBurst = 10;
+	private double errorRate = 0;
+	private int errorStatus = 500;
+}
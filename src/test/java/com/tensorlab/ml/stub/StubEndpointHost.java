@@ -0,0 +1,38 @@
+package com.tensorlab.ml.stub;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import com.tensorlab.ml.EndpointRouter;
+import com.tensorlab.ml.SageMakerEndpoint;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Points the endpoints at the stub of the application when it listens on a random
+ * port: their host, localhost:${server.port} in the stub profile, is localhost:0
+ * until the server has started
+ */
+@Slf4j
+@Profile("stub")
+@Component
+public class StubEndpointHost implements ApplicationListener<WebServerInitializedEvent> {
+	private static final String RANDOM_PORT_HOST = "localhost:0";
+
+	@Autowired
+	private EndpointRouter router;
+
+	@Override
+	public void onApplicationEvent(WebServerInitializedEvent event) {
+		String host = "localhost:" + event.getWebServer().getPort();
+		for (SageMakerEndpoint endpoint : router.getEndpoints()) {
+			if (RANDOM_PORT_HOST.equals(endpoint.getConfig().getServiceHost())) {
+				endpoint.getConfig().setServiceHost(host);
+				log.info("Endpoint {} routed to the stub at {}", endpoint.getName(), endpoint.getUrl());
+			}
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package com.tensorlab.ml.stub;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.tensorlab.ml.PredictionProfile;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.requeset.Configuration;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.requeset.DeepArRequest;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.requeset.Instance;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.DeepArResponse;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.Prediction;
+import com.tensorlab.ml.aws.sagemaker.deepar.json.response.Quantiles;
+
+/**
+ * Synthesizes the response of a DeepAR endpoint to a request: one prediction per
+ * instance, holding the output types, quantiles and number of samples of the
+ * configuration, or the DeepAR defaults. The forecast carries on the level of the
+ * last observations of the instance, with an uncertainty growing with the horizon,
+ * so the plots look like real forecasts
+ */
+public class StubPredictionGenerator {
+	/** the default configuration of the DeepAR inference */
+	private static final List<String> DEFAULT_OUTPUT_TYPES = Arrays.asList(PredictionProfile.OUTPUT_MEAN,
+			PredictionProfile.OUTPUT_QUANTILES);
+	private static final List<String> DEFAULT_QUANTILES = Arrays.asList("0.1", "0.2", "0.3", "0.4", "0.5", "0.6",
+			"0.7", "0.8", "0.9");
+	private static final int DEFAULT_NUM_SAMPLES = 100;
+	/** the observations averaged into the level of the forecast */
+	private static final int LEVEL_WINDOW = 7;
+
+	private final int predictionLength;
+
+	/**
+	 * @param predictionLength the number of values predicted per series, the prediction_length of the model
+	 */
+	public StubPredictionGenerator(int predictionLength) {
+		this.predictionLength = predictionLength;
+	}
+
+	public DeepArResponse generate(DeepArRequest request, Random random) {
+		Configuration config = request.getConfiguration();
+		List<String> outputTypes = config != null && config.getOutputTypes() != null ? config.getOutputTypes()
+				: DEFAULT_OUTPUT_TYPES;
+		List<String> quantiles = config != null && config.getQuantiles() != null ? config.getQuantiles()
+				: DEFAULT_QUANTILES;
+		int numSamples = config != null && config.getNumSamples() != null ? config.getNumSamples() : DEFAULT_NUM_SAMPLES;
+
+		List<Prediction> predictions = new ArrayList<>();
+		for (Instance instance : request.getInstances()) {
+			double level = level(instance.getTarget());
+			double scale = Math.max(1, Math.abs(level) * 0.1);
+			Prediction prediction = new Prediction();
+			if (outputTypes.contains(PredictionProfile.OUTPUT_MEAN)) {
+				double[] mean = new double[predictionLength];
+				for (int t = 0; t < predictionLength; t++) {
+					mean[t] = level + scale * 0.2 * random.nextGaussian();
+				}
+				prediction.setMean(mean);
+			}
+			if (outputTypes.contains(PredictionProfile.OUTPUT_QUANTILES)) {
+				Quantiles values = new Quantiles();
+				for (String quantile : quantiles) {
+					double z = normalQuantile(Double.parseDouble(quantile));
+					double[] forecast = new double[predictionLength];
+					for (int t = 0; t < predictionLength; t++) {
+						forecast[t] = level + spread(scale, t) * z;
+					}
+					values.set(quantile, forecast);
+				}
+				prediction.setQuantiles(values);
+			}
+			if (outputTypes.contains(PredictionProfile.OUTPUT_SAMPLES)) {
+				double[][] samples = new double[numSamples][predictionLength];
+				for (double[] sample : samples) {
+					for (int t = 0; t < predictionLength; t++) {
+						sample[t] = level + spread(scale, t) * random.nextGaussian();
+					}
+				}
+				prediction.setSamples(samples);
+			}
+			predictions.add(prediction);
+		}
+		DeepArResponse response = new DeepArResponse();
+		response.setPredictions(predictions);
+		return response;
+	}
+
+	/**
+	 * Gets the average of the last observations, 0 for an empty series
+	 */
+	private static double level(double[] target) {
+		if (target == null || target.length == 0) {
+			return 0;
+		}
+		int from = Math.max(0, target.length - LEVEL_WINDOW);
+		double sum = 0;
+		for (int i = from; i < target.length; i++) {
+			sum += target[i];
+		}
+		return sum / (target.length - from);
+	}
+
+	private double spread(double scale, int step) {
+		return scale * (1 + (double) step / predictionLength);
+	}
+
+	/**
+	 * Approximates the quantile of the standard normal distribution with the Tukey
+	 * lambda distribution, within 1% between 0.01 and 0.99
+	 */
+	private static double normalQuantile(double p) {
+		return 4.91 * (Math.pow(p, 0.14) - Math.pow(1 - p, 0.14));
+	}
+}